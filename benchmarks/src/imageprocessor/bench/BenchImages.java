@@ -0,0 +1,76 @@
+package imageprocessor.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+// Inputs shared by the benchmarks: synthetic images of the usual screen sizes and the
+// Netpbm corpus under images/ (or the directory in the "imageprocessor.images" property).
+final class BenchImages {
+
+    private BenchImages() {
+    }
+
+    static int width(String size) {
+        return dimensions(size)[0];
+    }
+
+    static int height(String size) {
+        return dimensions(size)[1];
+    }
+
+    // FHD, 4K and 8K UHD
+    private static int[] dimensions(String size) {
+        switch (size) {
+            case "FHD":
+                return new int[] {1920, 1080};
+            case "4K":
+                return new int[] {3840, 2160};
+            case "8K":
+                return new int[] {7680, 4320};
+            default:
+                throw new IllegalArgumentException("Unknown size " + size);
+        }
+    }
+
+    // Smooth gradients with noise on top, so that filters and codecs see realistic data
+    static BufferedImage synthetic(String size, String type, long seed) {
+        int width = width(size);
+        int height = height(size);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (x * 255 / width + random.nextInt(32)) & 0xFF;
+                int green = (y * 255 / height + random.nextInt(32)) & 0xFF;
+                int blue = ((x + y) * 255 / (width + height) + random.nextInt(32)) & 0xFF;
+                image.setRGB(x, y, red << 16 | green << 8 | blue);
+            }
+        }
+        if (type.equals("BYTE_GRAY")) {
+            BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            gray.getGraphics().drawImage(image, 0, 0, null);
+            return gray;
+        }
+        if (!type.equals("INT_RGB")) {
+            throw new IllegalArgumentException("Unknown raster type " + type);
+        }
+        return image;
+    }
+
+    // The files of images/<extension> with that extension
+    static List<File> corpus(String extension) throws IOException {
+        File dir = new File(System.getProperty("imageprocessor.images", "images"), extension);
+        File[] files = dir.listFiles((d, name) -> name.toLowerCase(Locale.ROOT).endsWith("." + extension));
+        if (files == null || files.length == 0) {
+            throw new IOException("No ." + extension + " files in " + dir.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        return Arrays.stream(files).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,105 @@
+package imageprocessor.bench;
+
+import imageprocessor.io.NetpbmReader;
+import imageprocessor.io.NetpbmWriter;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Throughput of the PPM/PGM codec over the bundled corpus (every file per invocation)
+// and over synthetic 4K and 8K files written to a temporary directory.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+    private static final int STRIP_ROWS = 64;
+
+    @Param({"corpus-ppm", "corpus-pgm", "4K-ppm", "4K-pgm", "8K-ppm", "8K-pgm"})
+    public String input;
+
+    private List<File> files;
+    private List<BufferedImage> images;
+    private double megapixels;
+    private File tempDir;
+
+    @Setup
+    public void setup() throws IOException {
+        tempDir = File.createTempFile("codec-bench", "");
+        if (!tempDir.delete() || !tempDir.mkdir()) {
+            throw new IOException("Cannot create " + tempDir);
+        }
+        String[] parts = input.split("-");
+        String extension = parts[1];
+        if (parts[0].equals("corpus")) {
+            files = BenchImages.corpus(extension);
+        } else {
+            File file = new File(tempDir, "synthetic." + extension);
+            String type = extension.equals("pgm") ? "BYTE_GRAY" : "INT_RGB";
+            NetpbmWriter.write(BenchImages.synthetic(parts[0], type, 1), file);
+            files = Collections.singletonList(file);
+        }
+        images = new ArrayList<>();
+        for (File file : files) {
+            BufferedImage image = NetpbmReader.read(file);
+            images.add(image);
+            megapixels += image.getWidth() * (double) image.getHeight() / 1e6;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] leftovers = tempDir.listFiles();
+        if (leftovers != null) {
+            for (File file : leftovers) {
+                file.delete();
+            }
+        }
+        tempDir.delete();
+    }
+
+    @Benchmark
+    public void read(Pixels pixels, Blackhole blackhole) throws IOException {
+        for (File file : files) {
+            blackhole.consume(NetpbmReader.read(file));
+        }
+        pixels.megapixels += megapixels;
+    }
+
+    @Benchmark
+    public void readStrips(Pixels pixels, Blackhole blackhole) throws IOException {
+        for (File file : files) {
+            NetpbmReader.readStrips(file, STRIP_ROWS, (header, y, rows, samples) -> blackhole.consume(samples));
+        }
+        pixels.megapixels += megapixels;
+    }
+
+    @Benchmark
+    public void write(Pixels pixels) throws IOException {
+        File file = new File(tempDir, "out");
+        for (BufferedImage image : images) {
+            NetpbmWriter.write(image, file);
+        }
+        pixels.megapixels += megapixels;
+    }
+}
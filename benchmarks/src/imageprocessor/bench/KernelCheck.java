@@ -0,0 +1,161 @@
+package imageprocessor.bench;
+
+import imageprocessor.core.PointOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.ops.BlendOp;
+import imageprocessor.ops.ColorSegmentationOp;
+import imageprocessor.ops.NegativeOp;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+// Compares the branch-free kernels of BlendOp, NegativeOp and ColorSegmentationOp with
+// the plain per-pixel formulas they replaced, on random pixels and on the edge values:
+//  - BlendOp: every pair of channel values at each of the 101 levels
+//  - NegativeOp: every channel value, with and without alpha, RGB and gray
+//  - ColorSegmentationOp: targets at 0, 255 and random, thresholds from -1 to past
+//    255, and every channel at t - range - 1, t - range, t, t + range and t + range + 1
+// Prints the first mismatch and exits with 1 if a kernel differs. Run with
+// "ant kernel-check", or "-Dkernel.check.args=SEED" to draw other random pixels.
+public final class KernelCheck {
+
+    private static final int RANDOM_PIXELS = 1 << 20;
+
+    private final Random random;
+    private long pixels;
+
+    private KernelCheck(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        KernelCheck check = new KernelCheck(seed);
+        try {
+            check.blend();
+            check.negative();
+            check.segmentation();
+        } catch (AssertionError e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("%d pixels checked (seed %d), no differences%n", check.pixels, seed);
+    }
+
+    private void blend() {
+        int n = 256 * 256;
+        int[] first = new int[n + RANDOM_PIXELS];
+        int[] second = new int[first.length];
+        // Red and blue take every pair of values, green the pairs the other way round
+        for (int i = 0; i < 256; i++) {
+            for (int j = 0; j < 256; j++) {
+                first[i * 256 + j] = i << 16 | j << 8 | i;
+                second[i * 256 + j] = j << 16 | i << 8 | j;
+            }
+        }
+        fill(first, n);
+        fill(second, n);
+        BufferedImage image = new BufferedImage(first.length, 1, BufferedImage.TYPE_INT_RGB);
+        System.arraycopy(second, 0, Rasters.ints(image), 0, second.length);
+        for (int level = 0; level <= 100; level++) {
+            int[] out = run(new BlendOp(image, level), first);
+            for (int i = 0; i < first.length; i++) {
+                int p = first[i];
+                int q = second[i];
+                int expected = 0xFF000000
+                        | ((p >> 16 & 0xFF) * (100 - level) + (q >> 16 & 0xFF) * level) / 100 << 16
+                        | ((p >> 8 & 0xFF) * (100 - level) + (q >> 8 & 0xFF) * level) / 100 << 8
+                        | ((p & 0xFF) * (100 - level) + (q & 0xFF) * level) / 100;
+                compare("BlendOp level " + level, p, q, expected, out[i]);
+            }
+            pixels += first.length;
+        }
+    }
+
+    private void negative() {
+        int n = 256 * 2;
+        int[] src = new int[n + RANDOM_PIXELS];
+        for (int c = 0; c < 256; c++) {
+            src[c] = c << 16 | (255 - c) << 8 | c;
+            src[256 + c] = 0xFF000000 | c << 16 | c << 8 | (255 - c);
+        }
+        fill(src, n);
+        int[] out = run(new NegativeOp(), src);
+        for (int i = 0; i < src.length; i++) {
+            int p = src[i];
+            int expected = p & 0xFF000000
+                    | (255 - (p >> 16 & 0xFF)) << 16
+                    | (255 - (p >> 8 & 0xFF)) << 8
+                    | (255 - (p & 0xFF));
+            compare("NegativeOp", p, 0, expected, out[i]);
+        }
+        pixels += src.length;
+
+        BufferedImage gray = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] values = Rasters.bytes(gray);
+        for (int c = 0; c < 256; c++) {
+            values[c] = (byte) c;
+        }
+        byte[] inverted = Rasters.bytes(new NegativeOp().filter(gray));
+        for (int c = 0; c < 256; c++) {
+            compare("NegativeOp gray", c, 0, 255 - c, inverted[c] & 0xFF);
+        }
+        pixels += 256;
+    }
+
+    private void segmentation() {
+        int[] thresholds = {-1, 0, 1, 2, 50, 127, 128, 254, 255, 256, 300};
+        int[] targets = {0x000000, 0xFFFFFF, 0xFF00FF, 0x00FF00, 0x808080, 0x01FE7F,
+                random.nextInt(0x1000000), random.nextInt(0x1000000), random.nextInt(0x1000000)};
+        for (int target : targets) {
+            for (int threshold : thresholds) {
+                int[] src = new int[125 + RANDOM_PIXELS / 16];
+                int range = Math.max(-1, Math.min(255, threshold));
+                int[] offsets = {-range - 1, -range, 0, range, range + 1};
+                // Each channel at the boundary values around the target, in every combination
+                for (int k = 0; k < 125; k++) {
+                    int red = clamp((target >> 16 & 0xFF) + offsets[k / 25]);
+                    int green = clamp((target >> 8 & 0xFF) + offsets[k / 5 % 5]);
+                    int blue = clamp((target & 0xFF) + offsets[k % 5]);
+                    src[k] = random.nextInt(256) << 24 | red << 16 | green << 8 | blue;
+                }
+                fill(src, 125);
+                int[] out = run(new ColorSegmentationOp(target >> 16 & 0xFF, target >> 8 & 0xFF, target & 0xFF, threshold), src);
+                for (int i = 0; i < src.length; i++) {
+                    int p = src[i];
+                    boolean close = Math.abs((p >> 16 & 0xFF) - (target >> 16 & 0xFF)) <= threshold
+                            && Math.abs((p >> 8 & 0xFF) - (target >> 8 & 0xFF)) <= threshold
+                            && Math.abs((p & 0xFF) - (target & 0xFF)) <= threshold;
+                    int expected = close ? 0xFF000000 | p : 0xFF000000;
+                    compare(String.format("ColorSegmentationOp target %06X threshold %d", target, threshold),
+                            p, 0, expected, out[i]);
+                }
+                pixels += src.length;
+            }
+        }
+    }
+
+    // The kernel over src as one run, the way Pipeline and filter() call it
+    private static int[] run(PointOp op, int[] src) {
+        int[] out = new int[src.length];
+        op.apply(src, 0, out, 0, src.length, 0);
+        return out;
+    }
+
+    // Random pixels, alpha included, from index from on
+    private void fill(int[] pixels, int from) {
+        for (int i = from; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+    }
+
+    private static int clamp(int c) {
+        return Math.max(0, Math.min(255, c));
+    }
+
+    private static void compare(String kernel, int p, int q, int expected, int actual) {
+        if (expected != actual) {
+            throw new AssertionError(String.format("%s: pixel %08X (second %08X) gives %08X, expected %08X",
+                    kernel, p, q, actual, expected));
+        }
+    }
+}
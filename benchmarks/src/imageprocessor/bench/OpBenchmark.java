@@ -0,0 +1,161 @@
+package imageprocessor.bench;
+
+import imageprocessor.core.ConvolutionKernel;
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Pipeline;
+import imageprocessor.ops.AffineOp;
+import imageprocessor.ops.BlendOp;
+import imageprocessor.ops.CannyOp;
+import imageprocessor.ops.ClaheOp;
+import imageprocessor.ops.CoinCounter;
+import imageprocessor.ops.ColorSegmentationOp;
+import imageprocessor.ops.ConvolutionOp;
+import imageprocessor.ops.DisparityOp;
+import imageprocessor.ops.EqualizeOp;
+import imageprocessor.ops.FlipOp;
+import imageprocessor.ops.GradientOp;
+import imageprocessor.ops.GrayscaleOp;
+import imageprocessor.ops.Interpolation;
+import imageprocessor.ops.LutOp;
+import imageprocessor.ops.MeanFilterOp;
+import imageprocessor.ops.MedianFilterOp;
+import imageprocessor.ops.NegativeOp;
+import imageprocessor.ops.NoiseOp;
+import imageprocessor.ops.ResizeOp;
+import imageprocessor.ops.RobertsEdgeOp;
+import imageprocessor.ops.RotateOp;
+import imageprocessor.ops.SaltAndPepperOp;
+import imageprocessor.ops.TransparencyOp;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Throughput of every GUI operation on synthetic images. The ops that only accept gray
+// images (noise, mean, median, roberts, sobel, canny, blur, clahe) get the gray version
+// of the image for both raster types. "gamma" is a lookup-table op and "chain" is
+// grayscale, negative and segmentation fused by a Pipeline. "deskew" is a 3 degree
+// bilinear rotation, "zoomout" a bicubic resize to half size, "blur" a Gaussian with
+// sigma 2, "gaussnoise" Gaussian noise with sigma 10 and "disparity" census block
+// matching over 64 disparities against a second synthetic image.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g"})
+@State(Scope.Benchmark)
+public class OpBenchmark {
+
+    @Param({"negative", "grayscale", "transparency", "blend", "segment", "rotate", "flip", "noise", "mean",
+            "median", "roberts", "gamma", "chain", "deskew", "zoomout", "equalize", "clahe", "sobel", "canny", "blur", "gaussnoise",
+            "disparity", "coins"})
+    public String op;
+
+    @Param({"FHD", "4K", "8K"})
+    public String size;
+
+    @Param({"INT_RGB", "BYTE_GRAY"})
+    public String type;
+
+    private BufferedImage image;
+    private ImageOp filter;
+    private double megapixels;
+
+    @Setup
+    public void setup() {
+        image = BenchImages.synthetic(size, type, 1);
+        switch (op) {
+            case "negative":
+                filter = new NegativeOp();
+                break;
+            case "grayscale":
+                filter = new GrayscaleOp();
+                break;
+            case "transparency":
+                filter = new TransparencyOp(40);
+                break;
+            case "blend":
+                filter = new BlendOp(BenchImages.synthetic(size, "INT_RGB", 2), 50);
+                break;
+            case "segment":
+                filter = new ColorSegmentationOp(128, 64, 192);
+                break;
+            case "rotate":
+                filter = new RotateOp(90);
+                break;
+            case "deskew":
+                filter = AffineOp.deskew(3, Interpolation.BILINEAR);
+                break;
+            case "zoomout":
+                filter = new ResizeOp(0.5, Interpolation.BICUBIC);
+                break;
+            case "equalize":
+                filter = new EqualizeOp();
+                break;
+            case "clahe":
+                filter = new ClaheOp();
+                break;
+            case "flip":
+                filter = new FlipOp(true, false);
+                break;
+            case "noise":
+                filter = new SaltAndPepperOp(SaltAndPepperOp.DEFAULT_DENSITY, 1);
+                break;
+            case "gaussnoise":
+                filter = new NoiseOp(NoiseOp.Model.GAUSSIAN, 10, 1);
+                break;
+            case "mean":
+                filter = new MeanFilterOp();
+                break;
+            case "median":
+                filter = new MedianFilterOp();
+                break;
+            case "roberts":
+                filter = new RobertsEdgeOp();
+                break;
+            case "sobel":
+                filter = new GradientOp(GradientOp.Operator.SOBEL);
+                break;
+            case "blur":
+                filter = new ConvolutionOp(ConvolutionKernel.gaussian(2));
+                break;
+            case "canny":
+                filter = new CannyOp();
+                break;
+            case "disparity":
+                filter = new DisparityOp(BenchImages.synthetic(size, type, 2), DisparityOp.DEFAULT_MAX_DISPARITY);
+                break;
+            case "coins":
+                filter = new CoinCounter();
+                break;
+            case "gamma":
+                filter = LutOp.gamma(2.2);
+                break;
+            case "chain":
+                filter = new Pipeline(Arrays.asList(new GrayscaleOp(), new NegativeOp(), new ColorSegmentationOp(128, 128, 128)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown op " + op);
+        }
+        if (Arrays.asList("noise", "mean", "median", "roberts", "sobel", "canny", "blur", "clahe").contains(op)) {
+            image = new GrayscaleOp().filter(image);
+        }
+        megapixels = image.getWidth() * (double) image.getHeight() / 1e6;
+    }
+
+    @Benchmark
+    public BufferedImage filter(Pixels pixels) {
+        pixels.megapixels += megapixels;
+        return filter.filter(image);
+    }
+}
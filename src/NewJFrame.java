@@ -1,6 +1,41 @@
+import imageprocessor.core.ConvolutionKernel;
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.io.ImageCache;
+import imageprocessor.io.NetpbmWriter;
+import imageprocessor.ops.AffineOp;
+import imageprocessor.ops.BlendEngine;
+import imageprocessor.ops.CannyOp;
+import imageprocessor.ops.ClaheOp;
+import imageprocessor.ops.CoinCounter;
+import imageprocessor.ops.ColorSegmentationOp;
+import imageprocessor.ops.ConvolutionOp;
+import imageprocessor.ops.DisparityOp;
+import imageprocessor.ops.EqualizeOp;
+import imageprocessor.ops.FlipOp;
+import imageprocessor.ops.GradientOp;
+import imageprocessor.ops.GrayscaleOp;
+import imageprocessor.ops.Interpolation;
+import imageprocessor.ops.LutOp;
+import imageprocessor.ops.MeanFilterOp;
+import imageprocessor.ops.MedianFilterOp;
+import imageprocessor.ops.NegativeOp;
+import imageprocessor.ops.NoiseOp;
+import imageprocessor.ops.ResizeOp;
+import imageprocessor.ops.RobertsEdgeOp;
+import imageprocessor.ops.RotateOp;
+import imageprocessor.ops.SaltAndPepperOp;
+import imageprocessor.ops.StretchOp;
+import imageprocessor.ops.TransparencyOp;
+import imageprocessor.ui.EditHistory;
+import imageprocessor.ui.ImageWorker;
+import imageprocessor.ui.TiledImageView;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.BitSet;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -9,15 +44,23 @@ public class NewJFrame extends javax.swing.JFrame {
     private BufferedImage currentImage; // Stores the currently loaded image
     private boolean isImageDisplayed = false; // Flag to check if an image is displayed
     private JSlider transparencySlider; // Slider for transparency level
+    private Object transparencyDrag; // Key of the slider drag in progress
+    private final ImageWorker worker; // Runs the operations off the event dispatch thread
+    private static final int PREVIEW_PIXELS = 1 << 20; // Size of the blend shown while a slider is dragged
+    private static final ConvolutionKernel SHARPEN = ConvolutionKernel.of(3, 3, 0, -1, 0, -1, 5, -1, 0, -1, 0);
+    // Memory for the undo history, a quarter of the heap unless set; older edits spill to the temp directory
+    private static final long HISTORY_BYTES = Long.getLong("imageprocessor.historyBytes", Runtime.getRuntime().maxMemory() / 4);
 
     public NewJFrame() {
         initializeComponents();
+        worker = new ImageWorker(this::showResult, this::showError, this::showProgress,
+                new EditHistory(HISTORY_BYTES, new File(System.getProperty("java.io.tmpdir"))));
     }
 
     // Initialize UI components
     @SuppressWarnings("unchecked")
     private void initializeComponents() {
-        imageLabel = new javax.swing.JLabel();
+        imageView = new TiledImageView();
         menuBar = new javax.swing.JMenuBar();
         fileMenu = new javax.swing.JMenu();
         openMenuItem = new javax.swing.JMenuItem();
@@ -25,6 +68,12 @@ public class NewJFrame extends javax.swing.JFrame {
         openPGMMenuItem = new javax.swing.JMenuItem();
         saveMenuItem = new javax.swing.JMenuItem();
         exitMenuItem = new javax.swing.JMenuItem();
+        editMenu = new javax.swing.JMenu();
+        undoMenuItem = new javax.swing.JMenuItem();
+        redoMenuItem = new javax.swing.JMenuItem();
+        viewMenu = new javax.swing.JMenu();
+        zoomToFitMenuItem = new javax.swing.JMenuItem();
+        actualSizeMenuItem = new javax.swing.JMenuItem();
         imageMenu = new javax.swing.JMenu();
         negativeMenuItem = new javax.swing.JMenuItem();
         grayscaleMenuItem = new javax.swing.JMenuItem();
@@ -32,13 +81,32 @@ public class NewJFrame extends javax.swing.JFrame {
         colorSegmentationMenuItem = new javax.swing.JMenuItem();
         rotateImageClockwiseMenuItem = new javax.swing.JMenuItem();
         rotateImageCounterClockwiseMenuItem = new javax.swing.JMenuItem();
+        rotateImageByAngleMenuItem = new javax.swing.JMenuItem();
         flipImageVerticalMenuItem = new javax.swing.JMenuItem();
         flipImageHorizontalMenuItem = new javax.swing.JMenuItem();
+        zoomInMenuItem = new javax.swing.JMenuItem();
+        zoomOutMenuItem = new javax.swing.JMenuItem();
+        gammaCorrectionMenuItem = new javax.swing.JMenuItem();
+        histogramEqualizationMenuItem = new javax.swing.JMenuItem();
+        histogramExpansionMenuItem = new javax.swing.JMenuItem();
+        histogramCompressionMenuItem = new javax.swing.JMenuItem();
+        claheMenuItem = new javax.swing.JMenuItem();
         transparencyWithTwoImagesMenuItem = new javax.swing.JMenuItem();
         saltAndPepperNoiseMenuItem = new javax.swing.JMenuItem();
+        gaussianNoiseMenuItem = new javax.swing.JMenuItem();
+        speckleNoiseMenuItem = new javax.swing.JMenuItem();
+        poissonNoiseMenuItem = new javax.swing.JMenuItem();
         meanFilterMenuItem = new javax.swing.JMenuItem();
         medianFilterMenuItem = new javax.swing.JMenuItem();
+        gaussianBlurMenuItem = new javax.swing.JMenuItem();
+        sharpenMenuItem = new javax.swing.JMenuItem();
         robertsEdgeMenuItem = new javax.swing.JMenuItem();
+        sobelEdgeMenuItem = new javax.swing.JMenuItem();
+        prewittEdgeMenuItem = new javax.swing.JMenuItem();
+        freiChenEdgeMenuItem = new javax.swing.JMenuItem();
+        cannyEdgeMenuItem = new javax.swing.JMenuItem();
+        stereoDisparityMenuItem = new javax.swing.JMenuItem();
+        countCoinsMenuItem = new javax.swing.JMenuItem();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
 
@@ -53,7 +121,7 @@ public class NewJFrame extends javax.swing.JFrame {
         openPPMMenuItem.addActionListener(evt -> openPPMImage());
         fileMenu.add(openPPMMenuItem);
 
-        openPGMMenuItem.setText("Open PGM...");
+        openPGMMenuItem.setText("Open PGM/PBM...");
         openPGMMenuItem.addActionListener(evt -> openPGMImage());
         fileMenu.add(openPGMMenuItem);
 
@@ -67,6 +135,34 @@ public class NewJFrame extends javax.swing.JFrame {
 
         menuBar.add(fileMenu);
 
+        // Edit menu setup
+        editMenu.setText("Edit");
+
+        undoMenuItem.setText("Undo");
+        undoMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Z, java.awt.event.InputEvent.CTRL_DOWN_MASK));
+        undoMenuItem.addActionListener(evt -> worker.undo());
+        editMenu.add(undoMenuItem);
+
+        redoMenuItem.setText("Redo");
+        redoMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Y, java.awt.event.InputEvent.CTRL_DOWN_MASK));
+        redoMenuItem.addActionListener(evt -> worker.redo());
+        editMenu.add(redoMenuItem);
+
+        menuBar.add(editMenu);
+
+        // View menu setup: changes how the image is shown, not the image
+        viewMenu.setText("View");
+
+        zoomToFitMenuItem.setText("Fit to Window");
+        zoomToFitMenuItem.addActionListener(evt -> imageView.zoomToFit());
+        viewMenu.add(zoomToFitMenuItem);
+
+        actualSizeMenuItem.setText("Actual Size");
+        actualSizeMenuItem.addActionListener(evt -> imageView.setZoom(1, null));
+        viewMenu.add(actualSizeMenuItem);
+
+        menuBar.add(viewMenu);
+
         // Image menu setup
         imageMenu.setText("Image");
 
@@ -94,6 +190,10 @@ public class NewJFrame extends javax.swing.JFrame {
         rotateImageCounterClockwiseMenuItem.addActionListener(evt -> rotateImage90Degrees(false));
         imageMenu.add(rotateImageCounterClockwiseMenuItem);
 
+        rotateImageByAngleMenuItem.setText("Rotate by Angle...");
+        rotateImageByAngleMenuItem.addActionListener(evt -> rotateImageByAngle());
+        imageMenu.add(rotateImageByAngleMenuItem);
+
         flipImageVerticalMenuItem.setText("Flip Vertical");
         flipImageVerticalMenuItem.addActionListener(evt -> flipImage(false, true));
         imageMenu.add(flipImageVerticalMenuItem);
@@ -102,6 +202,34 @@ public class NewJFrame extends javax.swing.JFrame {
         flipImageHorizontalMenuItem.addActionListener(evt -> flipImage(true, false));
         imageMenu.add(flipImageHorizontalMenuItem);
 
+        zoomInMenuItem.setText("Zoom In (2x)");
+        zoomInMenuItem.addActionListener(evt -> zoomImage(2));
+        imageMenu.add(zoomInMenuItem);
+
+        zoomOutMenuItem.setText("Zoom Out (0.5x)");
+        zoomOutMenuItem.addActionListener(evt -> zoomImage(0.5));
+        imageMenu.add(zoomOutMenuItem);
+
+        gammaCorrectionMenuItem.setText("Gamma Correction...");
+        gammaCorrectionMenuItem.addActionListener(evt -> applyGammaCorrection());
+        imageMenu.add(gammaCorrectionMenuItem);
+
+        histogramEqualizationMenuItem.setText("Histogram Equalization");
+        histogramEqualizationMenuItem.addActionListener(evt -> worker.apply(new EqualizeOp()));
+        imageMenu.add(histogramEqualizationMenuItem);
+
+        histogramExpansionMenuItem.setText("Histogram Expansion (Input Cropping)");
+        histogramExpansionMenuItem.addActionListener(evt -> worker.apply(new StretchOp()));
+        imageMenu.add(histogramExpansionMenuItem);
+
+        histogramCompressionMenuItem.setText("Histogram Compression (Output Cropping)...");
+        histogramCompressionMenuItem.addActionListener(evt -> applyHistogramCompression());
+        imageMenu.add(histogramCompressionMenuItem);
+
+        claheMenuItem.setText("Adaptive Equalization (CLAHE)");
+        claheMenuItem.addActionListener(evt -> applyClahe());
+        imageMenu.add(claheMenuItem);
+
         transparencyWithTwoImagesMenuItem.setText("Transparency with Two Images");
         transparencyWithTwoImagesMenuItem.addActionListener(evt -> buildTwoImagesTransparencyEffect());
         imageMenu.add(transparencyWithTwoImagesMenuItem);
@@ -110,6 +238,18 @@ public class NewJFrame extends javax.swing.JFrame {
         saltAndPepperNoiseMenuItem.addActionListener(evt -> applySaltAndPepperNoise());
         imageMenu.add(saltAndPepperNoiseMenuItem);
 
+        gaussianNoiseMenuItem.setText("Gaussian Noise...");
+        gaussianNoiseMenuItem.addActionListener(evt -> applyNoise(NoiseOp.Model.GAUSSIAN, "Standard deviation (gray levels):", "10"));
+        imageMenu.add(gaussianNoiseMenuItem);
+
+        speckleNoiseMenuItem.setText("Speckle Noise...");
+        speckleNoiseMenuItem.addActionListener(evt -> applyNoise(NoiseOp.Model.SPECKLE, "Standard deviation (fraction of the value):", "0.1"));
+        imageMenu.add(speckleNoiseMenuItem);
+
+        poissonNoiseMenuItem.setText("Poisson Noise...");
+        poissonNoiseMenuItem.addActionListener(evt -> applyNoise(NoiseOp.Model.POISSON, "Photons per gray level:", "1"));
+        imageMenu.add(poissonNoiseMenuItem);
+
 
         meanFilterMenuItem.setText("Mean Filter");
         meanFilterMenuItem.addActionListener(evt -> applyMeanFilter());
@@ -119,12 +259,52 @@ public class NewJFrame extends javax.swing.JFrame {
         medianFilterMenuItem.addActionListener(evt -> applyMedianFilter());
         imageMenu.add(medianFilterMenuItem);
 
+        gaussianBlurMenuItem.setText("Gaussian Blur...");
+        gaussianBlurMenuItem.addActionListener(evt -> applyGaussianBlur());
+        imageMenu.add(gaussianBlurMenuItem);
+
+        sharpenMenuItem.setText("Sharpen");
+        sharpenMenuItem.addActionListener(evt -> applyGrayFilter(new ConvolutionOp(SHARPEN)));
+        imageMenu.add(sharpenMenuItem);
+
         robertsEdgeMenuItem.setText("Roberts Edge Detection");
         robertsEdgeMenuItem.addActionListener(evt -> applyRobertsEdgeDetection());
         imageMenu.add(robertsEdgeMenuItem);
 
+        sobelEdgeMenuItem.setText("Sobel Edge Detection");
+        sobelEdgeMenuItem.addActionListener(evt -> applyGrayFilter(new GradientOp(GradientOp.Operator.SOBEL)));
+        imageMenu.add(sobelEdgeMenuItem);
+
+        prewittEdgeMenuItem.setText("Prewitt Edge Detection");
+        prewittEdgeMenuItem.addActionListener(evt -> applyGrayFilter(new GradientOp(GradientOp.Operator.PREWITT)));
+        imageMenu.add(prewittEdgeMenuItem);
+
+        freiChenEdgeMenuItem.setText("Frei-Chen Edge Detection");
+        freiChenEdgeMenuItem.addActionListener(evt -> applyGrayFilter(new GradientOp(GradientOp.Operator.FREI_CHEN)));
+        imageMenu.add(freiChenEdgeMenuItem);
+
+        cannyEdgeMenuItem.setText("Canny Edge Detection...");
+        cannyEdgeMenuItem.addActionListener(evt -> applyCannyEdgeDetection());
+        imageMenu.add(cannyEdgeMenuItem);
+
+        stereoDisparityMenuItem.setText("Stereo Disparity...");
+        stereoDisparityMenuItem.addActionListener(evt -> applyStereoDisparity());
+        imageMenu.add(stereoDisparityMenuItem);
+
+        // Values the coins of photos such as images/moedas*.jpeg
+        countCoinsMenuItem.setText("Count Coins");
+        countCoinsMenuItem.addActionListener(evt -> worker.apply(new CoinCounter()));
+        imageMenu.add(countCoinsMenuItem);
+
         menuBar.add(imageMenu);
 
+        // Progress of the running operation, hidden when idle
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        menuBar.add(Box.createHorizontalGlue());
+        menuBar.add(progressBar);
+
         setJMenuBar(menuBar);
 
         // Layout setup
@@ -133,13 +313,13 @@ public class NewJFrame extends javax.swing.JFrame {
         layout.setHorizontalGroup(
             layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(layout.createSequentialGroup()
-                .addComponent(imageLabel)
+                .addComponent(imageView)
                 .addGap(0, 400, Short.MAX_VALUE))
         );
         layout.setVerticalGroup(
             layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(layout.createSequentialGroup()
-                .addComponent(imageLabel)
+                .addComponent(imageView)
                 .addGap(0, 279, Short.MAX_VALUE))
         );
 
@@ -158,20 +338,14 @@ public class NewJFrame extends javax.swing.JFrame {
 
         if (option == JFileChooser.APPROVE_OPTION) {
             File selectedFile = fileChooser.getSelectedFile();
-            try {
-                currentImage = ImageIO.read(selectedFile);
-                displayImage(currentImage, true);
-                System.out.println("Image opened successfully!");
-            } catch (IOException e) {
-                System.out.println("Error: Unable to open the image file.");
-            }
+            worker.load(() -> ImageCache.shared().read(selectedFile));
         }
     }
 
     // Save image file
     private void saveImage(java.awt.event.ActionEvent evt) {
         JFileChooser fileChooser = new JFileChooser(new File("images"));
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("Image Files", "jpg", "png", "bmp", "gif");
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("Image Files", "jpg", "png", "bmp", "gif", "ppm", "pgm", "pbm");
         fileChooser.setFileFilter(filter);
         fileChooser.setDialogTitle("Save Image");
         int option = fileChooser.showSaveDialog(this);
@@ -182,89 +356,70 @@ public class NewJFrame extends javax.swing.JFrame {
             String format = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase();
 
             try {
-                if (!ImageIO.write(currentImage, format, selectedFile)) {
+                if (format.equals("ppm")) {
+                    NetpbmWriter.write(currentImage, selectedFile, '6');
+                } else if (format.equals("pgm")) {
+                    NetpbmWriter.write(currentImage, selectedFile, '5');
+                } else if (format.equals("pbm")) {
+                    NetpbmWriter.write(currentImage, selectedFile, '4');
+                } else if (!ImageIO.write(currentImage, format, selectedFile)) {
                     throw new IOException("Unsupported file format");
                 }
                 System.out.println("Image saved successfully!");
-            } catch (IOException e) {
+            } catch (IOException | IllegalArgumentException e) {
                 JOptionPane.showMessageDialog(this, "Error saving the image file: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
 
-    // Display the image on the JLabel
-    private void displayImage(BufferedImage image, boolean resize) {
-        ImageIcon icon = new ImageIcon(image);
+    // Display the image in the tiled view; only the changed tiles are redrawn
+    private void displayImage(BufferedImage image, BitSet changedTiles, boolean resize) {
         if (!isImageDisplayed) {
-            imageLabel.setIcon(icon);
             Container contentPane = getContentPane();
+            contentPane.removeAll();
             contentPane.setLayout(new GridLayout());
-            contentPane.add(new JScrollPane(imageLabel));
+            contentPane.add(new JScrollPane(imageView));
             isImageDisplayed = true;
-        } else {
-            imageLabel.setIcon(icon);
         }
+        imageView.setImage(image, changedTiles);
         if (resize) {
-            setSize(image.getWidth() + 25, image.getHeight() + 70);
+            // Never larger than the screen; bigger images are scrolled and zoomed in the view
+            Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+            int width = (int) Math.ceil(image.getWidth() * imageView.getZoom()) + 25;
+            int height = (int) Math.ceil(image.getHeight() * imageView.getZoom()) + 70;
+            setSize(Math.min(width, screen.width), Math.min(height, screen.height));
+            validate();
         }
     }
 
-    private static final char START_OF_COMMENT = '#';
-	private static final char SPACE_CHARACTER = ' ';
-	private static final char END_OF_LINE = '\n';
-
-    private static BufferedInputStream reader;
-    private static int processCharacters(char aChar) throws IOException {
-		StringBuilder characters = new StringBuilder();
-		char ch;		
-		while ( ( ch = (char) reader.read() ) != aChar ) {
-        	if ( ch == START_OF_COMMENT ) {
-        		while ( reader.read() != END_OF_LINE );
-        		continue;
-        	}
-        	characters.append(ch);
-        }
-		return Integer.valueOf(characters.toString());
-	}
+    // Called on the event dispatch thread with each finished image and the tiles it changed
+    private void showResult(BufferedImage image, BitSet changedTiles) {
+        boolean resize = currentImage == null || currentImage.getWidth() != image.getWidth()
+                || currentImage.getHeight() != image.getHeight();
+        currentImage = image;
+        displayImage(image, changedTiles, resize);
+    }
+
+    private void showError(Exception e) {
+        JOptionPane.showMessageDialog(this, "Error: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private void showProgress(int percent) {
+        progressBar.setVisible(percent >= 0);
+        progressBar.setValue(Math.max(0, percent));
+    }
 
     // ==================== Image manipulation methods ======================
 
     // Apply negative effect to the image
     private void applyNegativeEffect(java.awt.event.ActionEvent evt) {
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                Color originalColor = new Color(currentImage.getRGB(x, y));
-                int red = 255 - originalColor.getRed();
-                int green = 255 - originalColor.getGreen();
-                int blue = 255 - originalColor.getBlue();
-                Color negativeColor = new Color(red, green, blue);
-                currentImage.setRGB(x, y, negativeColor.getRGB());
-            }
-        }
-        displayImage(currentImage, true);
+        worker.apply(new NegativeOp());
     }
 
      // Apply grayscale effect to the image
      private void applyGrayscaleEffect(java.awt.event.ActionEvent evt) {
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-
-        // Create a new grayscale image of type TYPE_BYTE_GRAY
-        BufferedImage grayImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                Color originalColor = new Color(currentImage.getRGB(x, y));
-                int grayValue = (int) (0.299 * originalColor.getRed() + 0.587 * originalColor.getGreen() + 0.114 * originalColor.getBlue());
-                int rgb = new Color(grayValue, grayValue, grayValue).getRGB();
-                grayImage.setRGB(x, y, rgb);
-            }
-        }
-        currentImage = grayImage;
-        displayImage(currentImage, true);
+        // Produces an image of type TYPE_BYTE_GRAY
+        worker.apply(new GrayscaleOp());
     }
 
     // 1. Desenvolver os métodos abaixo:
@@ -277,7 +432,15 @@ public class NewJFrame extends javax.swing.JFrame {
             transparencySlider.setMajorTickSpacing(20);
             transparencySlider.setPaintTicks(true);
             transparencySlider.setPaintLabels(true);
-            transparencySlider.addChangeListener(e -> applyTransparencyEffect(transparencySlider.getValue()));
+            transparencySlider.addChangeListener(e -> {
+                if (transparencyDrag == null) {
+                    transparencyDrag = new Object();
+                }
+                applyTransparencyEffect(transparencyDrag, transparencySlider.getValue());
+                if (!transparencySlider.getValueIsAdjusting()) {
+                    transparencyDrag = null;
+                }
+            });
             
             // Add the slider to the frame
             getContentPane().add(transparencySlider, BorderLayout.SOUTH);
@@ -286,22 +449,10 @@ public class NewJFrame extends javax.swing.JFrame {
         transparencySlider.setVisible(true);
     }
 
-    private void applyTransparencyEffect(int alphaValue) {
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-        BufferedImage transparentImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                Color originalColor = new Color(currentImage.getRGB(x, y));
-                int alpha = (int) ((1.0 - (double) alphaValue / 100) * 255);
-                Color transparentColor = new Color(originalColor.getRed(), originalColor.getGreen(), originalColor.getBlue(), alpha);
-                transparentImage.setRGB(x, y, transparentColor.getRGB());
-            }
-        }
-
-        currentImage = transparentImage;
-        displayImage(currentImage, false);
+    // Keyed by the drag, so only the latest value is computed while the slider is dragged
+    // and the whole drag is one undo step
+    private void applyTransparencyEffect(Object drag, int alphaValue) {
+        worker.apply(drag, new TransparencyOp(alphaValue));
     }
 
 
@@ -321,24 +472,29 @@ public class NewJFrame extends javax.swing.JFrame {
         int option = fileChooser.showOpenDialog(this);
 
         if (option == JFileChooser.APPROVE_OPTION) {
-            File selectedFile = fileChooser.getSelectedFile();
-            try {
-                BufferedImage secondImage = ImageIO.read(selectedFile);
+            readOnWorker(fileChooser.getSelectedFile(), secondImage -> {
                 if (currentImage.getWidth() == secondImage.getWidth() && currentImage.getHeight() == secondImage.getHeight()) {
                     applyTransparencyEffectWithTwoImages(currentImage, secondImage);
                 } else {
                     JOptionPane.showMessageDialog(this, "Images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
+            });
+        }
+    }
+
+    // Decodes file on the worker thread, after the edits queued before it, and passes it
+    // to onLoaded on the EDT; a failure is shown like the errors of the operations
+    private void readOnWorker(File file, Consumer<BufferedImage> onLoaded) {
+        worker.preview(null, () -> {
+            try {
+                return ImageCache.shared().read(file);
             } catch (IOException e) {
-                JOptionPane.showMessageDialog(this, "Error loading the second image.", "Error", JOptionPane.ERROR_MESSAGE);
+                throw new CompletionException(e);
             }
-        }
+        }, onLoaded);
     }
 
     private void applyTransparencyEffectWithTwoImages(BufferedImage image1, BufferedImage image2) {
-        int width = image1.getWidth();
-        int height = image1.getHeight();
-
         // Create a new frame to display the two images side by side
         JFrame sideBySideFrame = new JFrame("Images Side by Side");
         sideBySideFrame.setLayout(new GridLayout(1, 2));
@@ -364,36 +520,50 @@ public class NewJFrame extends javax.swing.JFrame {
         alphaSlider.setPaintTicks(true);
         alphaSlider.setPaintLabels(true);
 
+        // The images are unpacked once; while the slider is dragged a coarse blend is
+        // shown stretched to full size, and the full blend when it is released
+        BlendEngine engine = new BlendEngine(image1, image2);
+        int width = engine.getWidth();
+        int height = engine.getHeight();
         alphaSlider.addChangeListener(e -> {
             int alphaValue = alphaSlider.getValue();
-            BufferedImage blendedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-            for (int x = 0; x < width; x++) {
-                for (int y = 0; y < height; y++) {
-                    Color color1 = new Color(image1.getRGB(x, y));
-                    Color color2 = new Color(image2.getRGB(x, y));
-
-                    double alpha = alphaValue / 100.0;
-                    int red = (int) (color1.getRed() * (1 - alpha) + color2.getRed() * alpha);
-                    int green = (int) (color1.getGreen() * (1 - alpha) + color2.getGreen() * alpha);
-                    int blue = (int) (color1.getBlue() * (1 - alpha) + color2.getBlue() * alpha);
-
-                    Color blendedColor = new Color(red, green, blue);
-                    blendedImage.setRGB(x, y, blendedColor.getRGB());
-                }
+            if (alphaSlider.getValueIsAdjusting()) {
+                worker.preview(alphaSlider, () -> engine.preview(alphaValue, PREVIEW_PIXELS),
+                        blendedImage -> blendedImageLabel.setIcon(stretchedIcon(blendedImage, width, height)));
+            } else {
+                worker.preview(alphaSlider, () -> engine.blend(alphaValue),
+                        blendedImage -> blendedImageLabel.setIcon(new ImageIcon(blendedImage)));
             }
-
-            blendedImageLabel.setIcon(new ImageIcon(blendedImage));
         });
 
         blendedFrame.add(alphaSlider, BorderLayout.SOUTH);
         blendedFrame.pack();
         blendedFrame.setVisible(true);
 
-        // Trigger the initial blending
-        alphaSlider.setValue(50);
+        // Trigger the initial blending (setValue does not notify when the value is unchanged)
+        worker.preview(alphaSlider, () -> engine.blend(alphaSlider.getValue()),
+                blendedImage -> blendedImageLabel.setIcon(new ImageIcon(blendedImage)));
     }
 
+    // Draws image scaled to width x height, so a preview takes the place of the full image
+    private static Icon stretchedIcon(BufferedImage image, int width, int height) {
+        return new Icon() {
+            @Override
+            public void paintIcon(Component c, Graphics g, int x, int y) {
+                g.drawImage(image, x, y, width, height, null);
+            }
+
+            @Override
+            public int getIconWidth() {
+                return width;
+            }
+
+            @Override
+            public int getIconHeight() {
+                return height;
+            }
+        };
+    }
 
     // 2. Pesquisar e desenvolver um programa que permita ler um dos arquivos PNM e visualizar a
     // imagem na tela. O programa deverá permitir também a exportação da imagem para GIF ou BMP
@@ -406,10 +576,10 @@ public class NewJFrame extends javax.swing.JFrame {
     // 6. Formato PPM (P6) 
 
 
-    // 6. Formato PPM (P6) 
+    // 6. Formato PPM (P6), e também P3
     private void openPPMImage() {
         JFileChooser fileChooser = new JFileChooser(new File("images"));
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("PPM Images", "ppm");
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("PPM Images", "ppm", "pnm");
         fileChooser.setFileFilter(filter);
         int option = fileChooser.showOpenDialog(this);
         if (option == JFileChooser.APPROVE_OPTION) {
@@ -418,63 +588,14 @@ public class NewJFrame extends javax.swing.JFrame {
     }
 
     private void readPPMImage(File file){
-        try {
-            reader = new BufferedInputStream( new FileInputStream(file.getAbsolutePath()) );
-            final char header1 = (char) reader.read();
-            final char header2 = (char) reader.read();
-            final char header3 = (char) reader.read();
-
-            if (header1 != 'P' || header2 != '6' || header3 != END_OF_LINE) {
-                System.out.println("Error: Invalid PPM format.");
-                return;
-            }
-            
-            final int width = processCharacters(SPACE_CHARACTER);  
-            final int height = processCharacters(END_OF_LINE);
-            final int maxColorValue = processCharacters(END_OF_LINE);
-
-            if ( maxColorValue < 0 || maxColorValue > 255 ) {
-                reader.close();
-                throw new IllegalArgumentException("Maximum color value is outside the range 0..255");
-            }   
-
-            // Remove any comments before reading data
-            reader.mark(1);
-            while ( reader.read() == START_OF_COMMENT ) {
-                while ( reader.read() != END_OF_LINE );
-                reader.mark(1);
-            }
-            reader.reset();
-
-            // Read data
-            BufferedImage bitmap = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        
-            byte[] buffer = new byte[width * 3];
-            for ( int y = 0; y < height; y++ ) {
-                reader.read(buffer, 0, buffer.length);
-                for ( int x = 0; x < width; x++ ) {                	
-                    Color color = new Color(Byte.toUnsignedInt(buffer[x * 3]),
-                                            Byte.toUnsignedInt(buffer[x * 3 + 1]),
-                                            Byte.toUnsignedInt(buffer[x * 3 + 2]));
-                    bitmap.setRGB(x, y, color.getRGB());
-                }
-            }
-            
-            reader.close();
-
-            currentImage = bitmap;
-            displayImage(currentImage, true);
-
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error reading PPM file: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        worker.load(() -> ImageCache.shared().read(file));
     }
 
     
-    // 4. Formato PGM (P5)
+    // 4. Formato PGM (P5), e também P2 e PBM (P1 e P4)
     private void openPGMImage() {
         JFileChooser fileChooser = new JFileChooser(new File("images"));
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("PGM Images", "pgm");
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("PGM and PBM Images", "pgm", "pbm");
         fileChooser.setFileFilter(filter);
         int option = fileChooser.showOpenDialog(this);
         if (option == JFileChooser.APPROVE_OPTION) {
@@ -483,54 +604,7 @@ public class NewJFrame extends javax.swing.JFrame {
     }
     
     private void readPGMImage(File file) {
-        try {
-            reader = new BufferedInputStream(new FileInputStream(file.getAbsolutePath()));
-            final char header1 = (char) reader.read();
-            final char header2 = (char) reader.read();
-            final char header3 = (char) reader.read();
-    
-            if (header1 != 'P' || header2 != '5' || header3 != END_OF_LINE) {
-                System.out.println("Error: Invalid PGM format.");
-                return;
-            }
-    
-            final int width = processCharacters(SPACE_CHARACTER);
-            final int height = processCharacters(END_OF_LINE);
-            final int maxGrayValue = processCharacters(END_OF_LINE);
-    
-            if (maxGrayValue < 0 || maxGrayValue > 255) {
-                reader.close();
-                throw new IllegalArgumentException("Maximum grayscale value is outside the range 0..255");
-            }
-    
-            // Skip comment lines if present
-            reader.mark(1);
-            while (reader.read() == START_OF_COMMENT) {
-                while (reader.read() != END_OF_LINE);
-                reader.mark(1);
-            }
-            reader.reset();
-    
-            BufferedImage bitmap = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-    
-            byte[] buffer = new byte[width];
-            for (int y = 0; y < height; y++) {
-                reader.read(buffer, 0, buffer.length);
-                for (int x = 0; x < width; x++) {
-                    int gray = Byte.toUnsignedInt(buffer[x]);
-                    Color color = new Color(gray, gray, gray);
-                    bitmap.setRGB(x, y, color.getRGB());
-                }
-            }
-    
-            reader.close();
-    
-            currentImage = bitmap;
-            displayImage(currentImage, true);
-    
-        } catch (IOException e) {
-            JOptionPane.showMessageDialog(this, "Error reading PGM file: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
+        worker.load(() -> ImageCache.shared().read(file));
     }
 
     // 3. Desenvolver um método para segmentar uma imagem no formato RGB mantendo na imagem os
@@ -538,53 +612,31 @@ public class NewJFrame extends javax.swing.JFrame {
     // RGB da cor desejada. 
     private void buildColorSegmentationEffect() {
         JColorChooser colorChooser = new JColorChooser();
-        JDialog colorDialog = JColorChooser.createDialog(this, "Select Target Color", true, colorChooser, e -> {
-            Color selectedColor = colorChooser.getColor();
-            if (selectedColor != null) {
-                applyColorSegmentation(selectedColor.getRed(), selectedColor.getGreen(), selectedColor.getBlue());
-            }
-        }, null);
+        JComboBox<ColorSegmentationOp.Metric> metricBox = new JComboBox<>(ColorSegmentationOp.Metric.values());
+        JSpinner thresholdSpinner = new JSpinner(new SpinnerNumberModel(ColorSegmentationOp.DEFAULT_THRESHOLD, 0, 442, 1));
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        options.add(new JLabel("Distance:"));
+        options.add(metricBox);
+        options.add(new JLabel("Threshold:"));
+        options.add(thresholdSpinner);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(colorChooser, BorderLayout.CENTER);
+        panel.add(options, BorderLayout.SOUTH);
 
         if (transparencySlider != null) {
             transparencySlider.setVisible(false);
         }
 
-        colorDialog.setVisible(true);
-    }
-
-    private void applyColorSegmentation(int targetRed, int targetGreen, int targetBlue) {
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-        BufferedImage segmentedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                Color originalColor = new Color(currentImage.getRGB(x, y));
-                
-                
-                int maxValueRed = targetRed + 50;
-                int minValueRed = targetRed - 50;
-                boolean isCloseToRedColor = originalColor.getRed() >= minValueRed && originalColor.getRed() <= maxValueRed;
-
-                int maxValueGreen = targetGreen + 50;
-                int minValueGreen = targetGreen - 50;
-                boolean isCloseToGreenColor = originalColor.getGreen() >= minValueGreen && originalColor.getGreen() <= maxValueGreen;
-
-                int maxValueBlue = targetBlue + 50;
-                int minValueBlue = targetBlue - 50;
-                boolean isCloseToBlueColor = originalColor.getBlue() >= minValueBlue && originalColor.getBlue() <= maxValueBlue;
-
-                boolean isCloseToTargetColor = isCloseToRedColor && isCloseToGreenColor && isCloseToBlueColor;
-                if (isCloseToTargetColor) {
-                    segmentedImage.setRGB(x, y, originalColor.getRGB());
-                } else {
-                    segmentedImage.setRGB(x, y, Color.BLACK.getRGB());
-                }
-            }
+        int option = JOptionPane.showConfirmDialog(this, panel, "Select Target Color", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        Color selectedColor = colorChooser.getColor();
+        if (option == JOptionPane.OK_OPTION && selectedColor != null) {
+            applyColorSegmentation((ColorSegmentationOp.Metric) metricBox.getSelectedItem(),
+                    ((Number) thresholdSpinner.getValue()).intValue(), selectedColor.getRGB() & 0xFFFFFF);
         }
+    }
 
-        currentImage = segmentedImage;
-        displayImage(currentImage, true);
+    private void applyColorSegmentation(ColorSegmentationOp.Metric metric, int threshold, int targetColor) {
+        worker.apply(new ColorSegmentationOp(metric, threshold, targetColor));
     }
     
 
@@ -613,48 +665,70 @@ public class NewJFrame extends javax.swing.JFrame {
 
     // 4. 1) Rotação da imagem no sentido horário e anti-horário (com ângulos de 90º);
     private void rotateImage90Degrees(boolean clockwise) {
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-
-        // Necessário para quando imagem não for quadrada
-        BufferedImage rotatedImage = new BufferedImage(height, width, BufferedImage.TYPE_INT_RGB);
+        // Width and height are swapped when the image is not square
+        worker.apply(new RotateOp(clockwise ? 90 : 270));
+    }
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (clockwise) {
-                    rotatedImage.setRGB(height - y - 1, x, currentImage.getRGB(x, y)); // Rotate 90 degrees clockwise
-                } else {
-                    rotatedImage.setRGB(y, width - x - 1, currentImage.getRGB(x, y)); // Rotate 90 degrees counter-clockwise
-                }
-            }
+    // 4. 2. Rotação da imagem em diferentes ângulos (qualquer grau inteiro);
+    private void rotateImageByAngle() {
+        String value = JOptionPane.showInputDialog(this, "Angle in degrees (clockwise):", "45");
+        if (value == null) {
+            return;
         }
+        try {
+            // The canvas grows to fit the rotated image; the uncovered corners are left black
+            worker.apply(AffineOp.rotate(Integer.parseInt(value.trim()), Interpolation.BILINEAR));
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "The angle must be a whole number of degrees.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
-        currentImage = rotatedImage;
-        displayImage(currentImage, true);
+    // 4. 4. Ampliação (zoom in) em 2x e redução (zoom out) 0,5x
+    private void zoomImage(double factor) {
+        worker.apply(new ResizeOp(factor, Interpolation.BILINEAR));
     }
 
     // 4. 3. Espelhamento vertical e horizontal; 
     private void flipImage(boolean horizontal, boolean vertical) {
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
+        worker.apply(new FlipOp(horizontal, vertical));
+    }
+
+    // 4. 5. Correção gamma: c' = 255 * (c / 255)^gamma, aplicada por tabela (LutOp)
+    private void applyGammaCorrection() {
+        String value = JOptionPane.showInputDialog(this, "Gamma (< 1 brightens, > 1 darkens):", "1.0");
+        if (value == null) {
+            return;
+        }
+        try {
+            worker.apply(LutOp.gamma(Double.parseDouble(value.trim())));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Gamma must be a positive number.", "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
-        BufferedImage segmentedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if(horizontal) {
-                    segmentedImage.setRGB(width - x - 1, y, currentImage.getRGB(x, y)); // Horizontal flip
-                }
-                if(vertical) {
-                    segmentedImage.setRGB(x, height - y - 1, currentImage.getRGB(x, y)); // Vertical flip
-                }
+    // 4. 8. Compressão de histograma (Output cropping): os valores 0..255 passam a ocupar
+    // apenas a faixa [min, max]. A equalização (4. 7.) e a expansão (4. 9.) usam
+    // EqualizeOp e StretchOp diretamente.
+    private void applyHistogramCompression() {
+        String value = JOptionPane.showInputDialog(this, "Output range (min-max):", "64-192");
+        if (value == null) {
+            return;
+        }
+        String[] parts = value.trim().split("\\s*-\\s*");
+        try {
+            if (parts.length != 2) {
+                throw new IllegalArgumentException();
             }
+            worker.apply(LutOp.levels(0, 255, Integer.parseInt(parts[0]), Integer.parseInt(parts[1])));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Enter two values between 0 and 255, such as 64-192.", "Error", JOptionPane.ERROR_MESSAGE);
         }
-
-        currentImage = segmentedImage;
-        displayImage(currentImage, true);
     }
 
+    private void applyClahe() {
+        worker.apply(grayOnly(new ClaheOp()));
+    }
 
     // =================================== Trabalho 2 ===================================
     // 1 Desenvolver uma função para escolher aleatoriamente 5% dos pixels, de uma imagem em escala de cinza, e definir
@@ -664,93 +738,43 @@ public class NewJFrame extends javax.swing.JFrame {
     // solicitado;
 
     private void applySaltAndPepperNoise() {
-        if (currentImage.getType() != BufferedImage.TYPE_BYTE_GRAY) {
-            JOptionPane.showMessageDialog(this, "Please load a grayscale image first.", "Error", JOptionPane.ERROR_MESSAGE);
+        worker.apply(grayOnly(new SaltAndPepperOp()));
+    }
+
+    // Ruído gaussiano, speckle e de Poisson, em imagens coloridas ou em escala de cinza
+    private void applyNoise(NoiseOp.Model model, String prompt, String initial) {
+        String value = JOptionPane.showInputDialog(this, prompt, initial);
+        if (value == null) {
             return;
         }
-
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-        BufferedImage noisyImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                Color originalColor = new Color(currentImage.getRGB(x, y));
-                int noise = (Math.random() < 0.05) ? (originalColor.getRed() > 127 ? 255 : 0) : originalColor.getRed();
-                noisyImage.setRGB(x, y, new Color(noise, noise, noise).getRGB());
-            }
+        try {
+            worker.apply(new NoiseOp(model, Double.parseDouble(value.trim())));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Enter a non-negative number.", "Error", JOptionPane.ERROR_MESSAGE);
         }
-
-        currentImage = noisyImage;
-        displayImage(currentImage, true);
     }
 
 
     // Filtro da Média para imagens em escala de cinza com ruído sal e pimenta
     private void applyMeanFilter() {
-        if (currentImage.getType() != BufferedImage.TYPE_BYTE_GRAY) {
-            JOptionPane.showMessageDialog(this, "Please load a grayscale image first.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-        BufferedImage filteredImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        int[] dx = {-1, 0, 1};
-        int[] dy = {-1, 0, 1};
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                int sum = 0;
-                int count = 0;
-                for (int i : dx) {
-                    for (int j : dy) {
-                        int nx = x + i;
-                        int ny = y + j;
-                        if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
-                            int val = new Color(currentImage.getRGB(nx, ny)).getRed();
-                            sum += val;
-                            count++;
-                        }
-                    }
-                }
-                int mean = sum / count;
-                filteredImage.setRGB(x, y, new Color(mean, mean, mean).getRGB());
-            }
-        }
-        currentImage = filteredImage;
-        displayImage(currentImage, true);
+        worker.apply(grayOnly(new MeanFilterOp()));
     }
 
     // Filtro da Mediana para imagens em escala de cinza com ruído sal e pimenta
     private void applyMedianFilter() {
-        if (currentImage.getType() != BufferedImage.TYPE_BYTE_GRAY) {
-            JOptionPane.showMessageDialog(this, "Please load a grayscale image first.", "Error", JOptionPane.ERROR_MESSAGE);
+        worker.apply(grayOnly(new MedianFilterOp()));
+    }
+
+    private void applyGaussianBlur() {
+        String value = JOptionPane.showInputDialog(this, "Sigma:", "1.5");
+        if (value == null) {
             return;
         }
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-        BufferedImage filteredImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        int[] dx = {-1, 0, 1};
-        int[] dy = {-1, 0, 1};
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                java.util.List<Integer> values = new java.util.ArrayList<>();
-                for (int i : dx) {
-                    for (int j : dy) {
-                        int nx = x + i;
-                        int ny = y + j;
-                        if (nx >= 0 && nx < width && ny >= 0 && ny < height) {
-                            int val = new Color(currentImage.getRGB(nx, ny)).getRed();
-                            values.add(val);
-                        }
-                    }
-                }
-                java.util.Collections.sort(values);
-                int median = values.get(values.size() / 2);
-                filteredImage.setRGB(x, y, new Color(median, median, median).getRGB());
-            }
+        try {
+            worker.apply(grayOnly(new ConvolutionOp(ConvolutionKernel.gaussian(Double.parseDouble(value.trim())))));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Sigma must be a positive number.", "Error", JOptionPane.ERROR_MESSAGE);
         }
-        currentImage = filteredImage;
-        displayImage(currentImage, true);
     }
 
 
@@ -762,30 +786,70 @@ public class NewJFrame extends javax.swing.JFrame {
     // d) Frei-Chen
     // e) Canny
     private void applyRobertsEdgeDetection() {
-        if (currentImage.getType() != BufferedImage.TYPE_BYTE_GRAY) {
-            JOptionPane.showMessageDialog(this, "Please load a grayscale image first.", "Error", JOptionPane.ERROR_MESSAGE);
+        applyGrayFilter(new RobertsEdgeOp());
+    }
+
+    // Filtros de vizinhança que só aceitam imagens em escala de cinza
+    private void applyGrayFilter(ImageOp op) {
+        worker.apply(grayOnly(op));
+    }
+
+    // op, refused unless the image the job receives is gray. Checking currentImage here
+    // would look at the image shown, not at the result of the edits still queued.
+    private static ImageOp grayOnly(ImageOp op) {
+        return src -> {
+            if (!Rasters.isGrayscale(src)) {
+                throw new IllegalArgumentException("Please convert the image to grayscale first.");
+            }
+            return op.filter(src);
+        };
+    }
+
+    private void applyCannyEdgeDetection() {
+        String value = JOptionPane.showInputDialog(this, "Thresholds (low-high):", CannyOp.DEFAULT_LOW + "-" + CannyOp.DEFAULT_HIGH);
+        if (value == null) {
             return;
         }
-        int width = currentImage.getWidth();
-        int height = currentImage.getHeight();
-        BufferedImage edgeImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-
-        for (int x = 0; x < width - 1; x++) {
-            for (int y = 0; y < height - 1; y++) {
-                int p1 = new Color(currentImage.getRGB(x, y)).getRed();
-                int p2 = new Color(currentImage.getRGB(x + 1, y + 1)).getRed();
-                int p3 = new Color(currentImage.getRGB(x + 1, y)).getRed();
-                int p4 = new Color(currentImage.getRGB(x, y + 1)).getRed();
-                int gx = p1 - p2;
-                int gy = p3 - p4;
-                int g = (int)Math.min(255, Math.sqrt(gx * gx + gy * gy));
-                edgeImage.setRGB(x, y, new Color(g, g, g).getRGB());
+        String[] parts = value.trim().split("\\s*-\\s*");
+        try {
+            if (parts.length != 2) {
+                throw new IllegalArgumentException();
             }
+            worker.apply(grayOnly(new CannyOp(CannyOp.DEFAULT_SIGMA, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]))));
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Enter two thresholds with low <= high, such as 50-150.", "Error", JOptionPane.ERROR_MESSAGE);
         }
-        currentImage = edgeImage;
-        displayImage(currentImage, true);
     }
 
+    // Disparity map of a stereo pair: the current image is the left view, the chosen file
+    // the right one (e.g. images/ppm/tree_1.ppm and tree_2.ppm). Nearer is brighter.
+    private void applyStereoDisparity() {
+        if (currentImage == null) {
+            JOptionPane.showMessageDialog(this, "Please load the left image first.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JFileChooser fileChooser = new JFileChooser(new File("images"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Images", "ppm", "pgm", "bmp", "jpg", "png", "gif"));
+        fileChooser.setDialogTitle("Open Right Image");
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        readOnWorker(fileChooser.getSelectedFile(), right -> {
+            if (right.getWidth() != currentImage.getWidth() || right.getHeight() != currentImage.getHeight()) {
+                JOptionPane.showMessageDialog(this, "Images must have the same dimensions.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            String value = JOptionPane.showInputDialog(this, "Largest disparity (pixels):", String.valueOf(DisparityOp.DEFAULT_MAX_DISPARITY));
+            if (value == null) {
+                return;
+            }
+            try {
+                worker.apply(new DisparityOp(right, Integer.parseInt(value.trim())));
+            } catch (IllegalArgumentException e) {
+                JOptionPane.showMessageDialog(this, "The largest disparity must be a whole number of pixels, 0 or more.", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
 
     // Exit application
     private void exitApplication(java.awt.event.ActionEvent evt) {
@@ -799,26 +863,52 @@ public class NewJFrame extends javax.swing.JFrame {
     }
 
     // Variables declaration
-    private javax.swing.JLabel imageLabel;
+    private TiledImageView imageView;
     private javax.swing.JMenuBar menuBar;
     private javax.swing.JMenu fileMenu;
+    private javax.swing.JMenu editMenu;
+    private javax.swing.JMenu viewMenu;
     private javax.swing.JMenu imageMenu;
     private javax.swing.JMenuItem openMenuItem;
     private javax.swing.JMenuItem openPPMMenuItem;
     private javax.swing.JMenuItem openPGMMenuItem;
     private javax.swing.JMenuItem saveMenuItem;
     private javax.swing.JMenuItem exitMenuItem;
+    private javax.swing.JMenuItem undoMenuItem;
+    private javax.swing.JMenuItem redoMenuItem;
+    private javax.swing.JMenuItem zoomToFitMenuItem;
+    private javax.swing.JMenuItem actualSizeMenuItem;
     private javax.swing.JMenuItem negativeMenuItem;
     private javax.swing.JMenuItem grayscaleMenuItem;
     private javax.swing.JMenuItem transparencyMenuItem;
     private javax.swing.JMenuItem colorSegmentationMenuItem;
     private javax.swing.JMenuItem rotateImageClockwiseMenuItem;
     private javax.swing.JMenuItem rotateImageCounterClockwiseMenuItem;
+    private javax.swing.JMenuItem rotateImageByAngleMenuItem;
     private javax.swing.JMenuItem flipImageVerticalMenuItem;
     private javax.swing.JMenuItem flipImageHorizontalMenuItem;
+    private javax.swing.JMenuItem zoomInMenuItem;
+    private javax.swing.JMenuItem zoomOutMenuItem;
+    private javax.swing.JMenuItem gammaCorrectionMenuItem;
+    private javax.swing.JMenuItem histogramEqualizationMenuItem;
+    private javax.swing.JMenuItem histogramExpansionMenuItem;
+    private javax.swing.JMenuItem histogramCompressionMenuItem;
+    private javax.swing.JMenuItem claheMenuItem;
     private javax.swing.JMenuItem transparencyWithTwoImagesMenuItem;
     private javax.swing.JMenuItem saltAndPepperNoiseMenuItem;
+    private javax.swing.JMenuItem gaussianNoiseMenuItem;
+    private javax.swing.JMenuItem speckleNoiseMenuItem;
+    private javax.swing.JMenuItem poissonNoiseMenuItem;
     private javax.swing.JMenuItem meanFilterMenuItem;
     private javax.swing.JMenuItem medianFilterMenuItem;
+    private javax.swing.JMenuItem gaussianBlurMenuItem;
+    private javax.swing.JMenuItem sharpenMenuItem;
     private javax.swing.JMenuItem robertsEdgeMenuItem;
+    private javax.swing.JMenuItem sobelEdgeMenuItem;
+    private javax.swing.JMenuItem prewittEdgeMenuItem;
+    private javax.swing.JMenuItem freiChenEdgeMenuItem;
+    private javax.swing.JMenuItem cannyEdgeMenuItem;
+    private javax.swing.JMenuItem stereoDisparityMenuItem;
+    private javax.swing.JMenuItem countCoinsMenuItem;
+    private javax.swing.JProgressBar progressBar;
 }
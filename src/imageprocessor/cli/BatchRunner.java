@@ -0,0 +1,283 @@
+package imageprocessor.cli;
+
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Pipeline;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import imageprocessor.io.ImageFiles;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Headless command-line entry point: runs a pipeline over many files.
+//
+//  java -cp <jar> imageprocessor.cli.BatchRunner [options] <input>... <pipeline> <output-dir>
+//
+// Inputs are files or glob patterns such as "images/ppm/*.ppm" (quote them so the shell
+// does not expand them; "**" matches across directories). Every file goes through
+// decode -> pipeline -> encode. Decoding and encoding run on I/O threads and the ops on
+// compute threads, so different files overlap in different stages, while at most
+// --in-flight files are held in memory at once.
+//
+// A file matched by a pattern is written to the same path relative to the output
+// directory as it has relative to the directory the pattern starts in, so a/x.ppm and
+// b/x.ppm from "**/*.ppm" do not overwrite each other. Inputs that would still end up
+// at the same output file are refused before anything runs.
+public final class BatchRunner {
+
+    private static final String USAGE = "Usage: BatchRunner [options] <input>... <pipeline> <output-dir>\n"
+            + "Options:\n"
+            + "  --threads N      parallelism of the ops (default: all processors)\n"
+            + "  --in-flight N    images held in memory at once (default: 4)\n"
+            + "  --io-threads N   threads that decode and encode files (default: 2)\n"
+            + "  --format EXT     output format, e.g. png or pgm (default: the input format)\n"
+            + "Pipeline: comma-separated steps, e.g. grayscale,median:r=2,roberts\n"
+            + "Steps: " + PipelineSpec.HELP;
+
+    private final Pipeline pipeline;
+    private final File outputDir;
+    private final String format;
+    private final int inFlight;
+    private final int ioThreads;
+
+    public BatchRunner(List<ImageOp> pipeline, File outputDir, String format, int inFlight, int ioThreads) {
+        if (inFlight < 1 || ioThreads < 1) {
+            throw new IllegalArgumentException("--in-flight and --io-threads must be at least 1");
+        }
+        this.pipeline = new Pipeline(pipeline);
+        this.outputDir = outputDir;
+        this.format = format;
+        this.inFlight = inFlight;
+        this.ioThreads = ioThreads;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        try {
+            System.exit(run(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Returns the process exit code: 0 if every file was processed, 1 otherwise
+    static int run(String[] args) throws IOException {
+        List<String> positional = new ArrayList<>();
+        String format = null;
+        int inFlight = 4;
+        int ioThreads = 2;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    TileScheduler.setShared(new TileScheduler(intOption(args, ++i)));
+                    break;
+                case "--in-flight":
+                    inFlight = intOption(args, ++i);
+                    break;
+                case "--io-threads":
+                    ioThreads = intOption(args, ++i);
+                    break;
+                case "--format":
+                    format = option(args, ++i).toLowerCase(Locale.ROOT);
+                    break;
+                case "-h":
+                case "--help":
+                    System.out.println(USAGE);
+                    return 0;
+                default:
+                    positional.add(args[i]);
+                    break;
+            }
+        }
+        if (positional.size() < 3) {
+            throw new IllegalArgumentException("Expected at least one input, a pipeline and an output directory");
+        }
+        File outputDir = new File(positional.get(positional.size() - 1));
+        List<ImageOp> pipeline = PipelineSpec.parse(positional.get(positional.size() - 2));
+        Map<File, String> inputs = expand(positional.subList(0, positional.size() - 2));
+        if (inputs.isEmpty()) {
+            System.err.println("No input files matched.");
+            return 1;
+        }
+        return new BatchRunner(pipeline, outputDir, format, inFlight, ioThreads).process(inputs) == 0 ? 0 : 1;
+    }
+
+    // Processes every file and returns the number of failures. inputs maps each file to
+    // its output path relative to the output directory, without the extension.
+    public int process(Map<File, String> inputs) {
+        checkOutputs(inputs);
+        ExecutorService io = Executors.newFixedThreadPool(ioThreads, daemon("batch-io"));
+        ExecutorService compute = Executors.newFixedThreadPool(Math.min(inFlight, 2), daemon("batch-compute"));
+        Semaphore permits = new Semaphore(inFlight);
+        AtomicInteger failures = new AtomicInteger();
+        List<CompletableFuture<File>> jobs = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (Map.Entry<File, String> entry : inputs.entrySet()) {
+                File input = entry.getKey();
+                permits.acquireUninterruptibly();
+                jobs.add(CompletableFuture.supplyAsync(() -> decode(input), io)
+                        .thenApplyAsync(pipeline::filter, compute)
+                        .thenApplyAsync(image -> encode(image, outputFile(input, entry.getValue(), image)), io)
+                        .whenComplete((output, error) -> {
+                            permits.release();
+                            if (error != null) {
+                                failures.incrementAndGet();
+                                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                                System.err.println("Failed " + input + ": " + cause.getMessage());
+                            } else {
+                                System.out.println(input + " -> " + output);
+                            }
+                        }));
+            }
+            CompletableFuture.allOf(jobs.toArray(new CompletableFuture<?>[0])).exceptionally(error -> null).join();
+        } finally {
+            io.shutdown();
+            compute.shutdown();
+        }
+        System.out.printf("Processed %d file(s), %d failed, in %.1f s%n", inputs.size(), failures.get(),
+                (System.nanoTime() - start) / 1e9);
+        return failures.get();
+    }
+
+    private static BufferedImage decode(File input) {
+        try {
+            return ImageFiles.read(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static File encode(BufferedImage image, File output) {
+        try {
+            Files.createDirectories(output.getAbsoluteFile().getParentFile().toPath());
+            ImageFiles.write(image, output);
+            return output;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Output file: the relative path with the --format extension, or the input's own.
+    // Netpbm inputs are written as pgm or ppm depending on the result.
+    private File outputFile(File input, String path, BufferedImage result) {
+        String extension = format != null ? format : ImageFiles.extension(input);
+        if (format == null && ImageFiles.isNetpbm(extension)) {
+            extension = Rasters.isGrayscale(result) ? "pgm" : "ppm";
+        }
+        return new File(outputDir, path + "." + extension);
+    }
+
+    // Refuses inputs that could be written to the same file. Netpbm inputs count as
+    // any Netpbm extension, since theirs depends on the result.
+    private void checkOutputs(Map<File, String> inputs) {
+        Map<String, File> outputs = new HashMap<>();
+        for (Map.Entry<File, String> entry : inputs.entrySet()) {
+            String extension = format != null ? format : ImageFiles.extension(entry.getKey());
+            String key = new File(entry.getValue()).getPath() + "." + (ImageFiles.isNetpbm(extension) ? "pgm/ppm" : extension);
+            File other = outputs.put(key, entry.getKey());
+            if (other != null) {
+                throw new IllegalArgumentException(other + " and " + entry.getKey() + " would both be written to "
+                        + new File(outputDir, key) + "; process them into different output directories");
+            }
+        }
+    }
+
+    // Expands glob patterns and maps every file to its output path without the extension:
+    // the path below the pattern's base directory, or the name of a plain path
+    static Map<File, String> expand(List<String> patterns) throws IOException {
+        Map<File, String> files = new LinkedHashMap<>();
+        for (String pattern : patterns) {
+            int glob = indexOfGlob(pattern);
+            if (glob < 0) {
+                File file = new File(pattern);
+                files.putIfAbsent(file, stem(file.getName()));
+                continue;
+            }
+            int slash = Math.max(pattern.lastIndexOf('/', glob), pattern.lastIndexOf(File.separatorChar, glob));
+            Path base = Paths.get(slash < 0 ? "." : pattern.substring(0, slash + 1));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(slash + 1));
+            if (!Files.isDirectory(base)) {
+                continue;
+            }
+            int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.substring(slash + 1).split("[/\\\\]").length;
+            try (Stream<Path> paths = Files.walk(base, depth, FileVisitOption.FOLLOW_LINKS)) {
+                List<Path> matched = paths.filter(Files::isRegularFile)
+                        .filter(path -> matcher.matches(base.relativize(path)))
+                        .sorted()
+                        .collect(Collectors.toList());
+                for (Path path : matched) {
+                    files.putIfAbsent(path.toFile(), stem(base.relativize(path).toString()));
+                }
+            }
+        }
+        return files;
+    }
+
+    // path without the extension of its last name
+    private static String stem(String path) {
+        int dot = path.lastIndexOf('.');
+        int slash = Math.max(path.lastIndexOf('/'), path.lastIndexOf(File.separatorChar));
+        return dot > slash + 1 ? path.substring(0, dot) : path;
+    }
+
+    private static int indexOfGlob(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String option(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        }
+        return args[i];
+    }
+
+    private static int intOption(String[] args, int i) {
+        String value = option(args, i);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(args[i - 1] + " must be an integer: " + value);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,384 @@
+package imageprocessor.cli;
+
+import imageprocessor.core.BorderMode;
+import imageprocessor.core.ConvolutionKernel;
+import imageprocessor.core.ImageOp;
+import imageprocessor.io.ImageCache;
+import imageprocessor.ops.AffineOp;
+import imageprocessor.ops.BlendOp;
+import imageprocessor.ops.CannyOp;
+import imageprocessor.ops.ClaheOp;
+import imageprocessor.ops.CoinCounter;
+import imageprocessor.ops.ColorSegmentationOp;
+import imageprocessor.ops.ConvolutionOp;
+import imageprocessor.ops.DisparityOp;
+import imageprocessor.ops.EqualizeOp;
+import imageprocessor.ops.FlipOp;
+import imageprocessor.ops.GradientOp;
+import imageprocessor.ops.GrayscaleOp;
+import imageprocessor.ops.Interpolation;
+import imageprocessor.ops.LutOp;
+import imageprocessor.ops.Magnitude;
+import imageprocessor.ops.MeanFilterOp;
+import imageprocessor.ops.MedianFilterOp;
+import imageprocessor.ops.NegativeOp;
+import imageprocessor.ops.NoiseOp;
+import imageprocessor.ops.ResizeOp;
+import imageprocessor.ops.RobertsEdgeOp;
+import imageprocessor.ops.RotateOp;
+import imageprocessor.ops.SaltAndPepperOp;
+import imageprocessor.ops.StretchOp;
+import imageprocessor.ops.TransparencyOp;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Parses pipeline specs such as "grayscale,median:r=2,roberts" into a list of ops.
+//
+// Ops are separated by commas and their parameters by colons, each as key=value:
+//  negative
+//  grayscale
+//  transparency:level=0..100
+//  gamma:g=gamma
+//  contrast:c=factor
+//  levels:min=0..255:max=0..255[:outmin=0..255][:outmax=0..255]
+//  equalize
+//  stretch[:clip=fraction]
+//  compress:min=0..255:max=0..255
+//  clahe[:tiles=n][:clip=limit]
+//  blend:with=<image file>:level=0..100
+//  segment:r=0..255:g=0..255:b=0..255[:t=threshold]
+//  segment:colors=RRGGBB[+RRGGBB...][:metric=box|rgb|hsv|lab][:t=threshold]
+//  rotate[:dir=cw|ccw|180]
+//  rotate:angle=degrees[:interp=nearest|bilinear|bicubic]
+//  deskew:angle=degrees[:interp=...]
+//  scale:f=factor[:interp=...]
+//  resize:w=width:h=height[:interp=...]
+//  shear:x=factor:y=factor[:interp=...]
+//  flip[:axis=h|v|both]
+//  noise[:density=0.05][:seed=n]
+//  gaussian:sigma=gray levels[:seed=n]
+//  speckle:sigma=fraction[:seed=n]
+//  poisson[:scale=photons per gray level][:seed=n]
+//  mean[:r=radius][:mode=separable|integral]
+//  median[:r=radius]
+//  roberts[:mag=l2|l1][:border=constant|clamp|reflect|wrap]
+//  sobel, prewitt, freichen, each with [:mag=...][:border=...]
+//  canny[:sigma=s][:low=0..255][:high=0..255]
+//  blur:sigma=s[:border=...]
+//  convolve:k=w+w+w/w+w+w/w+w+w[:scale=factor][:border=...][:fill=0..255]
+//    (rows separated by '/', weights by '+', each row the same odd length)
+//  stereo:with=<right image file>[:min=0][:max=64][:r=radius][:cost=census|sad][:scale=n]
+//    (the input is the left image; the result is disparity * scale, 0 where unknown)
+//  coins
+//    (the coins outlined and valued by size, with the total, as in the Python version)
+public final class PipelineSpec {
+
+    public static final String HELP = "negative, grayscale, transparency:level=N, gamma:g=G, contrast:c=C, "
+            + "levels:min=N:max=N[:outmin=N][:outmax=N], equalize, stretch[:clip=F], compress:min=N:max=N, "
+            + "clahe[:tiles=N][:clip=F], blend:with=FILE:level=N, "
+            + "segment:r=N:g=N:b=N[:t=N], segment:colors=RRGGBB[+RRGGBB...][:metric=box|rgb|hsv|lab][:t=T], "
+            + "rotate[:dir=cw|ccw|180], rotate:angle=D[:interp=I], "
+            + "deskew:angle=D[:interp=I], scale:f=F[:interp=I], resize:w=N:h=N[:interp=I], "
+            + "shear:x=F:y=F[:interp=I], flip[:axis=h|v|both], "
+            + "noise[:density=D][:seed=N], gaussian:sigma=S[:seed=N], speckle:sigma=S[:seed=N], poisson[:scale=F][:seed=N], "
+            + "mean[:r=N][:mode=separable|integral], median[:r=N], "
+            + "roberts|sobel|prewitt|freichen[:mag=l2|l1][:border=B], canny[:sigma=S][:low=N][:high=N], "
+            + "blur:sigma=S[:border=B], convolve:k=W+W+W/W+W+W/W+W+W[:scale=F][:border=B][:fill=N], "
+            + "stereo:with=FILE[:min=N][:max=N][:r=N][:cost=census|sad][:scale=N], coins, "
+            + "where B is constant, clamp, reflect or wrap";
+
+    private PipelineSpec() {
+    }
+
+    public static List<ImageOp> parse(String spec) throws IOException {
+        List<ImageOp> ops = new ArrayList<>();
+        for (String step : spec.split(",")) {
+            step = step.trim();
+            if (step.isEmpty()) {
+                continue;
+            }
+            String[] parts = step.split(":");
+            Map<String, String> params = new HashMap<>();
+            for (int i = 1; i < parts.length; i++) {
+                int equals = parts[i].indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Expected key=value in '" + step + "', found '" + parts[i] + "'");
+                }
+                params.put(parts[i].substring(0, equals).trim().toLowerCase(Locale.ROOT), parts[i].substring(equals + 1).trim());
+            }
+            ops.add(create(parts[0].trim().toLowerCase(Locale.ROOT), params, step));
+        }
+        if (ops.isEmpty()) {
+            throw new IllegalArgumentException("The pipeline is empty");
+        }
+        return ops;
+    }
+
+    private static ImageOp create(String name, Map<String, String> params, String step) throws IOException {
+        ImageOp op;
+        switch (name) {
+            case "negative":
+                op = new NegativeOp();
+                break;
+            case "grayscale":
+            case "gray":
+                op = new GrayscaleOp();
+                break;
+            case "transparency":
+                op = new TransparencyOp(intParam(params, "level", null));
+                break;
+            case "gamma":
+                op = LutOp.gamma(doubleParam(params, "g", null));
+                break;
+            case "contrast":
+                op = LutOp.contrast(doubleParam(params, "c", null));
+                break;
+            case "levels":
+                op = LutOp.levels(intParam(params, "min", null), intParam(params, "max", null),
+                        intParam(params, "outmin", 0), intParam(params, "outmax", 255));
+                break;
+            case "equalize":
+                op = new EqualizeOp();
+                break;
+            case "stretch":
+                op = new StretchOp(doubleParam(params, "clip", StretchOp.DEFAULT_CLIP));
+                break;
+            case "compress":
+                op = LutOp.levels(0, 255, intParam(params, "min", null), intParam(params, "max", null));
+                break;
+            case "clahe":
+                int tiles = intParam(params, "tiles", ClaheOp.DEFAULT_TILES);
+                op = new ClaheOp(tiles, tiles, doubleParam(params, "clip", ClaheOp.DEFAULT_CLIP_LIMIT));
+                break;
+            case "blend":
+                String with = stringParam(params, "with", null);
+                op = new BlendOp(ImageCache.shared().read(new File(with)), intParam(params, "level", 50));
+                break;
+            case "segment":
+                if (!params.containsKey("colors") && !params.containsKey("metric")) {
+                    op = new ColorSegmentationOp(intParam(params, "r", null), intParam(params, "g", null),
+                            intParam(params, "b", null), intParam(params, "t", ColorSegmentationOp.DEFAULT_THRESHOLD));
+                    break;
+                }
+                String metric = stringParam(params, "metric", "box").toUpperCase(Locale.ROOT);
+                if (!metric.equals("BOX") && !metric.equals("RGB") && !metric.equals("HSV") && !metric.equals("LAB")) {
+                    throw new IllegalArgumentException("Segmentation metric must be box, rgb, hsv or lab: " + metric.toLowerCase(Locale.ROOT));
+                }
+                op = new ColorSegmentationOp(ColorSegmentationOp.Metric.valueOf(metric),
+                        doubleParam(params, "t", (double) ColorSegmentationOp.DEFAULT_THRESHOLD), colorsParam(params));
+                break;
+            case "rotate":
+                if (params.containsKey("angle")) {
+                    op = AffineOp.rotate(doubleParam(params, "angle", null), interpolationParam(params));
+                    break;
+                }
+                String direction = stringParam(params, "dir", "cw").toLowerCase(Locale.ROOT);
+                if (!direction.equals("cw") && !direction.equals("ccw") && !direction.equals("180")) {
+                    throw new IllegalArgumentException("Rotation direction must be cw, ccw or 180: " + direction);
+                }
+                op = new RotateOp(direction.equals("cw") ? 90 : direction.equals("ccw") ? 270 : 180);
+                break;
+            case "deskew":
+                op = AffineOp.deskew(doubleParam(params, "angle", null), interpolationParam(params));
+                break;
+            case "scale":
+                op = new ResizeOp(doubleParam(params, "f", null), interpolationParam(params));
+                break;
+            case "resize":
+                op = new ResizeOp(intParam(params, "w", null), intParam(params, "h", null), interpolationParam(params));
+                break;
+            case "shear":
+                op = AffineOp.shear(doubleParam(params, "x", 0.0), doubleParam(params, "y", 0.0), interpolationParam(params));
+                break;
+            case "flip":
+                String axis = stringParam(params, "axis", "h").toLowerCase(Locale.ROOT);
+                if (!axis.equals("h") && !axis.equals("v") && !axis.equals("both")) {
+                    throw new IllegalArgumentException("Flip axis must be h, v or both: " + axis);
+                }
+                op = new FlipOp(!axis.equals("v"), !axis.equals("h"));
+                break;
+            case "noise":
+                double density = doubleParam(params, "density", SaltAndPepperOp.DEFAULT_DENSITY);
+                String seed = params.remove("seed");
+                op = seed == null ? new SaltAndPepperOp(density) : new SaltAndPepperOp(density, longValue("seed", seed));
+                break;
+            case "gaussian":
+                op = noiseOp(NoiseOp.Model.GAUSSIAN, doubleParam(params, "sigma", null), params);
+                break;
+            case "speckle":
+                op = noiseOp(NoiseOp.Model.SPECKLE, doubleParam(params, "sigma", null), params);
+                break;
+            case "poisson":
+                op = noiseOp(NoiseOp.Model.POISSON, doubleParam(params, "scale", 1.0), params);
+                break;
+            case "mean":
+                String mode = stringParam(params, "mode", "separable").toUpperCase(Locale.ROOT);
+                if (!mode.equals("SEPARABLE") && !mode.equals("INTEGRAL")) {
+                    throw new IllegalArgumentException("Mean mode must be separable or integral: " + mode);
+                }
+                op = new MeanFilterOp(intParam(params, "r", 1), MeanFilterOp.Mode.valueOf(mode));
+                break;
+            case "median":
+                op = new MedianFilterOp(intParam(params, "r", 1));
+                break;
+            case "roberts":
+                op = new RobertsEdgeOp(magnitudeParam(params), borderParam(params));
+                break;
+            case "sobel":
+                op = new GradientOp(GradientOp.Operator.SOBEL, magnitudeParam(params), borderParam(params));
+                break;
+            case "prewitt":
+                op = new GradientOp(GradientOp.Operator.PREWITT, magnitudeParam(params), borderParam(params));
+                break;
+            case "freichen":
+                op = new GradientOp(GradientOp.Operator.FREI_CHEN, magnitudeParam(params), borderParam(params));
+                break;
+            case "canny":
+                op = new CannyOp(doubleParam(params, "sigma", CannyOp.DEFAULT_SIGMA),
+                        intParam(params, "low", CannyOp.DEFAULT_LOW), intParam(params, "high", CannyOp.DEFAULT_HIGH));
+                break;
+            case "blur":
+                op = new ConvolutionOp(ConvolutionKernel.gaussian(doubleParam(params, "sigma", null)), borderParam(params));
+                break;
+            case "convolve":
+                ConvolutionKernel kernel = kernelParam(params, doubleParam(params, "scale", 1.0));
+                op = new ConvolutionOp(kernel, borderParam(params), intParam(params, "fill", 0));
+                break;
+            case "stereo":
+                String right = stringParam(params, "with", null);
+                int maxDisparity = intParam(params, "max", DisparityOp.DEFAULT_MAX_DISPARITY);
+                op = new DisparityOp(ImageCache.shared().read(new File(right)), intParam(params, "min", 0), maxDisparity,
+                        intParam(params, "r", DisparityOp.DEFAULT_RADIUS), costParam(params),
+                        intParam(params, "scale", Math.max(1, 255 / Math.max(1, maxDisparity))));
+                break;
+            case "coins":
+                op = new CoinCounter();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown operation '" + name + "'");
+        }
+        if (!params.isEmpty()) {
+            throw new IllegalArgumentException("Unknown parameter(s) " + params.keySet() + " in '" + step + "'");
+        }
+        return op;
+    }
+
+    private static NoiseOp noiseOp(NoiseOp.Model model, double amount, Map<String, String> params) {
+        String seed = params.remove("seed");
+        return seed == null ? new NoiseOp(model, amount) : new NoiseOp(model, amount, longValue("seed", seed));
+    }
+
+    // Removes and returns a parameter; a null default makes it required
+    private static String stringParam(Map<String, String> params, String key, String defaultValue) {
+        String value = params.remove(key);
+        if (value == null) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException("Missing parameter '" + key + "'");
+            }
+            return defaultValue;
+        }
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String key, Integer defaultValue) {
+        String value = stringParam(params, key, defaultValue == null ? null : String.valueOf(defaultValue));
+        long number = longValue(key, value);
+        if (number != (int) number) {
+            throw new IllegalArgumentException("Parameter '" + key + "' is out of range: " + value);
+        }
+        return (int) number;
+    }
+
+    private static double doubleParam(Map<String, String> params, String key, Double defaultValue) {
+        String value = stringParam(params, key, defaultValue == null ? null : String.valueOf(defaultValue));
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter '" + key + "' must be a number: " + value);
+        }
+    }
+
+    // Hex colors separated by '+', e.g. "c03020+2050e0"
+    private static int[] colorsParam(Map<String, String> params) {
+        String[] values = stringParam(params, "colors", null).split("\\+");
+        int[] colors = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i].startsWith("#") ? values[i].substring(1) : values[i];
+            if (!value.matches("[0-9a-fA-F]{6}")) {
+                throw new IllegalArgumentException("Colors must be 6-digit hex values: " + values[i]);
+            }
+            colors[i] = Integer.parseInt(value, 16);
+        }
+        return colors;
+    }
+
+    private static Interpolation interpolationParam(Map<String, String> params) {
+        String interpolation = stringParam(params, "interp", "bilinear").toUpperCase(Locale.ROOT);
+        try {
+            return Interpolation.valueOf(interpolation);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Interpolation must be nearest, bilinear or bicubic: " + interpolation.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static Magnitude magnitudeParam(Map<String, String> params) {
+        String magnitude = stringParam(params, "mag", "l2").toUpperCase(Locale.ROOT);
+        try {
+            return Magnitude.valueOf(magnitude);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Magnitude must be l2 or l1: " + magnitude.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static BorderMode borderParam(Map<String, String> params) {
+        String border = stringParam(params, "border", "reflect").toUpperCase(Locale.ROOT);
+        try {
+            return BorderMode.valueOf(border);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Border must be constant, clamp, reflect or wrap: " + border.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static DisparityOp.Cost costParam(Map<String, String> params) {
+        String cost = stringParam(params, "cost", "census").toUpperCase(Locale.ROOT);
+        try {
+            return DisparityOp.Cost.valueOf(cost);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Matching cost must be census or sad: " + cost.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    // Kernel weights row by row, e.g. "0+-1+0/-1+5+-1/0+-1+0", each multiplied by scale
+    private static ConvolutionKernel kernelParam(Map<String, String> params, double scale) {
+        String[] rows = stringParam(params, "k", null).split("/");
+        int width = rows[0].split("\\+").length;
+        double[] weights = new double[rows.length * width];
+        for (int y = 0; y < rows.length; y++) {
+            String[] values = rows[y].split("\\+");
+            if (values.length != width) {
+                throw new IllegalArgumentException("Kernel rows must all have " + width + " weights: " + rows[y]);
+            }
+            for (int x = 0; x < width; x++) {
+                try {
+                    weights[y * width + x] = Double.parseDouble(values[x]) * scale;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Kernel weights must be numbers: " + values[x]);
+                }
+            }
+        }
+        return ConvolutionKernel.of(width, rows.length, weights);
+    }
+
+    private static long longValue(String key, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter '" + key + "' must be an integer: " + value);
+        }
+    }
+}
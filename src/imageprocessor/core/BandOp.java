@@ -0,0 +1,26 @@
+package imageprocessor.core;
+
+// A gray neighborhood op that can compute any band of output rows from the input rows
+// around it. A Pipeline uses this to run it over tiles of an intermediate result
+// that is never built in full.
+public interface BandOp extends ImageOp {
+
+    // Input rows needed above and below each output row
+    int getHaloRows();
+
+    // Bands shorter than this cost more to set up than to compute
+    default int getMinBandRows() {
+        return 1;
+    }
+
+    // False when rows are read from farther away than the halo (BorderMode.WRAP reads
+    // the other end of the image); a Pipeline then gives the op the whole image
+    default boolean isStreamable() {
+        return true;
+    }
+
+    // Computes output rows [y0, y1) of an image of the given size. src holds input rows
+    // from srcTop on, covering [y0 - halo, y1 + halo) clipped to the image; row y is
+    // written to dst at (y - dstTop) * width. Every pixel of the band must be written.
+    void filterRows(byte[] src, int srcTop, byte[] dst, int dstTop, int width, int height, int y0, int y1);
+}
@@ -0,0 +1,35 @@
+package imageprocessor.core;
+
+// How neighborhood ops read the pixels that fall outside the image
+public enum BorderMode {
+    // Outside pixels are a constant: black, unless the op takes a fill value
+    CONSTANT,
+    // The edge pixel is repeated: aa|abcd|dd
+    CLAMP,
+    // Mirrored around the edge pixel, which is not repeated: cb|abcd|cb
+    REFLECT,
+    // The image repeats: cd|abcd|ab
+    WRAP;
+
+    // The position read for i along an axis of the given size, or -1 for a CONSTANT pixel
+    public int index(int i, int size) {
+        if (i >= 0 && i < size) {
+            return i;
+        }
+        switch (this) {
+            case CONSTANT:
+                return -1;
+            case CLAMP:
+                return i < 0 ? 0 : size - 1;
+            case WRAP:
+                return Math.floorMod(i, size);
+            default:
+                if (size == 1) {
+                    return 0;
+                }
+                int period = 2 * (size - 1);
+                int m = Math.floorMod(i, period);
+                return m < size ? m : period - m;
+        }
+    }
+}
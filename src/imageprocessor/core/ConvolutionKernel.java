@@ -0,0 +1,180 @@
+package imageprocessor.core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// An immutable convolution kernel of odd width and height, centered on its middle
+// weight, with the weights given row by row.
+//
+// A kernel whose weights are the outer product of a column and a row (rank one, such
+// as a Gaussian or a box) is separable: convolving with the column and then the row
+// gives the same result in width + height instead of width * height multiplies per
+// pixel. This is detected when the kernel is created, to a relative tolerance of 1e-9.
+//
+// The last MAX_CACHED parameterized kernels (gaussian, box) are cached, so ops that ask
+// for the same one share the instance and anything derived from it.
+public final class ConvolutionKernel {
+
+    private static final double SEPARABLE_TOLERANCE = 1e-9;
+    private static final int MAX_CACHED = 64;
+    // Most recently used last; guarded by itself
+    private static final Map<String, ConvolutionKernel> CACHE = new LinkedHashMap<String, ConvolutionKernel>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ConvolutionKernel> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    private final int width;
+    private final int height;
+    private final double[] weights;
+    // The factors of a separable kernel, null otherwise
+    private final double[] column;
+    private final double[] row;
+
+    private ConvolutionKernel(int width, int height, double[] weights) {
+        this.width = width;
+        this.height = height;
+        this.weights = weights;
+        double[][] factors = factor(width, height, weights);
+        this.column = factors == null ? null : factors[0];
+        this.row = factors == null ? null : factors[1];
+    }
+
+    // weights are given row by row
+    public static ConvolutionKernel of(int width, int height, double... weights) {
+        if (width < 1 || height < 1 || width % 2 == 0 || height % 2 == 0) {
+            throw new IllegalArgumentException("Kernel width and height must be odd and positive");
+        }
+        if (weights.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " kernel weights, got " + weights.length);
+        }
+        for (double weight : weights) {
+            if (Double.isNaN(weight) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Kernel weights must be finite numbers");
+            }
+        }
+        return new ConvolutionKernel(width, height, weights.clone());
+    }
+
+    // The outer product of a column and a row
+    public static ConvolutionKernel separable(double[] column, double[] row) {
+        double[] weights = new double[column.length * row.length];
+        for (int i = 0; i < column.length; i++) {
+            for (int j = 0; j < row.length; j++) {
+                weights[i * row.length + j] = column[i] * row[j];
+            }
+        }
+        return of(row.length, column.length, weights);
+    }
+
+    // Normalized Gaussian over a radius of 3 sigma
+    public static ConvolutionKernel gaussian(double sigma) {
+        if (!(sigma > 0) || Double.isInfinite(sigma)) {
+            throw new IllegalArgumentException("Sigma must be a positive number");
+        }
+        return cached("gaussian:" + sigma, () -> {
+            int radius = Math.max(1, (int) Math.ceil(3 * sigma));
+            double[] g = new double[2 * radius + 1];
+            double total = 0;
+            for (int k = -radius; k <= radius; k++) {
+                g[k + radius] = Math.exp(-k * k / (2 * sigma * sigma));
+                total += g[k + radius];
+            }
+            for (int k = 0; k < g.length; k++) {
+                g[k] /= total;
+            }
+            return separable(g, g);
+        });
+    }
+
+    // Normalized (2 * radius + 1)^2 box
+    public static ConvolutionKernel box(int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Box radius must be at least 1");
+        }
+        return cached("box:" + radius, () -> {
+            double[] b = new double[2 * radius + 1];
+            Arrays.fill(b, 1.0 / b.length);
+            return separable(b, b);
+        });
+    }
+
+    // The kernel cached under key, or the one built now; two threads may both build it
+    private static ConvolutionKernel cached(String key, Supplier<ConvolutionKernel> build) {
+        synchronized (CACHE) {
+            ConvolutionKernel kernel = CACHE.get(key);
+            if (kernel != null) {
+                return kernel;
+            }
+        }
+        ConvolutionKernel kernel = build.get();
+        synchronized (CACHE) {
+            ConvolutionKernel raced = CACHE.putIfAbsent(key, kernel);
+            return raced != null ? raced : kernel;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getWeight(int x, int y) {
+        return weights[y * width + x];
+    }
+
+    public boolean isSeparable() {
+        return column != null;
+    }
+
+    // The vertical factor of a separable kernel
+    public double[] getColumn() {
+        return column.clone();
+    }
+
+    // The horizontal factor of a separable kernel
+    public double[] getRow() {
+        return row.clone();
+    }
+
+    // Splits the weights into a column and a row whose outer product gives them back, or
+    // returns null. Every rank one matrix is its largest weight's column times its row,
+    // divided by that weight.
+    private static double[][] factor(int width, int height, double[] weights) {
+        int pivot = 0;
+        for (int i = 1; i < weights.length; i++) {
+            if (Math.abs(weights[i]) > Math.abs(weights[pivot])) {
+                pivot = i;
+            }
+        }
+        double max = weights[pivot];
+        if (max == 0) {
+            return null;
+        }
+        int py = pivot / width;
+        int px = pivot % width;
+        double[] column = new double[height];
+        double[] row = new double[width];
+        for (int y = 0; y < height; y++) {
+            column[y] = weights[y * width + px] / max;
+        }
+        for (int x = 0; x < width; x++) {
+            row[x] = weights[py * width + x];
+        }
+        double tolerance = SEPARABLE_TOLERANCE * Math.abs(max);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (Math.abs(column[y] * row[x] - weights[y * width + x]) > tolerance) {
+                    return null;
+                }
+            }
+        }
+        return new double[][] {column, row};
+    }
+}
@@ -0,0 +1,10 @@
+package imageprocessor.core;
+
+import java.awt.image.BufferedImage;
+
+// A headless image operation. Implementations read the source through its
+// backing array (see Rasters) and return a new image; the source is never modified.
+public interface ImageOp {
+
+    BufferedImage filter(BufferedImage src);
+}
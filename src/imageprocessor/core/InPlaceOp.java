@@ -0,0 +1,12 @@
+package imageprocessor.core;
+
+import java.awt.image.BufferedImage;
+
+// An op that can also overwrite its input instead of allocating a new image. Only
+// callers that own the image may use this, e.g. a Pipeline on its intermediate images.
+public interface InPlaceOp extends ImageOp {
+
+    // Applies the op to image itself. Returns false, leaving the image untouched, when
+    // its layout or size does not allow it; filter() must be used instead.
+    boolean filterInPlace(BufferedImage image);
+}
@@ -0,0 +1,105 @@
+package imageprocessor.core;
+
+import java.awt.image.BufferedImage;
+
+// Summed-area table of a gray image: the sum of any rectangle is read back with four
+// lookups, whatever its size. The table has one extra leading row and column of zeros,
+// so entry (x, y) holds the sum of all samples above and to the left of (x, y).
+//
+// Tables whose total sum fits in an int are stored as int[], larger ones as long[].
+public abstract class IntegralImage {
+
+    protected final int width;
+    protected final int height;
+    protected final int stride;
+
+    IntegralImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.stride = width + 1;
+    }
+
+    public static IntegralImage of(BufferedImage image) {
+        BufferedImage gray = Rasters.requireGray(image);
+        return of(Rasters.bytes(gray), gray.getWidth(), gray.getHeight());
+    }
+
+    public static IntegralImage of(byte[] samples, int width, int height) {
+        return of(samples, 0, width, height);
+    }
+
+    // Table of the width x height samples stored row by row from offset on
+    public static IntegralImage of(byte[] samples, int offset, int width, int height) {
+        if ((long) width * height * 255 <= Integer.MAX_VALUE) {
+            return new IntTable(samples, offset, width, height);
+        }
+        return new LongTable(samples, offset, width, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Sum of the samples in columns [x0, x1) and rows [y0, y1). The rectangle must lie inside the image.
+    public abstract long sum(int x0, int y0, int x1, int y1);
+
+    public double mean(int x0, int y0, int x1, int y1) {
+        return (double) sum(x0, y0, x1, y1) / ((long) (x1 - x0) * (y1 - y0));
+    }
+
+    static final class IntTable extends IntegralImage {
+        private final int[] table;
+
+        IntTable(byte[] samples, int offset, int width, int height) {
+            super(width, height);
+            table = new int[stride * (height + 1)];
+            for (int y = 0; y < height; y++) {
+                int rowSum = 0;
+                int above = y * stride;
+                int current = above + stride;
+                int source = offset + y * width;
+                for (int x = 0; x < width; x++) {
+                    rowSum += samples[source + x] & 0xFF;
+                    table[current + x + 1] = table[above + x + 1] + rowSum;
+                }
+            }
+        }
+
+        @Override
+        public long sum(int x0, int y0, int x1, int y1) {
+            int top = y0 * stride;
+            int bottom = y1 * stride;
+            return table[bottom + x1] - table[bottom + x0] - table[top + x1] + table[top + x0];
+        }
+    }
+
+    static final class LongTable extends IntegralImage {
+        private final long[] table;
+
+        LongTable(byte[] samples, int offset, int width, int height) {
+            super(width, height);
+            table = new long[stride * (height + 1)];
+            for (int y = 0; y < height; y++) {
+                long rowSum = 0;
+                int above = y * stride;
+                int current = above + stride;
+                int source = offset + y * width;
+                for (int x = 0; x < width; x++) {
+                    rowSum += samples[source + x] & 0xFF;
+                    table[current + x + 1] = table[above + x + 1] + rowSum;
+                }
+            }
+        }
+
+        @Override
+        public long sum(int x0, int y0, int x1, int y1) {
+            int top = y0 * stride;
+            int bottom = y1 * stride;
+            return table[bottom + x1] - table[bottom + x0] - table[top + x1] + table[top + x0];
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package imageprocessor.core;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// A chain of ops that is only recorded until filter is called, and then run in as few
+// passes over memory as possible:
+//  - consecutive PointOps are fused: those that combine into one op (such as chains of
+//    lookup tables) are merged, and each short run of pixels goes through the rest
+//    while it is still in cache
+//  - BandOps stream over tiles of rows: a tile computes only the rows of the earlier
+//    stages it needs, recomputing the halo rows it shares with its neighbours (unless
+//    isStreamable says otherwise)
+//  - any other op (rotation, flips, noise...) works on the whole image as before, in
+//    place when it is an InPlaceOp and the image is an intermediate result
+// Only the inputs of those other ops and the final result are built as full images.
+public final class Pipeline implements ImageOp {
+
+    // Rows per tile before growing for halos and band setup costs
+    private static final int TILE_ROWS = 32;
+    // Pixels handed to each PointOp at a time
+    private static final int RUN_PIXELS = 1024;
+
+    private final List<ImageOp> ops;
+
+    public Pipeline() {
+        this(Collections.<ImageOp>emptyList());
+    }
+
+    public Pipeline(List<? extends ImageOp> ops) {
+        this.ops = Collections.unmodifiableList(new ArrayList<>(ops));
+    }
+
+    // A new pipeline that runs op after the ops of this one
+    public Pipeline then(ImageOp op) {
+        List<ImageOp> next = new ArrayList<>(ops);
+        next.add(op);
+        return new Pipeline(next);
+    }
+
+    public List<ImageOp> getOps() {
+        return ops;
+    }
+
+    // Returns src itself when the pipeline is empty
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage image = src;
+        int i = 0;
+        while (i < ops.size()) {
+            int j = i;
+            while (j < ops.size() && (ops.get(j) instanceof PointOp || streams(ops.get(j)))) {
+                j++;
+            }
+            if (j - i > 1) {
+                image = new Segment(ops.subList(i, j)).run(image);
+                i = j;
+            } else {
+                ImageOp op = ops.get(i);
+                if (image == src || !(op instanceof InPlaceOp) || !((InPlaceOp) op).filterInPlace(image)) {
+                    image = op.filter(image);
+                }
+                i++;
+            }
+        }
+        return image;
+    }
+
+    private static boolean streams(ImageOp op) {
+        return op instanceof BandOp && ((BandOp) op).isStreamable();
+    }
+
+    // Rows [top, top + rows) of an intermediate image, as ARGB ints or gray bytes
+    private static final class Rows {
+        final int[] ints;
+        final byte[] bytes;
+        int top;
+
+        Rows(int[] ints, byte[] bytes) {
+            this.ints = ints;
+            this.bytes = bytes;
+        }
+    }
+
+    // Consecutive point and band ops run tile by tile. A stage is either a list of
+    // fused PointOps or a single BandOp.
+    private static final class Segment {
+        private final List<List<PointOp>> points = new ArrayList<>();
+        private final List<BandOp> bands = new ArrayList<>();
+
+        Segment(List<ImageOp> ops) {
+            for (ImageOp op : ops) {
+                if (op instanceof BandOp) {
+                    points.add(null);
+                    bands.add((BandOp) op);
+                } else {
+                    if (points.isEmpty() || points.get(points.size() - 1) == null) {
+                        points.add(new ArrayList<>());
+                        bands.add(null);
+                    }
+                    List<PointOp> group = points.get(points.size() - 1);
+                    PointOp fused = group.isEmpty() ? null : group.get(group.size() - 1).fuse((PointOp) op);
+                    if (fused != null) {
+                        group.set(group.size() - 1, fused);
+                    } else {
+                        group.add((PointOp) op);
+                    }
+                }
+            }
+        }
+
+        BufferedImage run(BufferedImage src) {
+            BufferedImage in = Rasters.packed(src);
+            int width = in.getWidth();
+            int height = in.getHeight();
+            int stages = bands.size();
+
+            // Image type after each stage, and the rows each stage must add around a tile
+            // so that all the stages after it have their halos
+            int[] types = new int[stages];
+            int[] margins = new int[stages];
+            int type = in.getType();
+            int minRows = TILE_ROWS;
+            for (int k = 0; k < stages; k++) {
+                if (bands.get(k) != null) {
+                    if (type != BufferedImage.TYPE_BYTE_GRAY) {
+                        throw new IllegalArgumentException("Expected a grayscale (TYPE_BYTE_GRAY or TYPE_USHORT_GRAY) image");
+                    }
+                    minRows = Math.max(minRows, bands.get(k).getMinBandRows());
+                } else {
+                    for (PointOp op : points.get(k)) {
+                        op.checkSize(width, height);
+                        type = op.getOutputType(type);
+                    }
+                }
+                types[k] = type;
+            }
+            for (int k = stages - 2; k >= 0; k--) {
+                margins[k] = margins[k + 1] + (bands.get(k + 1) != null ? bands.get(k + 1).getHaloRows() : 0);
+            }
+            int tileRows = Math.max(minRows, 4 * margins[0]);
+
+            BufferedImage out = new BufferedImage(width, height, type);
+            Rows source = rowsOf(in);
+            Rows target = rowsOf(out);
+            TileScheduler scheduler = TileScheduler.shared();
+            int bandRows = Math.max(tileRows, (height + scheduler.getParallelism() - 1) / scheduler.getParallelism());
+            scheduler.forEachBand(width, height, bandRows, (y0, y1) -> {
+                Rows[] buffers = new Rows[stages];
+                for (int k = 0; k < stages - 1; k++) {
+                    int size = Math.min(height, tileRows + 2 * margins[k]) * width;
+                    buffers[k] = types[k] == BufferedImage.TYPE_BYTE_GRAY
+                            ? new Rows(null, new byte[size]) : new Rows(new int[size], null);
+                }
+                buffers[stages - 1] = target;
+                int[] run = new int[RUN_PIXELS];
+                for (int t0 = y0; t0 < y1; t0 += tileRows) {
+                    int t1 = Math.min(y1, t0 + tileRows);
+                    Rows input = source;
+                    for (int k = 0; k < stages; k++) {
+                        int a = Math.max(0, t0 - margins[k]);
+                        int b = Math.min(height, t1 + margins[k]);
+                        Rows output = buffers[k];
+                        if (k < stages - 1) {
+                            output.top = a;
+                        }
+                        if (bands.get(k) != null) {
+                            bands.get(k).filterRows(input.bytes, input.top, output.bytes, output.top, width, height, a, b);
+                        } else {
+                            applyPoints(points.get(k), input, output, width, a, b, run);
+                        }
+                        input = output;
+                    }
+                }
+            });
+            return out;
+        }
+
+        private static Rows rowsOf(BufferedImage image) {
+            return Rasters.isGray(image) ? new Rows(null, Rasters.bytes(image)) : new Rows(Rasters.ints(image), null);
+        }
+
+        // Runs rows [a, b) through every op, RUN_PIXELS at a time
+        private static void applyPoints(List<PointOp> ops, Rows input, Rows output, int width, int a, int b, int[] run) {
+            int inBase = input.top * width;
+            int outBase = output.top * width;
+            for (int p = a * width, end = b * width; p < end; p += run.length) {
+                int n = Math.min(run.length, end - p);
+                int first = 0;
+                if (input.ints != null) {
+                    ops.get(0).apply(input.ints, p - inBase, run, 0, n, p);
+                    first = 1;
+                } else {
+                    byte[] s = input.bytes;
+                    for (int i = 0, from = p - inBase; i < n; i++) {
+                        run[i] = 0xFF000000 | (s[from + i] & 0xFF) * 0x010101;
+                    }
+                }
+                for (int k = first; k < ops.size(); k++) {
+                    ops.get(k).apply(run, 0, run, 0, n, p);
+                }
+                if (output.ints != null) {
+                    System.arraycopy(run, 0, output.ints, p - outBase, n);
+                } else {
+                    byte[] d = output.bytes;
+                    for (int i = 0, to = p - outBase; i < n; i++) {
+                        d[to + i] = (byte) run[i];
+                    }
+                }
+            }
+        }
+    }
+}
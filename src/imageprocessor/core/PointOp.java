@@ -0,0 +1,24 @@
+package imageprocessor.core;
+
+// An op where each output pixel depends only on the input pixel at the same position.
+// Besides filtering whole images, point ops can run on a short run of pixels, which lets
+// a Pipeline chain several of them in one pass over the image.
+public interface PointOp extends ImageOp {
+
+    // Type of the image produced from a packed image of the given type
+    int getOutputType(int inputType);
+
+    // Throws IllegalArgumentException if the op cannot be applied to an image of this size
+    default void checkSize(int width, int height) {
+    }
+
+    // A single op equal to this one followed by next, or null if they do not combine
+    default PointOp fuse(PointOp next) {
+        return null;
+    }
+
+    // Applies the op to length ARGB pixels of src, writing dst (which may be src itself).
+    // Gray pixels are passed as 0xFFvvvvvv. index is the position in the image of the
+    // pixel at srcOffset, counted row by row.
+    void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int index);
+}
@@ -0,0 +1,245 @@
+package imageprocessor.core;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+// Access to the packed backing arrays of BufferedImages.
+//
+// The engine works on three layouts only: TYPE_INT_RGB, TYPE_INT_ARGB (one int per
+// pixel, 0xAARRGGBB) and TYPE_BYTE_GRAY (one byte per pixel). In all of them pixel
+// (x, y) lives at index y * width + x. Anything else is copied into one of these
+// layouts once, up front, instead of going through getRGB/setRGB per pixel.
+//
+// 16-bit images (from PGM/PPM files with maxval above 255) are kept at full precision
+// in TYPE_USHORT_GRAY or in an interleaved 3-band ushort RGB image, see createUShort.
+// The ops see them through packed(), which keeps the high byte of each sample.
+public final class Rasters {
+
+    private Rasters() {
+    }
+
+    // True when the image is one of the packed layouts with no offset or padding
+    public static boolean isPacked(BufferedImage image) {
+        int type = image.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB
+                && type != BufferedImage.TYPE_BYTE_GRAY) {
+            return false;
+        }
+        WritableRaster raster = image.getRaster();
+        if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || raster.getDataBuffer().getNumBanks() != 1 || raster.getDataBuffer().getOffset() != 0) {
+            return false;
+        }
+        SampleModel model = raster.getSampleModel();
+        if (model instanceof SinglePixelPackedSampleModel) {
+            return ((SinglePixelPackedSampleModel) model).getScanlineStride() == image.getWidth();
+        }
+        if (model instanceof ComponentSampleModel) {
+            ComponentSampleModel component = (ComponentSampleModel) model;
+            return component.getPixelStride() == 1 && component.getScanlineStride() == image.getWidth();
+        }
+        return false;
+    }
+
+    public static boolean isGray(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+    }
+
+    // 8-bit or 16-bit gray, i.e. an image the gray-only ops accept
+    public static boolean isGrayscale(BufferedImage image) {
+        return isGray(image) || image.getType() == BufferedImage.TYPE_USHORT_GRAY;
+    }
+
+    // True for a 1-band or interleaved 3-band ushort image with no offset or padding
+    public static boolean isUShort(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        int bands = raster.getNumBands();
+        if (!(raster.getDataBuffer() instanceof DataBufferUShort) || (bands != 1 && bands != 3)
+                || !(raster.getSampleModel() instanceof ComponentSampleModel)) {
+            return false;
+        }
+        ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+        int[] offsets = model.getBandOffsets();
+        for (int band = 0; band < bands; band++) {
+            if (offsets[band] != band || model.getBankIndices()[band] != 0) {
+                return false;
+            }
+        }
+        return model.getPixelStride() == bands && model.getScanlineStride() == image.getWidth() * bands
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getOffset() == 0;
+    }
+
+    // Creates a 16-bit image: TYPE_USHORT_GRAY for 1 channel, interleaved sRGB for 3
+    public static BufferedImage createUShort(int width, int height, int channels) {
+        if (channels == 1) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_USHORT_GRAY);
+        }
+        if (channels != 3) {
+            throw new IllegalArgumentException("16-bit images have 1 or 3 channels, not " + channels);
+        }
+        ComponentColorModel model = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                new int[] {16, 16, 16}, false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_USHORT, width, height,
+                width * 3, 3, new int[] {0, 1, 2}, null);
+        return new BufferedImage(model, raster, false, null);
+    }
+
+    // Returns the image itself if it is already packed, otherwise a packed copy
+    public static BufferedImage packed(BufferedImage image) {
+        if (isPacked(image)) {
+            return image;
+        }
+        if (isUShort(image)) {
+            return fromUShort(image);
+        }
+        if (image.getType() == BufferedImage.TYPE_USHORT_GRAY) {
+            BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_USHORT_GRAY);
+            copy.getRaster().setRect(image.getRaster());
+            return fromUShort(copy);
+        }
+        if (isGray(image)) {
+            BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            copy.getRaster().setRect(image.getRaster());
+            return copy;
+        }
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        return redraw(image, type);
+    }
+
+    // Returns a packed int image (TYPE_INT_RGB or TYPE_INT_ARGB) with the same content.
+    // Gray images are expanded sample by sample, without color space conversion.
+    public static BufferedImage toInt(BufferedImage image) {
+        BufferedImage packed = packed(image);
+        if (isGray(packed)) {
+            byte[] src = bytes(packed);
+            BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            int[] dst = ints(rgb);
+            for (int i = 0; i < src.length; i++) {
+                dst[i] = 0xFF000000 | (src[i] & 0xFF) * 0x010101;
+            }
+            return rgb;
+        }
+        return packed;
+    }
+
+    // Number of array elements per pixel when every pixel is stored as that many
+    // consecutive elements of a single int[], byte[] or short[], row after row with no
+    // padding: the packed layouts, but also TYPE_3BYTE_BGR, TYPE_4BYTE_ABGR, indexed and
+    // 16-bit images. Returns 0 for anything else. Ops that only move pixels around, such
+    // as rotations and flips, work on these elements directly and so keep the image type.
+    public static int pixelStride(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        DataBuffer buffer = raster.getDataBuffer();
+        if (raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0
+                || buffer.getNumBanks() != 1 || buffer.getOffset() != 0
+                || !(buffer instanceof DataBufferInt || buffer instanceof DataBufferByte || buffer instanceof DataBufferUShort)) {
+            return 0;
+        }
+        SampleModel model = raster.getSampleModel();
+        if (model instanceof SinglePixelPackedSampleModel) {
+            return ((SinglePixelPackedSampleModel) model).getScanlineStride() == image.getWidth() ? 1 : 0;
+        }
+        if (!(model instanceof ComponentSampleModel)) {
+            return 0;
+        }
+        ComponentSampleModel component = (ComponentSampleModel) model;
+        int stride = component.getPixelStride();
+        for (int band = 0; band < component.getNumBands(); band++) {
+            if (component.getBankIndices()[band] != 0 || component.getBandOffsets()[band] >= stride) {
+                return 0;
+            }
+        }
+        return stride > 0 && component.getScanlineStride() == image.getWidth() * stride ? stride : 0;
+    }
+
+    // The int[], byte[] or short[] behind an image with a non-zero pixelStride
+    public static Object data(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferInt) {
+            return ((DataBufferInt) buffer).getData();
+        }
+        if (buffer instanceof DataBufferByte) {
+            return ((DataBufferByte) buffer).getData();
+        }
+        return ((DataBufferUShort) buffer).getData();
+    }
+
+    // An empty image of the given size with the same color model and raster layout
+    public static BufferedImage createLike(BufferedImage image, int width, int height) {
+        WritableRaster raster = image.getRaster().createCompatibleWritableRaster(width, height);
+        return new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+    }
+
+    // Creates an empty image with the same packed layout as the given one
+    public static BufferedImage createCompatible(BufferedImage image, int width, int height) {
+        return new BufferedImage(width, height, packed(image).getType());
+    }
+
+    public static int[] ints(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    public static byte[] bytes(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    public static short[] shorts(BufferedImage image) {
+        return ((DataBufferUShort) image.getRaster().getDataBuffer()).getData();
+    }
+
+    // Throws if the image is not gray, for the ops that are only defined on gray images.
+    // Returns it as packed 8-bit gray.
+    public static BufferedImage requireGray(BufferedImage image) {
+        if (!isGrayscale(image)) {
+            throw new IllegalArgumentException("Expected a grayscale (TYPE_BYTE_GRAY or TYPE_USHORT_GRAY) image");
+        }
+        return packed(image);
+    }
+
+    // Keeps the high byte of each 16-bit sample
+    private static BufferedImage fromUShort(BufferedImage image) {
+        short[] s = shorts(image);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (image.getRaster().getNumBands() == 1) {
+            BufferedImage gray = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            byte[] d = bytes(gray);
+            for (int i = 0; i < d.length; i++) {
+                d[i] = (byte) (s[i] >> 8);
+            }
+            return gray;
+        }
+        BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] d = ints(rgb);
+        for (int i = 0, j = 0; i < d.length; i++, j += 3) {
+            d[i] = 0xFF000000 | (s[j] & 0xFF00) << 8 | (s[j + 1] & 0xFF00) | (s[j + 2] & 0xFF00) >> 8;
+        }
+        return rgb;
+    }
+
+    private static BufferedImage redraw(BufferedImage image, int type) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D g = copy.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,168 @@
+package imageprocessor.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Runs a row kernel over an image split into horizontal bands on a fork-join pool.
+//
+// Kernels read from a source raster that is not modified while they run and write
+// only the destination rows of their own band, so neighborhood ops can read their
+// halo rows (the rows above and below the band) straight from the shared source.
+// Every destination pixel is computed exactly as in a single sequential pass, so the
+// output does not depend on the parallelism level.
+//
+// The shared instance uses the "imageprocessor.parallelism" system property, or all
+// available processors when it is not set.
+//
+// Work started through monitored() reports each finished band to a Monitor, which can
+// also abandon the work between bands.
+public final class TileScheduler {
+
+    // A band is not split further once it holds fewer pixels than this
+    public static final int DEFAULT_GRAIN = 1 << 16;
+
+    public interface BandKernel {
+        // Processes rows y0 (inclusive) to y1 (exclusive)
+        void process(int y0, int y1);
+    }
+
+    public interface Monitor {
+        // Called before and after each band with the rows of the pass finished so far,
+        // possibly from several threads at once. Throwing CancellationException stops
+        // the pass: bands not yet started are skipped and forEachBand rethrows it.
+        void progress(int rowsDone, int rows);
+    }
+
+    private static volatile TileScheduler shared;
+    private static final ThreadLocal<Monitor> MONITOR = new ThreadLocal<>();
+
+    private final int parallelism;
+    private final int grain;
+    private final ForkJoinPool pool;
+
+    public TileScheduler(int parallelism) {
+        this(parallelism, DEFAULT_GRAIN);
+    }
+
+    public TileScheduler(int parallelism, int grain) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if (grain < 1) {
+            throw new IllegalArgumentException("Grain must be at least 1 pixel");
+        }
+        this.parallelism = parallelism;
+        this.grain = grain;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    public static TileScheduler shared() {
+        TileScheduler scheduler = shared;
+        if (scheduler == null) {
+            synchronized (TileScheduler.class) {
+                scheduler = shared;
+                if (scheduler == null) {
+                    int parallelism = Integer.getInteger("imageprocessor.parallelism",
+                            Runtime.getRuntime().availableProcessors());
+                    scheduler = new TileScheduler(Math.max(1, parallelism));
+                    shared = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    // Replaces the shared scheduler, e.g. to pin the parallelism level at startup
+    public static synchronized void setShared(TileScheduler scheduler) {
+        TileScheduler previous = shared;
+        shared = scheduler;
+        if (previous != null && previous != scheduler) {
+            previous.shutdown();
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Runs task on the calling thread, reporting every pass it starts to monitor
+    public static <T> T monitored(Monitor monitor, Supplier<T> task) {
+        Monitor previous = MONITOR.get();
+        MONITOR.set(monitor);
+        try {
+            return task.get();
+        } finally {
+            MONITOR.set(previous);
+        }
+    }
+
+    // Runs the kernel over rows [0, height) of an image with the given width and
+    // returns when every band is done. Exceptions thrown by a kernel are rethrown here.
+    public void forEachBand(int width, int height, BandKernel kernel) {
+        forEachBand(width, height, 1, kernel);
+    }
+
+    // Same as above, but never splits below minRows rows. Kernels with a per-band
+    // setup cost (e.g. building histograms for the first row) use this to keep
+    // bands close to height / parallelism.
+    public void forEachBand(int width, int height, int minRows, BandKernel kernel) {
+        if (height <= 0) {
+            return;
+        }
+        minRows = Math.max(minRows, Math.max(1, grain / Math.max(1, width)));
+        Monitor monitor = MONITOR.get();
+        if (monitor != null) {
+            kernel = monitoredKernel(monitor, height, kernel);
+        }
+        if (pool == null || height <= minRows) {
+            // Without a monitor there is nobody to tell about smaller bands
+            int step = monitor == null ? height : minRows;
+            for (int y = 0; y < height; y += step) {
+                kernel.process(y, Math.min(height, y + step));
+            }
+            return;
+        }
+        pool.invoke(new BandTask(kernel, 0, height, minRows));
+    }
+
+    private static BandKernel monitoredKernel(Monitor monitor, int height, BandKernel kernel) {
+        AtomicInteger rowsDone = new AtomicInteger();
+        return (y0, y1) -> {
+            monitor.progress(rowsDone.get(), height);
+            kernel.process(y0, y1);
+            monitor.progress(rowsDone.addAndGet(y1 - y0), height);
+        };
+    }
+
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static final class BandTask extends RecursiveAction {
+        private final BandKernel kernel;
+        private final int y0;
+        private final int y1;
+        private final int minRows;
+
+        BandTask(BandKernel kernel, int y0, int y1, int minRows) {
+            this.kernel = kernel;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.minRows = minRows;
+        }
+
+        @Override
+        protected void compute() {
+            if (y1 - y0 <= minRows) {
+                kernel.process(y0, y1);
+                return;
+            }
+            int middle = (y0 + y1) >>> 1;
+            invokeAll(new BandTask(kernel, y0, middle, minRows), new BandTask(kernel, middle, y1, minRows));
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package imageprocessor.io;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// Decoded images by file, so that opening the same file again skips the decoder.
+//
+// An entry remembers the modification time and length the file had before it was
+// decoded; when either differs on the next read the file is decoded again. Entries
+// are evicted least recently used first once their pixels take more than maxBytes,
+// and an image larger than that is returned without being kept.
+//
+// The cached images are shared: every reader of a file gets the same BufferedImage,
+// which nobody may write to. The ops, Pipeline and ImageWorker only ever write to
+// images they created; readCopy is for callers that want to draw on the result.
+// Threads that ask for a file being decoded wait for that decode instead of starting
+// their own.
+public final class ImageCache {
+
+    private static final ImageCache SHARED = new ImageCache(
+            Long.getLong("imageprocessor.imageCacheBytes", Runtime.getRuntime().maxMemory() / 8));
+
+    private static final class Entry {
+        final BufferedImage image;
+        final long modified;
+        final long length;
+        final long bytes;
+
+        Entry(BufferedImage image, long modified, long length) {
+            this.image = image;
+            this.modified = modified;
+            this.length = length;
+            this.bytes = sizeOf(image);
+        }
+    }
+
+    private final long maxBytes;
+    // In access order, eldest first
+    private final LinkedHashMap<File, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<File, FutureTask<BufferedImage>> loading = new HashMap<>();
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ImageCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    // An eighth of the heap, or -Dimageprocessor.imageCacheBytes=N bytes
+    public static ImageCache shared() {
+        return SHARED;
+    }
+
+    // The decoded image of file (see ImageFiles.read), shared with every other reader:
+    // it must not be written to
+    public BufferedImage read(File file) throws IOException {
+        File key = file.getAbsoluteFile();
+        // Taken before decoding, so a file that changes meanwhile is decoded again next time
+        long modified = key.lastModified();
+        long length = key.length();
+        FutureTask<BufferedImage> task;
+        boolean owner = false;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.modified == modified && entry.length == length) {
+                hits++;
+                return entry.image;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                bytes -= entry.bytes;
+            }
+            misses++;
+            task = loading.get(key);
+            if (task == null) {
+                task = new FutureTask<>(() -> ImageFiles.read(key));
+                loading.put(key, task);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            return await(task);
+        }
+        task.run();
+        BufferedImage image = null;
+        try {
+            image = await(task);
+            return image;
+        } finally {
+            synchronized (this) {
+                loading.remove(key);
+                if (image != null) {
+                    put(key, new Entry(image, modified, length));
+                }
+            }
+        }
+    }
+
+    // A copy of the decoded image of file, which the caller may write to
+    public BufferedImage readCopy(File file) throws IOException {
+        BufferedImage image = read(file);
+        ColorModel model = image.getColorModel();
+        return new BufferedImage(model, image.copyData(null), model.isAlphaPremultiplied(), null);
+    }
+
+    private static BufferedImage await(FutureTask<BufferedImage> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an image to be decoded");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new UncheckedIOException(new IOException(cause));
+        }
+    }
+
+    private void put(File key, Entry entry) {
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            bytes -= old.bytes;
+        }
+        bytes += entry.bytes;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            bytes -= evicted.bytes;
+            evictions++;
+        }
+    }
+
+    // Bytes of the pixel arrays of image
+    private static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    // Forgets every image; the counters are kept
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // Bytes of the images held now
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    // Reads answered from the cache
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    // Reads that decoded the file, or waited for another thread decoding it
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // Images dropped to stay within maxBytes
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d image(s), %.1f of %.1f MB, %d hit(s), %d miss(es), %d eviction(s)",
+                entries.size(), bytes / 1e6, maxBytes / 1e6, hits, misses, evictions);
+    }
+}
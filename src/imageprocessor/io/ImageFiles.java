@@ -0,0 +1,76 @@
+package imageprocessor.io;
+
+import imageprocessor.core.Rasters;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import javax.imageio.ImageIO;
+
+// Reads and writes images by file extension: Netpbm files (ppm, pgm, pbm, pnm) through
+// the Netpbm codec, everything else through ImageIO.
+public final class ImageFiles {
+
+    private ImageFiles() {
+    }
+
+    public static String extension(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    public static boolean isNetpbm(String extension) {
+        return extension.equals("ppm") || extension.equals("pgm") || extension.equals("pbm") || extension.equals("pnm");
+    }
+
+    public static BufferedImage read(File file) throws IOException {
+        if (isNetpbm(extension(file))) {
+            return NetpbmReader.read(file);
+        }
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+        return image;
+    }
+
+    // ppm, pgm and pbm are written as P6, P5 and P4, pnm as P5 or P6 depending on the image
+    public static void write(BufferedImage image, File file) throws IOException {
+        String extension = extension(file);
+        switch (extension) {
+            case "ppm":
+                NetpbmWriter.write(image, file, '6');
+                return;
+            case "pgm":
+                NetpbmWriter.write(image, file, '5');
+                return;
+            case "pbm":
+                NetpbmWriter.write(image, file, '4');
+                return;
+            case "pnm":
+                NetpbmWriter.write(image, file);
+                return;
+            default:
+                break;
+        }
+        if (ImageIO.write(image, extension, file)) {
+            return;
+        }
+        // Some writers (e.g. JPEG, BMP) reject images with alpha
+        if (image.getColorModel().hasAlpha() && ImageIO.write(opaque(image), extension, file)) {
+            return;
+        }
+        throw new IOException("Unsupported file format: " + extension);
+    }
+
+    private static BufferedImage opaque(BufferedImage image) {
+        int[] s = Rasters.ints(Rasters.toInt(image));
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] d = Rasters.ints(rgb);
+        for (int i = 0; i < s.length; i++) {
+            d[i] = 0xFF000000 | s[i];
+        }
+        return rgb;
+    }
+}
@@ -0,0 +1,170 @@
+package imageprocessor.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Header of a Netpbm file: format, width, height, maximum sample value and the file
+// offset where the samples start.
+//
+//  P1 / P4: bitmap (PBM), ASCII / binary, no maxval in the header
+//  P2 / P5: graymap (PGM), ASCII / binary
+//  P3 / P6: pixmap (PPM), ASCII / binary
+//
+// The magic number is followed by width, height and (except for bitmaps) maxval as
+// ASCII decimals, separated by any whitespace, with "#" comments allowed up to the end
+// of a line anywhere between them. A single whitespace character ends the header.
+// Samples take one byte when maxval is below 256 and two (big-endian) otherwise.
+//
+// Decoded rows use the binary PGM/PPM layout for every format, with bitmaps turned into
+// graymaps of maxval 1 (0 black, 1 white); getRowBytes() is the length of such a row.
+public final class NetpbmHeader {
+
+    // Longest header accepted, comments included
+    public static final int MAX_HEADER_BYTES = 1 << 16;
+    public static final int MAX_SAMPLE_VALUE = 65535;
+    // Longest Java array that every VM can allocate
+    static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final char START_OF_COMMENT = '#';
+    private static final char END_OF_LINE = '\n';
+
+    private final char format;
+    private final int width;
+    private final int height;
+    private final int maxValue;
+    private final long dataOffset;
+
+    public NetpbmHeader(char format, int width, int height, int maxValue, long dataOffset) {
+        if (format < '1' || format > '6') {
+            throw new IllegalArgumentException("Unsupported Netpbm format: P" + format);
+        }
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.maxValue = maxValue;
+        this.dataOffset = dataOffset;
+    }
+
+    // The digit after the 'P', e.g. '6' for binary PPM
+    public char getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxValue() {
+        return maxValue;
+    }
+
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    public boolean isAscii() {
+        return format <= '3';
+    }
+
+    public boolean isBitmap() {
+        return format == '1' || format == '4';
+    }
+
+    public boolean isGray() {
+        return format != '3' && format != '6';
+    }
+
+    public int getChannels() {
+        return isGray() ? 1 : 3;
+    }
+
+    public int getBytesPerSample() {
+        return maxValue > 255 ? 2 : 1;
+    }
+
+    // Length of a decoded row (see above)
+    public int getRowBytes() {
+        return width * getChannels() * getBytesPerSample();
+    }
+
+    // Length of a row in a binary file; ASCII rows have no fixed length
+    public int getFileRowBytes() {
+        return format == '4' ? (width + 7) / 8 : getRowBytes();
+    }
+
+    public static NetpbmHeader read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(MAX_HEADER_BYTES, channel.size()));
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0);
+        buffer.flip();
+        return parse(buffer);
+    }
+
+    static NetpbmHeader parse(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 3 || buffer.get() != 'P') {
+            throw new IOException("Invalid Netpbm format: missing magic number");
+        }
+        char format = (char) buffer.get();
+        if (format < '1' || format > '6') {
+            throw new IOException("Unsupported Netpbm format: P" + format);
+        }
+        int width = readNumber(buffer);
+        int height = readNumber(buffer);
+        int maxValue = format == '1' || format == '4' ? 1 : readNumber(buffer);
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Invalid Netpbm dimensions: " + width + "x" + height);
+        }
+        if (maxValue < 1 || maxValue > MAX_SAMPLE_VALUE) {
+            throw new IOException("Maximum sample value is outside the range 1.." + MAX_SAMPLE_VALUE + ": " + maxValue);
+        }
+        // Only a decoded row has to fit in an array; the whole image may not fit in memory
+        long rowBytes = (long) width * (format == '3' || format == '6' ? 3 : 1) * (maxValue > 255 ? 2 : 1);
+        if (rowBytes > MAX_ARRAY_LENGTH) {
+            throw new IOException("Netpbm rows are too long: " + width + " pixels");
+        }
+        if (!buffer.hasRemaining() || !isWhitespace(buffer.get())) {
+            throw new IOException("Invalid Netpbm header: missing whitespace before the samples");
+        }
+        return new NetpbmHeader(format, width, height, maxValue, buffer.position());
+    }
+
+    // Skips whitespace and comments, then reads one unsigned decimal number
+    private static int readNumber(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get(buffer.position());
+            if (b == START_OF_COMMENT) {
+                while (buffer.hasRemaining() && buffer.get() != END_OF_LINE);
+            } else if (isWhitespace(b)) {
+                buffer.get();
+            } else {
+                break;
+            }
+        }
+        long value = 0;
+        int digits = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get(buffer.position());
+            if (b < '0' || b > '9') {
+                break;
+            }
+            buffer.get();
+            value = value * 10 + (b - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw new IOException("Number in Netpbm header is too large");
+            }
+            digits++;
+        }
+        if (digits == 0) {
+            throw new IOException("Invalid Netpbm header: expected a number");
+        }
+        return (int) value;
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == 0x0B || b == '\f';
+    }
+}
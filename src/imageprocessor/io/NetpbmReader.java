@@ -0,0 +1,157 @@
+package imageprocessor.io;
+
+import imageprocessor.core.Rasters;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// Reads every Netpbm format (P1 to P6) through a FileChannel. Binary files are
+// memory-mapped; ASCII files go through NetpbmTokenizer.
+//
+// read() builds an image: 8-bit data becomes TYPE_BYTE_GRAY or TYPE_INT_RGB, rescaled
+// to 0..255 when maxval is lower, and 16-bit data (maxval above 255) becomes a ushort
+// image from Rasters.createUShort, rescaled to 0..65535. Bitmaps become 0/255 gray.
+//
+// readStrips() never builds an image: it decodes a few rows at a time and hands their
+// raw samples to a consumer, so files larger than the heap can be processed.
+public final class NetpbmReader {
+
+    // Rows are decoded in strips of about this many bytes when they cannot go straight into the raster
+    private static final int STRIP_BYTES = 1 << 20;
+
+    public interface StripConsumer {
+        // samples holds rows [y, y + rows) back to back in the decoded layout described in
+        // NetpbmHeader, header.getRowBytes() bytes per row, not rescaled. The array is
+        // reused for the next strip.
+        void accept(NetpbmHeader header, int y, int rows, byte[] samples) throws IOException;
+    }
+
+    private NetpbmReader() {
+    }
+
+    public static BufferedImage read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            NetpbmHeader header = NetpbmHeader.read(channel);
+            // One array element per pixel (bytes for gray, ints for RGB), or per sample for 16 bits
+            long length = (long) header.getWidth() * header.getHeight()
+                    * (header.getBytesPerSample() == 2 ? header.getChannels() : 1);
+            if (length > NetpbmHeader.MAX_ARRAY_LENGTH) {
+                throw new IOException("Netpbm image is too large for a single raster: " + header.getWidth() + "x"
+                        + header.getHeight() + "; readStrips can stream it");
+            }
+            NetpbmSamples samples = new NetpbmSamples(channel, header);
+            if (header.getBytesPerSample() == 2) {
+                return readUShort(header, samples);
+            }
+            int width = header.getWidth();
+            int height = header.getHeight();
+            byte[] scale = scaleTable(header.getMaxValue());
+
+            if (header.isGray()) {
+                BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+                byte[] d = Rasters.bytes(image);
+                samples.read(d, 0, height);
+                if (scale != null) {
+                    for (int i = 0; i < d.length; i++) {
+                        d[i] = scale[d[i] & 0xFF];
+                    }
+                }
+                return image;
+            }
+
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            int[] d = Rasters.ints(image);
+            int stripRows = stripRows(header);
+            byte[] strip = new byte[stripRows * header.getRowBytes()];
+            for (int y = 0; y < height; y += stripRows) {
+                int rows = Math.min(stripRows, height - y);
+                samples.read(strip, 0, rows);
+                if (scale != null) {
+                    for (int i = 0, end = rows * header.getRowBytes(); i < end; i++) {
+                        strip[i] = scale[strip[i] & 0xFF];
+                    }
+                }
+                for (int i = y * width, end = (y + rows) * width, j = 0; i < end; i++, j += 3) {
+                    d[i] = 0xFF000000 | (strip[j] & 0xFF) << 16 | (strip[j + 1] & 0xFF) << 8 | (strip[j + 2] & 0xFF);
+                }
+            }
+            return image;
+        }
+    }
+
+    // Streams the file to the consumer in strips of stripRows rows and returns its header
+    public static NetpbmHeader readStrips(File file, int stripRows, StripConsumer consumer) throws IOException {
+        if (stripRows < 1) {
+            throw new IllegalArgumentException("Strips must have at least one row");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            NetpbmHeader header = NetpbmHeader.read(channel);
+            NetpbmSamples samples = new NetpbmSamples(channel, header);
+            int height = header.getHeight();
+            stripRows = Math.min(Math.min(stripRows, height), Math.max(1, NetpbmHeader.MAX_ARRAY_LENGTH / header.getRowBytes()));
+            byte[] strip = new byte[stripRows * header.getRowBytes()];
+            for (int y = 0; y < height; y += stripRows) {
+                int rows = Math.min(stripRows, height - y);
+                samples.read(strip, 0, rows);
+                consumer.accept(header, y, rows, strip);
+            }
+            return header;
+        }
+    }
+
+    public static NetpbmHeader readHeader(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return NetpbmHeader.read(channel);
+        }
+    }
+
+    private static BufferedImage readUShort(NetpbmHeader header, NetpbmSamples samples) throws IOException {
+        int width = header.getWidth();
+        int height = header.getHeight();
+        int channels = header.getChannels();
+        BufferedImage image = Rasters.createUShort(width, height, channels);
+        short[] d = Rasters.shorts(image);
+        char[] scale = wideScaleTable(header.getMaxValue());
+        int stripRows = stripRows(header);
+        byte[] strip = new byte[stripRows * header.getRowBytes()];
+        for (int y = 0; y < height; y += stripRows) {
+            int rows = Math.min(stripRows, height - y);
+            samples.read(strip, 0, rows);
+            for (int i = y * width * channels, end = (y + rows) * width * channels, j = 0; i < end; i++, j += 2) {
+                int value = (strip[j] & 0xFF) << 8 | (strip[j + 1] & 0xFF);
+                d[i] = (short) (scale == null ? value : scale[value]);
+            }
+        }
+        return image;
+    }
+
+    private static int stripRows(NetpbmHeader header) {
+        return Math.min(header.getHeight(), Math.max(1, STRIP_BYTES / header.getRowBytes()));
+    }
+
+    // Maps samples of 0..maxValue onto 0..255, or null when maxValue is already 255
+    private static byte[] scaleTable(int maxValue) {
+        if (maxValue == 255) {
+            return null;
+        }
+        byte[] table = new byte[256];
+        for (int v = 0; v < table.length; v++) {
+            table[v] = (byte) ((Math.min(v, maxValue) * 255 + maxValue / 2) / maxValue);
+        }
+        return table;
+    }
+
+    // Maps samples of 0..maxValue onto 0..65535, or null when maxValue is already 65535
+    private static char[] wideScaleTable(int maxValue) {
+        if (maxValue == NetpbmHeader.MAX_SAMPLE_VALUE) {
+            return null;
+        }
+        char[] table = new char[NetpbmHeader.MAX_SAMPLE_VALUE + 1];
+        for (int v = 0; v < table.length; v++) {
+            table[v] = (char) ((Math.min(v, maxValue) * 65535L + maxValue / 2) / maxValue);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,122 @@
+package imageprocessor.io;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Decodes consecutive rows of a Netpbm file into the binary PGM/PPM sample layout
+// described in NetpbmHeader, whatever the format of the file.
+final class NetpbmSamples {
+
+    // Binary rows are mapped in windows of at most this many bytes
+    static final int MAX_WINDOW_BYTES = 1 << 26;
+
+    private final FileChannel channel;
+    private final NetpbmHeader header;
+    private final NetpbmTokenizer tokenizer;
+    private byte[] packedRow;
+    private int nextRow;
+
+    NetpbmSamples(FileChannel channel, NetpbmHeader header) throws IOException {
+        this.channel = channel;
+        this.header = header;
+        if (header.isAscii()) {
+            tokenizer = new NetpbmTokenizer(channel, header.getDataOffset());
+        } else {
+            tokenizer = null;
+            long expected = header.getDataOffset() + (long) header.getFileRowBytes() * header.getHeight();
+            if (channel.size() < expected) {
+                throw new IOException("Unexpected end of Netpbm data: expected " + expected
+                        + " bytes, found " + channel.size());
+            }
+        }
+    }
+
+    // Decodes the next rows into dst starting at offset, header.getRowBytes() bytes per row
+    void read(byte[] dst, int offset, int rows) throws IOException {
+        if (nextRow + rows > header.getHeight()) {
+            throw new IllegalStateException("Reading past the last row of the image");
+        }
+        switch (header.getFormat()) {
+            case '1':
+                readAsciiBits(dst, offset, rows);
+                break;
+            case '2':
+            case '3':
+                readAsciiSamples(dst, offset, rows);
+                break;
+            case '4':
+                readPackedBits(dst, offset, rows);
+                break;
+            default:
+                readBinary(dst, offset, rows);
+                break;
+        }
+        nextRow += rows;
+    }
+
+    private void readBinary(byte[] dst, int offset, int rows) throws IOException {
+        int rowBytes = header.getRowBytes();
+        int windowRows = Math.max(1, MAX_WINDOW_BYTES / rowBytes);
+        for (int done = 0; done < rows; done += windowRows) {
+            int count = Math.min(windowRows, rows - done);
+            map(nextRow + done, count).get(dst, offset + done * rowBytes, count * rowBytes);
+        }
+    }
+
+    // P4: eight pixels per byte, most significant bit first, 1 for black
+    private void readPackedBits(byte[] dst, int offset, int rows) throws IOException {
+        int width = header.getWidth();
+        int fileRowBytes = header.getFileRowBytes();
+        if (packedRow == null) {
+            packedRow = new byte[fileRowBytes];
+        }
+        int windowRows = Math.max(1, MAX_WINDOW_BYTES / fileRowBytes);
+        for (int done = 0; done < rows; done += windowRows) {
+            int count = Math.min(windowRows, rows - done);
+            MappedByteBuffer buffer = map(nextRow + done, count);
+            for (int r = 0; r < count; r++) {
+                buffer.get(packedRow);
+                int o = offset + (done + r) * width;
+                for (int x = 0; x < width; x++) {
+                    dst[o + x] = (byte) (~packedRow[x >> 3] >> (7 - (x & 7)) & 1);
+                }
+            }
+        }
+    }
+
+    // P1: one digit per pixel, 1 for black
+    private void readAsciiBits(byte[] dst, int offset, int rows) throws IOException {
+        for (int i = offset, end = offset + rows * header.getWidth(); i < end; i++) {
+            dst[i] = (byte) (1 - tokenizer.nextBit());
+        }
+    }
+
+    private void readAsciiSamples(byte[] dst, int offset, int rows) throws IOException {
+        int samples = rows * header.getWidth() * header.getChannels();
+        int maxValue = header.getMaxValue();
+        if (header.getBytesPerSample() == 1) {
+            for (int i = offset, end = offset + samples; i < end; i++) {
+                dst[i] = (byte) checkSample(tokenizer.nextInt(), maxValue);
+            }
+        } else {
+            for (int i = offset, end = offset + 2 * samples; i < end; i += 2) {
+                int value = checkSample(tokenizer.nextInt(), maxValue);
+                dst[i] = (byte) (value >> 8);
+                dst[i + 1] = (byte) value;
+            }
+        }
+    }
+
+    private static int checkSample(int value, int maxValue) throws IOException {
+        if (value > maxValue) {
+            throw new IOException("Netpbm sample " + value + " is above the maximum value " + maxValue);
+        }
+        return value;
+    }
+
+    private MappedByteBuffer map(int y, int rows) throws IOException {
+        long fileRowBytes = header.getFileRowBytes();
+        return channel.map(FileChannel.MapMode.READ_ONLY, header.getDataOffset() + y * fileRowBytes, rows * fileRowBytes);
+    }
+}
@@ -0,0 +1,90 @@
+package imageprocessor.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Reads the samples of ASCII Netpbm files (P1, P2, P3) through a fixed buffer,
+// without allocating per token. Comments are skipped wherever they appear.
+final class NetpbmTokenizer {
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final byte[] data = new byte[BUFFER_BYTES];
+    private final ByteBuffer buffer = ByteBuffer.wrap(data);
+    private long filePosition;
+    private int position;
+    private int limit;
+
+    NetpbmTokenizer(FileChannel channel, long start) {
+        this.channel = channel;
+        this.filePosition = start;
+    }
+
+    // Next unsigned decimal number
+    int nextInt() throws IOException {
+        int b = skipSeparators();
+        if (b < '0' || b > '9') {
+            throw new IOException("Invalid Netpbm sample: unexpected character '" + (char) b + "'");
+        }
+        int value = 0;
+        do {
+            value = value * 10 + (b - '0');
+            if (value > NetpbmHeader.MAX_SAMPLE_VALUE) {
+                throw new IOException("Netpbm sample is too large");
+            }
+            position++;
+            if (position == limit && !fill()) {
+                break;
+            }
+            b = data[position];
+        } while (b >= '0' && b <= '9');
+        return value;
+    }
+
+    // Next P1 digit; bits need not be separated by whitespace
+    int nextBit() throws IOException {
+        int b = skipSeparators();
+        if (b != '0' && b != '1') {
+            throw new IOException("Invalid PBM sample: unexpected character '" + (char) b + "'");
+        }
+        position++;
+        return b - '0';
+    }
+
+    // Returns the first byte that is neither whitespace nor part of a comment, without consuming it
+    private int skipSeparators() throws IOException {
+        boolean comment = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                throw new IOException("Unexpected end of Netpbm data");
+            }
+            byte b = data[position];
+            if (comment) {
+                comment = b != '\n' && b != '\r';
+            } else if (b == '#') {
+                comment = true;
+            } else if (!NetpbmHeader.isWhitespace(b)) {
+                return b;
+            }
+            position++;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer, filePosition);
+        } while (read == 0);
+        if (read < 0) {
+            limit = position = 0;
+            return false;
+        }
+        filePosition += read;
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
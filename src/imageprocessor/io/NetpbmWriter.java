@@ -0,0 +1,228 @@
+package imageprocessor.io;
+
+import imageprocessor.core.Rasters;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+// Writes Netpbm files in any format, P1 to P6.
+//
+// write() saves a whole image. 16-bit images are written with maxval 65535, everything
+// else with maxval 255 (or as a bitmap, where gray values from 128 up become white).
+// For images that are produced a strip at a time, open a writer with the final size and
+// call writeRows() until every row has been written.
+public final class NetpbmWriter implements Closeable {
+
+    // Images are converted to samples in strips of about this size
+    private static final int STRIP_BYTES = 1 << 20;
+    private static final int BUFFER_BYTES = 1 << 16;
+    // Longest line in ASCII files, as recommended by the Netpbm specification
+    private static final int MAX_LINE_LENGTH = 70;
+
+    private final FileChannel channel;
+    private final NetpbmHeader header;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final byte[] digits = new byte[5];
+    private int rowsWritten;
+    private int lineLength;
+
+    // Binary PGM or PPM with maxval 255
+    public NetpbmWriter(File file, int width, int height, boolean gray) throws IOException {
+        this(file, gray ? '5' : '6', width, height, 255);
+    }
+
+    public NetpbmWriter(File file, char format, int width, int height, int maxValue) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid image dimensions: " + width + "x" + height);
+        }
+        boolean bitmap = format == '1' || format == '4';
+        if (bitmap ? maxValue != 1 : maxValue < 1 || maxValue > NetpbmHeader.MAX_SAMPLE_VALUE) {
+            throw new IllegalArgumentException("Invalid maximum sample value for P" + format + ": " + maxValue);
+        }
+        String text = "P" + format + "\n" + width + " " + height + "\n" + (bitmap ? "" : maxValue + "\n");
+        this.header = new NetpbmHeader(format, width, height, maxValue, text.length());
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.put(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Saves the image as P5 if it is gray, as P6 otherwise (alpha is dropped)
+    public static void write(BufferedImage image, File file) throws IOException {
+        write(image, file, Rasters.isGrayscale(image) ? '5' : '6');
+    }
+
+    public static void write(BufferedImage image, File file, char format) throws IOException {
+        boolean grayFormat = format != '3' && format != '6';
+        if (grayFormat && !Rasters.isGrayscale(image)) {
+            throw new IllegalArgumentException("P" + format + " needs a grayscale image");
+        }
+        boolean bitmap = format == '1' || format == '4';
+        BufferedImage wide = bitmap ? null : wide(image, grayFormat);
+        BufferedImage packed = wide == null ? (grayFormat ? Rasters.packed(image) : Rasters.toInt(image)) : null;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int maxValue = bitmap ? 1 : wide != null ? NetpbmHeader.MAX_SAMPLE_VALUE : 255;
+
+        try (NetpbmWriter writer = new NetpbmWriter(file, format, width, height, maxValue)) {
+            int rowBytes = writer.header.getRowBytes();
+            int stripRows = Math.min(height, Math.max(1, STRIP_BYTES / rowBytes));
+            byte[] strip = new byte[stripRows * rowBytes];
+            for (int y = 0; y < height; y += stripRows) {
+                int rows = Math.min(stripRows, height - y);
+                int from = y * width;
+                int to = (y + rows) * width;
+                if (wide != null) {
+                    short[] s = Rasters.shorts(wide);
+                    int channels = writer.header.getChannels();
+                    for (int i = from * channels, j = 0; i < to * channels; i++, j += 2) {
+                        strip[j] = (byte) (s[i] >> 8);
+                        strip[j + 1] = (byte) s[i];
+                    }
+                } else if (bitmap) {
+                    byte[] s = Rasters.bytes(packed);
+                    for (int i = from, j = 0; i < to; i++, j++) {
+                        strip[j] = (byte) ((s[i] & 0xFF) >>> 7);
+                    }
+                } else if (grayFormat) {
+                    System.arraycopy(Rasters.bytes(packed), from, strip, 0, to - from);
+                } else {
+                    int[] s = Rasters.ints(packed);
+                    for (int i = from, j = 0; i < to; i++, j += 3) {
+                        int p = s[i];
+                        strip[j] = (byte) (p >> 16);
+                        strip[j + 1] = (byte) (p >> 8);
+                        strip[j + 2] = (byte) p;
+                    }
+                }
+                writer.writeRows(strip, 0, rows);
+            }
+        }
+    }
+
+    public NetpbmHeader getHeader() {
+        return header;
+    }
+
+    // Appends rows of samples, in the decoded layout described in NetpbmHeader, starting at offset
+    public void writeRows(byte[] samples, int offset, int rows) throws IOException {
+        if (rowsWritten + rows > header.getHeight()) {
+            throw new IllegalStateException("Writing past the last row of the image");
+        }
+        int rowBytes = header.getRowBytes();
+        switch (header.getFormat()) {
+            case '1':
+                for (int r = 0; r < rows; r++, offset += rowBytes) {
+                    for (int x = 0; x < rowBytes; x++) {
+                        putToken(samples[offset + x] == 0 ? 1 : 0);
+                    }
+                    endLine();
+                }
+                break;
+            case '2':
+            case '3':
+                boolean wide = header.getBytesPerSample() == 2;
+                for (int r = 0; r < rows; r++, offset += rowBytes) {
+                    for (int i = offset, end = offset + rowBytes; i < end; i += wide ? 2 : 1) {
+                        putToken(wide ? (samples[i] & 0xFF) << 8 | (samples[i + 1] & 0xFF) : samples[i] & 0xFF);
+                    }
+                    endLine();
+                }
+                break;
+            case '4':
+                for (int r = 0; r < rows; r++, offset += rowBytes) {
+                    for (int x = 0; x < rowBytes; x += 8) {
+                        int bits = 0;
+                        for (int bit = 0; bit < 8; bit++) {
+                            boolean black = x + bit < rowBytes && samples[offset + x + bit] == 0;
+                            bits = bits << 1 | (black ? 1 : 0);
+                        }
+                        ensureRoom(1);
+                        buffer.put((byte) bits);
+                    }
+                }
+                break;
+            default:
+                flush();
+                writeFully(ByteBuffer.wrap(samples, offset, rows * rowBytes));
+                break;
+        }
+        rowsWritten += rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+        if (rowsWritten != header.getHeight()) {
+            throw new IOException("Only " + rowsWritten + " of " + header.getHeight() + " rows were written");
+        }
+    }
+
+    // The image as a packed ushort image when it holds 16-bit samples of the wanted kind, else null
+    private static BufferedImage wide(BufferedImage image, boolean gray) {
+        if (Rasters.isUShort(image)) {
+            return image.getRaster().getNumBands() == (gray ? 1 : 3) ? image : null;
+        }
+        if (gray && image.getType() == BufferedImage.TYPE_USHORT_GRAY) {
+            BufferedImage copy = Rasters.createUShort(image.getWidth(), image.getHeight(), 1);
+            copy.getRaster().setRect(image.getRaster());
+            return copy;
+        }
+        return null;
+    }
+
+    // Writes one ASCII sample, wrapping lines before they get too long
+    private void putToken(int value) throws IOException {
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensureRoom(length + 1);
+        if (lineLength > 0) {
+            if (lineLength + 1 + length > MAX_LINE_LENGTH) {
+                buffer.put((byte) '\n');
+                lineLength = 0;
+            } else {
+                buffer.put((byte) ' ');
+                lineLength++;
+            }
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            buffer.put(digits[i]);
+        }
+        lineLength += length;
+    }
+
+    private void endLine() throws IOException {
+        ensureRoom(1);
+        buffer.put((byte) '\n');
+        lineLength = 0;
+    }
+
+    private void ensureRoom(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+}
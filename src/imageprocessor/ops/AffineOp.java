@@ -0,0 +1,229 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+
+// Applies an affine transform (rotation by any angle, scale, shear) to the image.
+// Every destination pixel center is mapped back through the inverse transform and the
+// source is sampled there; points that fall outside the source become transparent
+// black (black for opaque images). Either the output is sized to fit the whole
+// transformed image, or it keeps the source size and the transform is applied about
+// the image center.
+//
+// The inverse mapping is linear, so along a destination row the source position moves
+// by a constant step: it is computed once per row and then stepped in 32.32 fixed
+// point, with no trigonometry or floating point per pixel. The fraction is cut to
+// 8 bits, which indexes the bilinear weights directly and a table of bicubic weights.
+// Rows are processed in parallel.
+public final class AffineOp implements ImageOp {
+
+    private static final long ONE = 1L << 32;
+    private static final long HALF = ONE >> 1;
+    private static final int PHASE_BITS = 8;
+    private static final int PHASES = 1 << PHASE_BITS;
+    // Bicubic weights of each phase sum to 1 << CUBIC_BITS
+    private static final int CUBIC_BITS = 12;
+    // Extra precision kept between the horizontal and vertical bicubic passes
+    private static final int CUBIC_ROW_BITS = 6;
+    private static final int[] CUBIC_WEIGHTS = cubicWeights();
+
+    private final AffineTransform transform;
+    private final boolean fit;
+    private final Interpolation interpolation;
+
+    // fit: size the output to the transformed image (the translation of the transform
+    // is then irrelevant); otherwise keep the source size and transform about the center
+    public AffineOp(AffineTransform transform, boolean fit, Interpolation interpolation) {
+        if (transform.getDeterminant() == 0 || Double.isNaN(transform.getDeterminant())) {
+            throw new IllegalArgumentException("The transform cannot be inverted");
+        }
+        this.transform = new AffineTransform(transform);
+        this.fit = fit;
+        this.interpolation = interpolation;
+    }
+
+    // Rotates clockwise by any angle, growing the canvas so the whole image stays visible
+    public static AffineOp rotate(double degrees, Interpolation interpolation) {
+        return new AffineOp(AffineTransform.getRotateInstance(Math.toRadians(degrees)), true, interpolation);
+    }
+
+    // Rotates clockwise about the center keeping the image size, e.g. to deskew a scanned page
+    public static AffineOp deskew(double degrees, Interpolation interpolation) {
+        return new AffineOp(AffineTransform.getRotateInstance(Math.toRadians(degrees)), false, interpolation);
+    }
+
+    public static AffineOp scale(double scaleX, double scaleY, Interpolation interpolation) {
+        return new AffineOp(AffineTransform.getScaleInstance(scaleX, scaleY), true, interpolation);
+    }
+
+    public static AffineOp shear(double shearX, double shearY, Interpolation interpolation) {
+        return new AffineOp(AffineTransform.getShearInstance(shearX, shearY), true, interpolation);
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.packed(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        AffineTransform forward = new AffineTransform();
+        int outWidth = width;
+        int outHeight = height;
+        if (fit) {
+            Rectangle2D bounds = transform.createTransformedShape(new Rectangle(0, 0, width, height)).getBounds2D();
+            // Round before taking the ceiling so that exact sizes do not gain a column from float noise
+            double outW = Math.ceil(Math.round(bounds.getWidth() * 1e6) / 1e6);
+            double outH = Math.ceil(Math.round(bounds.getHeight() * 1e6) / 1e6);
+            if (outW * outH > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The transformed image is too large");
+            }
+            outWidth = Math.max(1, (int) outW);
+            outHeight = Math.max(1, (int) outH);
+            forward.translate(-bounds.getMinX(), -bounds.getMinY());
+            forward.concatenate(transform);
+        } else {
+            forward.translate(width / 2.0, height / 2.0);
+            forward.concatenate(transform);
+            forward.translate(-width / 2.0, -height / 2.0);
+        }
+        AffineTransform inverse;
+        try {
+            inverse = forward.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            throw new IllegalArgumentException("The transform cannot be inverted", e);
+        }
+
+        BufferedImage out = new BufferedImage(outWidth, outHeight, in.getType());
+        boolean gray = Rasters.isGray(in);
+        int[] si = gray ? null : Rasters.ints(in);
+        byte[] sb = gray ? Rasters.bytes(in) : null;
+        int[] di = gray ? null : Rasters.ints(out);
+        byte[] db = gray ? Rasters.bytes(out) : null;
+        long du = fixed(inverse.getScaleX());
+        long dv = fixed(inverse.getShearY());
+        int rowWidth = outWidth;
+        TileScheduler.shared().forEachBand(outWidth, outHeight, (y0, y1) -> {
+            Point2D.Double p = new Point2D.Double();
+            for (int y = y0; y < y1; y++) {
+                // Source position of the first pixel center of the row, with pixel centers on integers
+                p.setLocation(0.5, y + 0.5);
+                inverse.transform(p, p);
+                long u = fixed(p.x - 0.5);
+                long v = fixed(p.y - 0.5);
+                int row = y * rowWidth;
+                for (int x = 0; x < rowWidth; x++, u += du, v += dv) {
+                    int value = sample(si, sb, width, height, u, v);
+                    if (di != null) {
+                        di[row + x] = value;
+                    } else {
+                        db[row + x] = (byte) value;
+                    }
+                }
+            }
+        });
+        return out;
+    }
+
+    // The pixel at fixed-point source position (u, v), or 0 outside the source
+    private int sample(int[] si, byte[] sb, int width, int height, long u, long v) {
+        int nx = (int) ((u + HALF) >> 32);
+        int ny = (int) ((v + HALF) >> 32);
+        if (nx < 0 || nx >= width || ny < 0 || ny >= height) {
+            return 0;
+        }
+        switch (interpolation) {
+            case NEAREST:
+                return sb != null ? sb[ny * width + nx] & 0xFF : si[ny * width + nx];
+            case BILINEAR:
+                return bilinear(si, sb, width, height, u, v);
+            default:
+                return bicubic(si, sb, width, height, u, v);
+        }
+    }
+
+    private static int bilinear(int[] si, byte[] sb, int width, int height, long u, long v) {
+        int x0 = (int) (u >> 32);
+        int y0 = (int) (v >> 32);
+        int fx = (int) (u >>> (32 - PHASE_BITS)) & (PHASES - 1);
+        int fy = (int) (v >>> (32 - PHASE_BITS)) & (PHASES - 1);
+        int left = Math.max(0, x0);
+        int right = Math.min(width - 1, x0 + 1);
+        int top = Math.max(0, y0) * width;
+        int bottom = Math.min(height - 1, y0 + 1) * width;
+        int result = 0;
+        for (int c = 0, shift = 0, channels = sb != null ? 1 : 4; c < channels; c++, shift += 8) {
+            int upper = texel(si, sb, top + left, shift) * (PHASES - fx) + texel(si, sb, top + right, shift) * fx;
+            int lower = texel(si, sb, bottom + left, shift) * (PHASES - fx) + texel(si, sb, bottom + right, shift) * fx;
+            int value = (upper * (PHASES - fy) + lower * fy + (1 << (2 * PHASE_BITS - 1))) >> (2 * PHASE_BITS);
+            result |= value << shift;
+        }
+        return result;
+    }
+
+    private static int bicubic(int[] si, byte[] sb, int width, int height, long u, long v) {
+        int x0 = (int) (u >> 32) - 1;
+        int y0 = (int) (v >> 32) - 1;
+        int wx = ((int) (u >>> (32 - PHASE_BITS)) & (PHASES - 1)) * 4;
+        int wy = ((int) (v >>> (32 - PHASE_BITS)) & (PHASES - 1)) * 4;
+        // The 4 x 4 neighbourhood, clamped to the edges; locals rather than an array, as
+        // this runs once per output pixel
+        int c0 = Math.max(0, Math.min(width - 1, x0));
+        int c1 = Math.max(0, Math.min(width - 1, x0 + 1));
+        int c2 = Math.max(0, Math.min(width - 1, x0 + 2));
+        int c3 = Math.max(0, Math.min(width - 1, x0 + 3));
+        int r0 = Math.max(0, Math.min(height - 1, y0)) * width;
+        int r1 = Math.max(0, Math.min(height - 1, y0 + 1)) * width;
+        int r2 = Math.max(0, Math.min(height - 1, y0 + 2)) * width;
+        int r3 = Math.max(0, Math.min(height - 1, y0 + 3)) * width;
+        int result = 0;
+        for (int c = 0, shift = 0, channels = sb != null ? 1 : 4; c < channels; c++, shift += 8) {
+            int sum = CUBIC_WEIGHTS[wy] * cubicRow(si, sb, r0, c0, c1, c2, c3, wx, shift)
+                    + CUBIC_WEIGHTS[wy + 1] * cubicRow(si, sb, r1, c0, c1, c2, c3, wx, shift)
+                    + CUBIC_WEIGHTS[wy + 2] * cubicRow(si, sb, r2, c0, c1, c2, c3, wx, shift)
+                    + CUBIC_WEIGHTS[wy + 3] * cubicRow(si, sb, r3, c0, c1, c2, c3, wx, shift);
+            int bits = CUBIC_BITS + CUBIC_ROW_BITS;
+            int value = Math.max(0, Math.min(255, (sum + (1 << (bits - 1))) >> bits));
+            result |= value << shift;
+        }
+        return result;
+    }
+
+    // One row of the bicubic neighbourhood weighted along x, rounded to CUBIC_ROW_BITS
+    private static int cubicRow(int[] si, byte[] sb, int row, int c0, int c1, int c2, int c3, int wx, int shift) {
+        int rowSum = CUBIC_WEIGHTS[wx] * texel(si, sb, row + c0, shift)
+                + CUBIC_WEIGHTS[wx + 1] * texel(si, sb, row + c1, shift)
+                + CUBIC_WEIGHTS[wx + 2] * texel(si, sb, row + c2, shift)
+                + CUBIC_WEIGHTS[wx + 3] * texel(si, sb, row + c3, shift);
+        return (rowSum + (1 << (CUBIC_BITS - CUBIC_ROW_BITS - 1))) >> (CUBIC_BITS - CUBIC_ROW_BITS);
+    }
+
+    // Channel at shift of an ARGB pixel, or the sample of a gray one
+    private static int texel(int[] si, byte[] sb, int index, int shift) {
+        return sb != null ? sb[index] & 0xFF : si[index] >>> shift & 0xFF;
+    }
+
+    private static long fixed(double value) {
+        return Math.round(value * ONE);
+    }
+
+    // The 4 tap weights for each phase, adjusted so that every phase sums exactly to 1 << CUBIC_BITS
+    private static int[] cubicWeights() {
+        int[] weights = new int[PHASES * 4];
+        for (int phase = 0; phase < PHASES; phase++) {
+            double t = (double) phase / PHASES;
+            int sum = 0;
+            for (int k = 0; k < 4; k++) {
+                weights[phase * 4 + k] = (int) Math.round(Interpolation.cubic(k - 1 - t) * (1 << CUBIC_BITS));
+                sum += weights[phase * 4 + k];
+            }
+            weights[phase * 4 + (t < 0.5 ? 1 : 2)] += (1 << CUBIC_BITS) - sum;
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,163 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Blends the same two images again and again at different levels, as a slider does:
+//  C' = C1 * (1 - a) + C2 * a, with a = level / 100
+//
+// Both images are unpacked once into planar channel arrays, and each blend is two
+// multiplies per channel in 8-bit fixed point (a is rounded to 1/256, so levels 0 and
+// 100 give the inputs back exactly). Output goes to two images used in turn: the one
+// returned by a call is left alone by the next call, so it can be shown while the next
+// blend is computed, and is overwritten by the call after that. A preview blends
+// averaged copies of the images at a lower resolution, built the first time they are
+// asked for, so that dragging stays smooth on large images.
+//
+// Calls are expected from one thread at a time, such as the ImageWorker thread.
+public final class BlendEngine {
+
+    private final BufferedImage first;
+    private final BufferedImage second;
+    private final int width;
+    private final int height;
+
+    private Planes full;
+    private Planes coarse;
+
+    public BlendEngine(BufferedImage first, BufferedImage second) {
+        if (first.getWidth() != second.getWidth() || first.getHeight() != second.getHeight()) {
+            throw new IllegalArgumentException("Images must have the same dimensions.");
+        }
+        this.first = first;
+        this.second = second;
+        this.width = first.getWidth();
+        this.height = first.getHeight();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // The full-size blend, as a TYPE_INT_RGB image
+    public synchronized BufferedImage blend(int level) {
+        if (full == null) {
+            full = new Planes(Rasters.ints(Rasters.toInt(first)), Rasters.ints(Rasters.toInt(second)), width, height);
+        }
+        return full.blend(level);
+    }
+
+    // A blend of at most about maxPixels pixels, each averaging a square block of the
+    // images; the full-size blend when the images are no larger than that
+    public synchronized BufferedImage preview(int level, int maxPixels) {
+        int step = (int) Math.ceil(Math.sqrt((double) width * height / Math.max(1, maxPixels)));
+        if (step <= 1) {
+            return blend(level);
+        }
+        if (coarse == null || coarse.step != step) {
+            int[] a = Rasters.ints(Rasters.toInt(first));
+            int[] b = Rasters.ints(Rasters.toInt(second));
+            coarse = new Planes(shrink(a, step), shrink(b, step), (width + step - 1) / step, (height + step - 1) / step);
+            coarse.step = step;
+        }
+        return coarse.blend(level);
+    }
+
+    // Averages every step x step block (smaller at the right and bottom edges)
+    private int[] shrink(int[] pixels, int step) {
+        int w = (width + step - 1) / step;
+        int h = (height + step - 1) / step;
+        int[] out = new int[w * h];
+        TileScheduler.shared().forEachBand(w, h, (y0, y1) -> {
+            int[] sums = new int[w * 3];
+            int[] counts = new int[w];
+            for (int y = y0; y < y1; y++) {
+                Arrays.fill(sums, 0);
+                Arrays.fill(counts, 0);
+                for (int sy = y * step, ey = Math.min(height, sy + step); sy < ey; sy++) {
+                    for (int x = 0, i = sy * width; x < width; x++, i++) {
+                        int p = pixels[i];
+                        int c = x / step;
+                        sums[c * 3] += p >> 16 & 0xFF;
+                        sums[c * 3 + 1] += p >> 8 & 0xFF;
+                        sums[c * 3 + 2] += p & 0xFF;
+                        counts[c]++;
+                    }
+                }
+                for (int c = 0; c < w; c++) {
+                    int n = counts[c];
+                    out[y * w + c] = (sums[c * 3] + n / 2) / n << 16 | (sums[c * 3 + 1] + n / 2) / n << 8
+                            | (sums[c * 3 + 2] + n / 2) / n;
+                }
+            }
+        });
+        return out;
+    }
+
+    // Channel planes of both images and the two output images
+    private static final class Planes {
+        final int width;
+        final int height;
+        final byte[] red1;
+        final byte[] green1;
+        final byte[] blue1;
+        final byte[] red2;
+        final byte[] green2;
+        final byte[] blue2;
+        final BufferedImage[] outputs = new BufferedImage[2];
+        int next;
+        int step = 1;
+
+        Planes(int[] a, int[] b, int width, int height) {
+            this.width = width;
+            this.height = height;
+            int n = width * height;
+            red1 = new byte[n];
+            green1 = new byte[n];
+            blue1 = new byte[n];
+            red2 = new byte[n];
+            green2 = new byte[n];
+            blue2 = new byte[n];
+            TileScheduler.shared().forEachBand(width, height, (y0, y1) -> {
+                for (int i = y0 * width, end = y1 * width; i < end; i++) {
+                    red1[i] = (byte) (a[i] >> 16);
+                    green1[i] = (byte) (a[i] >> 8);
+                    blue1[i] = (byte) a[i];
+                    red2[i] = (byte) (b[i] >> 16);
+                    green2[i] = (byte) (b[i] >> 8);
+                    blue2[i] = (byte) b[i];
+                }
+            });
+        }
+
+        BufferedImage blend(int level) {
+            if (level < 0 || level > 100) {
+                throw new IllegalArgumentException("Blend level is outside the range 0..100");
+            }
+            int w2 = (level * 256 + 50) / 100;
+            int w1 = 256 - w2;
+            if (outputs[next] == null) {
+                outputs[next] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            }
+            BufferedImage out = outputs[next];
+            int[] d = Rasters.ints(out);
+            TileScheduler.shared().forEachBand(width, height, (y0, y1) -> {
+                for (int i = y0 * width, end = y1 * width; i < end; i++) {
+                    int red = (red1[i] & 0xFF) * w1 + (red2[i] & 0xFF) * w2 + 128 >> 8;
+                    int green = (green1[i] & 0xFF) * w1 + (green2[i] & 0xFF) * w2 + 128 >> 8;
+                    int blue = (blue1[i] & 0xFF) * w1 + (blue2[i] & 0xFF) * w2 + 128 >> 8;
+                    d[i] = 0xFF000000 | red << 16 | green << 8 | blue;
+                }
+            });
+            // Only flip once the blend is complete; a cancelled one leaves the shown image alone
+            next ^= 1;
+            return out;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.PointOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Mixes the source with a second image of the same size:
+//  C' = C1 * (1 - a) + C2 * a, with a = level / 100
+public final class BlendOp implements PointOp {
+
+    private static final int DIV_100 = 5243;
+    private static final int DIV_100_SHIFT = 19;
+
+    private final BufferedImage second;
+    private final int level;
+
+    public BlendOp(BufferedImage second, int level) {
+        if (level < 0 || level > 100) {
+            throw new IllegalArgumentException("Blend level is outside the range 0..100");
+        }
+        this.second = Rasters.toInt(second);
+        this.level = level;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.toInt(src);
+        checkSize(in.getWidth(), in.getHeight());
+        BufferedImage out = new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] s = Rasters.ints(in);
+        int[] d = Rasters.ints(out);
+        int width = in.getWidth();
+        TileScheduler.shared().forEachBand(width, in.getHeight(),
+                (y0, y1) -> apply(s, y0 * width, d, y0 * width, (y1 - y0) * width, y0 * width));
+        return out;
+    }
+
+    @Override
+    public int getOutputType(int inputType) {
+        return BufferedImage.TYPE_INT_RGB;
+    }
+
+    @Override
+    public void checkSize(int width, int height) {
+        if (width != second.getWidth() || height != second.getHeight()) {
+            throw new IllegalArgumentException("Images must have the same dimensions.");
+        }
+    }
+
+    // The loop is kept free of branches and divisions so that the JIT can vectorize it:
+    // x / 100 is computed exactly as x * 5243 >> 19 for every x up to 255 * 100.
+    @Override
+    public void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int index) {
+        int[] s2 = Rasters.ints(second);
+        int w2 = level;
+        int w1 = 100 - level;
+        for (int i = 0; i < length; i++) {
+            int p = src[srcOffset + i];
+            int q = s2[index + i];
+            int red = ((p >> 16 & 0xFF) * w1 + (q >> 16 & 0xFF) * w2) * DIV_100 >> DIV_100_SHIFT;
+            int green = ((p >> 8 & 0xFF) * w1 + (q >> 8 & 0xFF) * w2) * DIV_100 >> DIV_100_SHIFT;
+            int blue = ((p & 0xFF) * w1 + (q & 0xFF) * w2) * DIV_100 >> DIV_100_SHIFT;
+            dst[dstOffset + i] = 0xFF000000 | red << 16 | green << 8 | blue;
+        }
+    }
+}
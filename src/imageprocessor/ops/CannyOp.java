@@ -0,0 +1,193 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.BorderMode;
+import imageprocessor.core.ConvolutionKernel;
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Canny edge detector for gray images. Edges are white (255) on black, one pixel wide.
+//  1. Gaussian blur with the given sigma (a ConvolutionOp)
+//  2. Sobel gradients; the direction is quantized to 0, 45, 90 or 135 degrees with
+//     integer comparisons against tan(22.5) and tan(67.5), without atan
+//  3. Non-maximum suppression: a pixel stays only if its magnitude is a maximum along
+//     its gradient direction
+//  4. Hysteresis: pixels above high are edges, and pixels above low become edges when
+//     connected (8-neighbours) to one. This is a flood fill from every strong pixel
+//     with an explicit stack, so long edges cannot overflow the call stack.
+// Magnitudes are compared squared, so no square root is taken. Steps 1 to 3 run in
+// parallel bands; borders are reflected.
+public final class CannyOp implements ImageOp {
+
+    public static final double DEFAULT_SIGMA = 1.4;
+    public static final int DEFAULT_LOW = 50;
+    public static final int DEFAULT_HIGH = 150;
+
+    private static final byte NONE = 0;
+    private static final byte WEAK = 1;
+    private static final byte STRONG = 2;
+
+    private final double sigma;
+    private final int low;
+    private final int high;
+    private final ConvolutionOp blur;
+
+    public CannyOp() {
+        this(DEFAULT_SIGMA, DEFAULT_LOW, DEFAULT_HIGH);
+    }
+
+    // low and high are thresholds on the Sobel gradient magnitude; sigma 0 skips the blur
+    public CannyOp(double sigma, int low, int high) {
+        if (!(sigma >= 0) || Double.isInfinite(sigma)) {
+            throw new IllegalArgumentException("Sigma must be a non-negative number");
+        }
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException("Thresholds need 0 <= low <= high");
+        }
+        this.sigma = sigma;
+        this.low = low;
+        this.high = high;
+        this.blur = sigma == 0 ? null : new ConvolutionOp(ConvolutionKernel.gaussian(sigma), BorderMode.REFLECT);
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.requireGray(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        TileScheduler scheduler = TileScheduler.shared();
+        byte[] s = Rasters.bytes(in);
+        byte[] blurred = blur == null ? s : Rasters.bytes(blur.filter(in));
+
+        // Squared magnitude and direction (0: horizontal gradient, 1: 45, 2: vertical, 3: 135)
+        int[] magnitude = new int[width * height];
+        byte[] direction = new byte[width * height];
+        scheduler.forEachBand(width, height, (y0, y1) -> gradients(blurred, width, height, magnitude, direction, y0, y1));
+
+        byte[] marks = new byte[width * height];
+        long lowSquared = (long) low * low;
+        long highSquared = (long) high * high;
+        scheduler.forEachBand(width, height, (y0, y1) -> suppress(magnitude, direction, width, height, lowSquared, highSquared, marks, y0, y1));
+
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        hysteresis(marks, width, height, Rasters.bytes(out));
+        return out;
+    }
+
+    // Sobel gradients, separably as in GradientOp: per row, the smoothed and differenced
+    // columns, padded by one reflected column on each side
+    private static void gradients(byte[] s, int width, int height, int[] magnitude, byte[] direction, int y0, int y1) {
+        int[] smooth = new int[width + 2];
+        int[] diff = new int[width + 2];
+        int left = BorderMode.REFLECT.index(-1, width) + 1;
+        int right = BorderMode.REFLECT.index(width, width) + 1;
+        for (int y = y0; y < y1; y++) {
+            int up = BorderMode.REFLECT.index(y - 1, height) * width;
+            int mid = y * width;
+            int down = BorderMode.REFLECT.index(y + 1, height) * width;
+            for (int x = 0; x < width; x++) {
+                int above = s[up + x] & 0xFF;
+                int below = s[down + x] & 0xFF;
+                smooth[x + 1] = above + below + 2 * (s[mid + x] & 0xFF);
+                diff[x + 1] = below - above;
+            }
+            smooth[0] = smooth[left];
+            diff[0] = diff[left];
+            smooth[width + 1] = smooth[right];
+            diff[width + 1] = diff[right];
+            for (int x = 0; x < width; x++) {
+                int gx = smooth[x + 2] - smooth[x];
+                int gy = diff[x] + diff[x + 2] + 2 * diff[x + 1];
+                magnitude[mid + x] = gx * gx + gy * gy;
+                int ax = Math.abs(gx);
+                int ay = Math.abs(gy);
+                // tan(22.5) ~ 0.41421 ~ 53 / 128 and tan(67.5) ~ 2.41421 ~ 309 / 128
+                byte dir;
+                if (ay * 128 <= ax * 53) {
+                    dir = 0;
+                } else if (ay * 128 >= ax * 309) {
+                    dir = 2;
+                } else {
+                    dir = (byte) ((gx ^ gy) >= 0 ? 1 : 3);
+                }
+                direction[mid + x] = dir;
+            }
+        }
+    }
+
+    // Marks the local maxima along the gradient as WEAK or STRONG
+    private static void suppress(int[] magnitude, byte[] direction, int width, int height,
+            long lowSquared, long highSquared, byte[] marks, int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            for (int x = 0, i = y * width; x < width; x++, i++) {
+                int m = magnitude[i];
+                if (m < lowSquared || m == 0) {
+                    marks[i] = NONE;
+                    continue;
+                }
+                int dx;
+                int dy;
+                switch (direction[i]) {
+                    case 0:
+                        dx = 1;
+                        dy = 0;
+                        break;
+                    case 1:
+                        // Both derivatives have the same sign: the gradient points down-right
+                        dx = 1;
+                        dy = 1;
+                        break;
+                    case 2:
+                        dx = 0;
+                        dy = 1;
+                        break;
+                    default:
+                        dx = 1;
+                        dy = -1;
+                        break;
+                }
+                int before = neighbour(magnitude, width, height, x - dx, y - dy);
+                int after = neighbour(magnitude, width, height, x + dx, y + dy);
+                // Strictly greater on one side so that plateaus keep one pixel
+                boolean peak = m > before && m >= after;
+                marks[i] = !peak ? NONE : m >= highSquared ? STRONG : WEAK;
+            }
+        }
+    }
+
+    private static int neighbour(int[] magnitude, int width, int height, int x, int y) {
+        return x < 0 || y < 0 || x >= width || y >= height ? 0 : magnitude[y * width + x];
+    }
+
+    // Grows the STRONG pixels through the WEAK ones and writes 255 for every edge pixel
+    private static void hysteresis(byte[] marks, int width, int height, byte[] out) {
+        int[] stack = new int[1024];
+        int size = 0;
+        for (int start = 0; start < marks.length; start++) {
+            if (marks[start] != STRONG || out[start] != 0) {
+                continue;
+            }
+            out[start] = (byte) 255;
+            stack[size++] = start;
+            while (size > 0) {
+                int i = stack[--size];
+                int x = i % width;
+                int y = i / width;
+                for (int ny = Math.max(0, y - 1); ny <= Math.min(height - 1, y + 1); ny++) {
+                    for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                        int j = ny * width + nx;
+                        if (marks[j] != NONE && out[j] == 0) {
+                            out[j] = (byte) 255;
+                            if (size == stack.length) {
+                                stack = Arrays.copyOf(stack, size * 2);
+                            }
+                            stack[size++] = j;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
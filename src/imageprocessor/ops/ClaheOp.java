@@ -0,0 +1,185 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Contrast limited adaptive histogram equalization for gray images.
+//
+// The image is split into a grid of tiles and each tile gets its own equalization
+// table, from a histogram whose bins are clipped at clipLimit times the average bin
+// (the clipped counts are spread over all the bins), which keeps flat areas such as
+// paper from turning into amplified noise. Each pixel then blends the tables of the
+// four tiles whose centers surround it, bilinearly, so no tile edges show. Pixels
+// outside the outermost centers use the nearest tables only.
+//
+// The tile tables are built in parallel, and the tile and weight of every column and
+// row are computed once. Each row first blends the tables above and below it, one
+// per tile column, so a pixel costs two lookups and two multiplies.
+public final class ClaheOp implements ImageOp {
+
+    public static final int DEFAULT_TILES = 8;
+    public static final double DEFAULT_CLIP_LIMIT = 2.0;
+
+    // Interpolation weights are in 1/256
+    private static final int WEIGHT_BITS = 8;
+    private static final int ONE = 1 << WEIGHT_BITS;
+
+    private final int tilesX;
+    private final int tilesY;
+    private final double clipLimit;
+
+    public ClaheOp() {
+        this(DEFAULT_TILES, DEFAULT_TILES, DEFAULT_CLIP_LIMIT);
+    }
+
+    // clipLimit is a multiple of the average bin count of a tile; values <= 1 leave
+    // the tiles unchanged and larger values approach plain per-tile equalization
+    public ClaheOp(int tilesX, int tilesY, double clipLimit) {
+        if (tilesX < 1 || tilesY < 1) {
+            throw new IllegalArgumentException("There must be at least one tile in each direction");
+        }
+        if (!(clipLimit > 0)) {
+            throw new IllegalArgumentException("Clip limit must be positive");
+        }
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        this.clipLimit = clipLimit;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.requireGray(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        int nx = Math.min(tilesX, width);
+        int ny = Math.min(tilesY, height);
+        byte[] s = Rasters.bytes(in);
+
+        // Tile t covers [bounds[t], bounds[t + 1]) along each axis
+        int[] xBounds = bounds(width, nx);
+        int[] yBounds = bounds(height, ny);
+        byte[][] tables = new byte[nx * ny][];
+        TileScheduler.shared().forEachBand(width, ny, 1, (t0, t1) -> {
+            for (int ty = t0; ty < t1; ty++) {
+                for (int tx = 0; tx < nx; tx++) {
+                    tables[ty * nx + tx] = tileTable(s, width, xBounds[tx], xBounds[tx + 1], yBounds[ty], yBounds[ty + 1]);
+                }
+            }
+        });
+
+        // For every column, the tiles left and right of it and the weight of the right one
+        int[] left = new int[width];
+        int[] right = new int[width];
+        int[] xWeight = new int[width];
+        neighbours(xBounds, width, nx, left, right, xWeight);
+        int[] top = new int[height];
+        int[] bottom = new int[height];
+        int[] yWeight = new int[height];
+        neighbours(yBounds, height, ny, top, bottom, yWeight);
+
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] d = Rasters.bytes(out);
+        TileScheduler.shared().forEachBand(width, height, (y0, y1) -> {
+            // The tables of the row, already blended vertically: one per tile column
+            int[] mixed = new int[nx * Histogram.BINS];
+            for (int y = y0; y < y1; y++) {
+                int wy = yWeight[y];
+                for (int tx = 0; tx < nx; tx++) {
+                    byte[] upper = tables[top[y] * nx + tx];
+                    byte[] lower = tables[bottom[y] * nx + tx];
+                    for (int v = 0, m = tx * Histogram.BINS; v < Histogram.BINS; v++, m++) {
+                        mixed[m] = (upper[v] & 0xFF) * (ONE - wy) + (lower[v] & 0xFF) * wy;
+                    }
+                }
+                // Columns come in runs between two tile centers, which share both tables
+                for (int x = 0, row = y * width; x < width; ) {
+                    int first = left[x] * Histogram.BINS;
+                    int second = right[x] * Histogram.BINS;
+                    int end = x;
+                    while (end < width && left[end] == left[x] && right[end] == right[x]) {
+                        end++;
+                    }
+                    for (; x < end; x++) {
+                        int v = s[row + x] & 0xFF;
+                        int wx = xWeight[x];
+                        int value = mixed[first + v] * (ONE - wx) + mixed[second + v] * wx;
+                        d[row + x] = (byte) ((value + (1 << (2 * WEIGHT_BITS - 1))) >> (2 * WEIGHT_BITS));
+                    }
+                }
+            }
+        });
+        return out;
+    }
+
+    private static int[] bounds(int size, int tiles) {
+        int[] bounds = new int[tiles + 1];
+        for (int t = 0; t <= tiles; t++) {
+            bounds[t] = (int) ((long) size * t / tiles);
+        }
+        return bounds;
+    }
+
+    // Fills in, for each position along an axis, the tiles whose centers are on either
+    // side of it and the weight of the second one
+    private static void neighbours(int[] bounds, int size, int tiles, int[] first, int[] second, int[] weight) {
+        for (int p = 0, t = 0; p < size; p++) {
+            double position = p + 0.5;
+            while (t < tiles - 1 && center(bounds, t + 1) <= position) {
+                t++;
+            }
+            double c0 = center(bounds, t);
+            if (position <= c0 || t == tiles - 1) {
+                // Before the first center or after the last one
+                first[p] = t;
+                second[p] = t;
+                weight[p] = 0;
+            } else {
+                first[p] = t;
+                second[p] = t + 1;
+                weight[p] = (int) Math.round((position - c0) / (center(bounds, t + 1) - c0) * ONE);
+            }
+        }
+    }
+
+    private static double center(int[] bounds, int t) {
+        return (bounds[t] + bounds[t + 1]) / 2.0;
+    }
+
+    // Clipped equalization table of one tile
+    private byte[] tileTable(byte[] s, int width, int x0, int x1, int y0, int y1) {
+        int[] sets = new int[4 * Histogram.BINS];
+        for (int y = y0; y < y1; y++) {
+            Histogram.countGray(s, y * width + x0, y * width + x1, sets);
+        }
+        int[] counts = Histogram.merge(sets);
+        int area = (x1 - x0) * (y1 - y0);
+        int limit = Math.max(1, (int) (clipLimit * area / Histogram.BINS));
+        int excess = 0;
+        for (int v = 0; v < Histogram.BINS; v++) {
+            if (counts[v] > limit) {
+                excess += counts[v] - limit;
+                counts[v] = limit;
+            }
+        }
+        // Spread the clipped counts evenly, the remainder one each over evenly spaced bins
+        int share = excess / Histogram.BINS;
+        int remainder = excess % Histogram.BINS;
+        for (int v = 0; v < Histogram.BINS; v++) {
+            counts[v] += share;
+        }
+        if (remainder > 0) {
+            for (int v = 0, step = Histogram.BINS / remainder; remainder > 0 && v < Histogram.BINS; v += Math.max(1, step), remainder--) {
+                counts[v]++;
+            }
+        }
+        byte[] table = new byte[Histogram.BINS];
+        long sum = 0;
+        for (int v = 0; v < Histogram.BINS; v++) {
+            sum += counts[v];
+            table[v] = (byte) ((sum * 255 + area / 2) / area);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,297 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.BorderMode;
+import imageprocessor.core.ConvolutionKernel;
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Finds coins on a plain background and values them by size, as the Python version
+// does with OpenCV:
+//  1. 5x5 Gaussian blur with sigma 5, then Canny with thresholds 50 and 100 (60 and
+//     120 in OpenCV, which measures the gradient differently)
+//  2. Two 3x3 dilations and a 3x3 closing, which join the edges of each coin into a ring
+//  3. The holes of the rings are filled: they are the background components (four
+//     neighbours) that do not touch the edge of the image
+//  4. Every component (eight neighbours) with a bounding box wider and taller than the
+//     smallest class is a coin, of the first class whose size both sides exceed
+// Step 3 stands for the external contours of the Python version: a component then
+// has the bounding box of its outer contour, and the edges inside a coin are part of it.
+//
+// As an op, the result is a copy of the image with the coins outlined and labelled and
+// the total value written in the corner.
+public final class CoinCounter implements ImageOp {
+
+    public static final class CoinClass {
+        private final int minSize;
+        private final int cents;
+        private final String label;
+        private final Color color;
+
+        // minSize is in pixels, exceeded by both sides of the bounding box
+        public CoinClass(int minSize, int cents, String label, Color color) {
+            if (minSize < 0 || cents < 0) {
+                throw new IllegalArgumentException("Coin size and value must not be negative");
+            }
+            this.minSize = minSize;
+            this.cents = cents;
+            this.label = label;
+            this.color = color;
+        }
+
+        public int getMinSize() {
+            return minSize;
+        }
+
+        public int getCents() {
+            return cents;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public Color getColor() {
+            return color;
+        }
+    }
+
+    public static final class Coin {
+        private final ConnectedComponents.Component component;
+        private final CoinClass coinClass;
+
+        Coin(ConnectedComponents.Component component, CoinClass coinClass) {
+            this.component = component;
+            this.coinClass = coinClass;
+        }
+
+        public ConnectedComponents.Component getComponent() {
+            return component;
+        }
+
+        public CoinClass getCoinClass() {
+            return coinClass;
+        }
+    }
+
+    // The classes of the Python version, tried in this order, for the images/moedas* photos
+    public static final List<CoinClass> REAL = Collections.unmodifiableList(Arrays.asList(
+            new CoinClass(300, 100, "1 real", Color.YELLOW),
+            new CoinClass(280, 25, "25 centavos", Color.RED),
+            new CoinClass(250, 50, "50 centavos", Color.GREEN),
+            new CoinClass(220, 10, "10 centavos", Color.WHITE),
+            new CoinClass(200, 5, "5 centavos", Color.CYAN)));
+
+    // For coins no class fits, when the classes are not in decreasing size
+    public static final CoinClass UNKNOWN = new CoinClass(0, 0, "Desconhecida", Color.GRAY);
+
+    private static final int BLUR_SIZE = 5;
+    private static final double BLUR_SIGMA = 5;
+    // OpenCV's 60 and 120 are on |gx| + |gy|; CannyOp compares sqrt(gx^2 + gy^2), which
+    // is smaller by a factor between 1 and 1.41
+    private static final int CANNY_LOW = 50;
+    private static final int CANNY_HIGH = 100;
+
+    private final List<CoinClass> classes;
+    private final int minSize;
+    private final ConvolutionOp blur;
+    private final CannyOp edges = new CannyOp(0, CANNY_LOW, CANNY_HIGH);
+
+    public CoinCounter() {
+        this(REAL);
+    }
+
+    public CoinCounter(List<CoinClass> classes) {
+        if (classes.isEmpty()) {
+            throw new IllegalArgumentException("At least one coin class is needed");
+        }
+        this.classes = Collections.unmodifiableList(new ArrayList<>(classes));
+        int smallest = Integer.MAX_VALUE;
+        for (CoinClass c : classes) {
+            smallest = Math.min(smallest, c.getMinSize());
+        }
+        this.minSize = smallest;
+        double[] g = new double[BLUR_SIZE];
+        double total = 0;
+        for (int k = 0; k < BLUR_SIZE; k++) {
+            int d = k - BLUR_SIZE / 2;
+            g[k] = Math.exp(-d * d / (2 * BLUR_SIGMA * BLUR_SIGMA));
+            total += g[k];
+        }
+        for (int k = 0; k < BLUR_SIZE; k++) {
+            g[k] /= total;
+        }
+        this.blur = new ConvolutionOp(ConvolutionKernel.separable(g, g), BorderMode.REFLECT);
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        return annotate(src, detect(src));
+    }
+
+    // The coins of the image, in the raster order of their top row
+    public List<Coin> detect(BufferedImage image) {
+        BufferedImage packed = Rasters.packed(image);
+        BufferedImage gray = Rasters.isGray(packed) ? packed : new GrayscaleOp().filter(packed);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] mask = Rasters.bytes(edges.filter(blur.filter(gray)));
+        // Two 3x3 dilations and the dilation of the closing make one 7x7 dilation
+        mask = morphology(mask, width, height, 3, true);
+        mask = morphology(mask, width, height, 1, false);
+        fillHoles(mask, width, height);
+
+        List<Coin> coins = new ArrayList<>();
+        for (ConnectedComponents.Component c : ConnectedComponents.label(mask, width, height,
+                ConnectedComponents.Connectivity.EIGHT).getComponents()) {
+            if (c.getWidth() > minSize && c.getHeight() > minSize) {
+                coins.add(new Coin(c, classify(c.getWidth(), c.getHeight())));
+            }
+        }
+        return coins;
+    }
+
+    // The first class whose size both sides exceed
+    public CoinClass classify(int width, int height) {
+        for (CoinClass c : classes) {
+            if (width > c.getMinSize() && height > c.getMinSize()) {
+                return c;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    public static int totalCents(List<Coin> coins) {
+        int total = 0;
+        for (Coin coin : coins) {
+            total += coin.getCoinClass().getCents();
+        }
+        return total;
+    }
+
+    // "R$1.65"
+    public static String formatCents(int cents) {
+        return String.format(Locale.ROOT, "R$%d.%02d", cents / 100, cents % 100);
+    }
+
+    // An RGB copy of the image with a box and circle around every coin, its class in
+    // the middle and the total in the top left corner
+    public BufferedImage annotate(BufferedImage image, List<Coin> coins) {
+        BufferedImage out = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = out.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setStroke(new BasicStroke(2));
+            g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 20));
+            FontMetrics metrics = g.getFontMetrics();
+            for (Coin coin : coins) {
+                ConnectedComponents.Component c = coin.getComponent();
+                int centerX = c.getMinX() + c.getWidth() / 2;
+                int centerY = c.getMinY() + c.getHeight() / 2;
+                int radius = c.getWidth() / 2;
+                g.setColor(Color.GREEN);
+                g.drawRect(c.getMinX(), c.getMinY(), c.getWidth(), c.getHeight());
+                g.drawOval(centerX - radius, centerY - radius, 2 * radius, 2 * radius);
+                if (coin.getCoinClass().getCents() > 0) {
+                    label(g, metrics, coin.getCoinClass().getLabel(), centerX, centerY, coin.getCoinClass().getColor());
+                }
+            }
+            g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 36));
+            metrics = g.getFontMetrics();
+            String total = "Total = " + formatCents(totalCents(coins));
+            int x = 30;
+            int y = 50;
+            g.setColor(Color.BLACK);
+            g.fillRect(x - 10, y - metrics.getAscent() - 10, metrics.stringWidth(total) + 20, metrics.getAscent() + 20);
+            g.setColor(Color.WHITE);
+            g.drawRect(x - 10, y - metrics.getAscent() - 10, metrics.stringWidth(total) + 20, metrics.getAscent() + 20);
+            g.drawString(total, x, y);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    // Text centered on x, y over a black box
+    private static void label(Graphics2D g, FontMetrics metrics, String text, int x, int y, Color color) {
+        int w = metrics.stringWidth(text);
+        int h = metrics.getAscent();
+        g.setColor(Color.BLACK);
+        g.fillRect(x - w / 2 - 6, y - h / 2 - 6, w + 12, h + 12);
+        g.setColor(color);
+        g.drawString(text, x - w / 2, y + h / 2 - 2);
+    }
+
+    // Binary dilation (any) or erosion (all) over (2r+1) x (2r+1) squares, as a pass
+    // along the rows and one along the columns. Pixels outside the image do not count.
+    private static byte[] morphology(byte[] s, int width, int height, int radius, boolean dilate) {
+        byte[] rows = new byte[s.length];
+        byte[] out = new byte[s.length];
+        TileScheduler scheduler = TileScheduler.shared();
+        scheduler.forEachBand(width, height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int row = y * width;
+                for (int x = 0; x < width; x++) {
+                    rows[row + x] = square(s, row, 1, Math.max(0, x - radius), Math.min(width - 1, x + radius), dilate);
+                }
+            }
+        });
+        scheduler.forEachBand(width, height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int first = Math.max(0, y - radius);
+                int last = Math.min(height - 1, y + radius);
+                for (int x = 0; x < width; x++) {
+                    out[y * width + x] = square(rows, x, width, first, last, dilate);
+                }
+            }
+        });
+        return out;
+    }
+
+    // 255 if any (dilate) or all (erode) of s[base + k * step], k = first..last, are set
+    private static byte square(byte[] s, int base, int step, int first, int last, boolean dilate) {
+        for (int k = first; k <= last; k++) {
+            if ((s[base + k * step] != 0) == dilate) {
+                return (byte) (dilate ? 255 : 0);
+            }
+        }
+        return (byte) (dilate ? 0 : 255);
+    }
+
+    // Sets the background regions enclosed by the mask
+    private static void fillHoles(byte[] mask, int width, int height) {
+        byte[] background = new byte[mask.length];
+        for (int i = 0; i < mask.length; i++) {
+            background[i] = (byte) (mask[i] == 0 ? 255 : 0);
+        }
+        ConnectedComponents regions = ConnectedComponents.label(background, width, height,
+                ConnectedComponents.Connectivity.FOUR);
+        boolean[] hole = new boolean[regions.getCount() + 1];
+        for (ConnectedComponents.Component c : regions.getComponents()) {
+            hole[c.getLabel()] = !c.touchesBorder(width, height);
+        }
+        TileScheduler.shared().forEachBand(width, height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                for (int x = 0; x < width; x++) {
+                    if (hole[regions.getLabel(x, y)]) {
+                        mask[y * width + x] = (byte) 255;
+                    }
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,270 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.PointOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Keeps the pixels within threshold of any of the target colors and paints the rest
+// black. The distance is measured with a Metric; the original test is BOX with a
+// single target, which compares each channel against the range directly.
+//
+// For the other metrics and for several targets, matching is precomputed into a
+// 64 x 64 x 64 table over the RGB cube (the top 6 bits of each channel), so that a
+// pixel is usually decided by one lookup. The table is built by testing the corners
+// of every cell: cells whose corners all agree are in or out, and the cells on the
+// boundary, next to it and around each target (so that small thresholds are not lost
+// between corners) are marked mixed and test their pixels exactly.
+public final class ColorSegmentationOp implements PointOp {
+
+    public static final int DEFAULT_THRESHOLD = 50;
+
+    // How the distance between a pixel and a target color is measured. The threshold
+    // is in the units of the metric.
+    public enum Metric {
+        // Largest difference of any channel: a box of +-threshold around the target
+        BOX,
+        // Euclidean distance in RGB
+        RGB,
+        // Euclidean distance in the HSV cone, with value scaled to 0..255; hue counts
+        // less for dark and unsaturated colors, where it is unstable
+        HSV,
+        // CIE76 delta E: Euclidean distance in CIE L*a*b* (sRGB, D65), close to how
+        // different the colors look
+        LAB
+    }
+
+    private static final int CELL_BITS = 6;
+    private static final int CELLS = 1 << CELL_BITS;
+    private static final int CELL_SIZE = 256 / CELLS;
+    private static final byte OUT = 0;
+    private static final byte IN = 1;
+    private static final byte MIXED = 2;
+    // sRGB channel value to linear light, for LAB
+    private static final double[] LINEAR = linearTable();
+
+    private final Metric metric;
+    private final double threshold;
+    private final int[] targets;
+    // Targets converted to the space of the metric
+    private final double[][] points;
+    // Membership of each cell; null for a single BOX target
+    private final byte[] cells;
+
+    public ColorSegmentationOp(int targetRed, int targetGreen, int targetBlue) {
+        this(targetRed, targetGreen, targetBlue, DEFAULT_THRESHOLD);
+    }
+
+    public ColorSegmentationOp(int targetRed, int targetGreen, int targetBlue, int threshold) {
+        this(Metric.BOX, threshold, targetRed << 16 | targetGreen << 8 | targetBlue);
+    }
+
+    // targets are 0xRRGGBB colors
+    public ColorSegmentationOp(Metric metric, double threshold, int... targets) {
+        if (targets.length == 0) {
+            throw new IllegalArgumentException("At least one target color is required");
+        }
+        if (Double.isNaN(threshold)) {
+            throw new IllegalArgumentException("Threshold must be a number");
+        }
+        this.metric = metric;
+        this.threshold = threshold;
+        this.targets = targets.clone();
+        this.points = new double[targets.length][];
+        for (int i = 0; i < targets.length; i++) {
+            int t = targets[i];
+            points[i] = toSpace(t >> 16 & 0xFF, t >> 8 & 0xFF, t & 0xFF, new double[3]);
+        }
+        this.cells = metric == Metric.BOX && targets.length == 1 ? null : buildCells();
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.toInt(src);
+        BufferedImage out = new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_INT_RGB);
+        int[] s = Rasters.ints(in);
+        int[] d = Rasters.ints(out);
+        int width = in.getWidth();
+        TileScheduler.shared().forEachBand(width, in.getHeight(),
+                (y0, y1) -> apply(s, y0 * width, d, y0 * width, (y1 - y0) * width, y0 * width));
+        return out;
+    }
+
+    @Override
+    public int getOutputType(int inputType) {
+        return BufferedImage.TYPE_INT_RGB;
+    }
+
+    @Override
+    public void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int index) {
+        if (cells != null) {
+            double[] point = new double[3];
+            for (int i = 0; i < length; i++) {
+                int p = src[srcOffset + i];
+                byte state = cells[cellOf(p)];
+                boolean keep = state == IN || state == MIXED && matches(p >> 16 & 0xFF, p >> 8 & 0xFF, p & 0xFF, point);
+                dst[dstOffset + i] = keep ? 0xFF000000 | p : 0xFF000000;
+            }
+            return;
+        }
+        int target = targets[0];
+        int range = (int) Math.max(-1, Math.min(255, Math.floor(threshold)));
+        int minRed = (target >> 16 & 0xFF) - range;
+        int maxRed = (target >> 16 & 0xFF) + range;
+        int minGreen = (target >> 8 & 0xFF) - range;
+        int maxGreen = (target >> 8 & 0xFF) + range;
+        int minBlue = (target & 0xFF) - range;
+        int maxBlue = (target & 0xFF) + range;
+        // Branch-free so that the JIT can vectorize it: a channel is outside its range when
+        // c - min or max - c is negative, and or-ing them all keeps any sign bit
+        for (int i = 0; i < length; i++) {
+            int p = src[srcOffset + i];
+            int red = p >> 16 & 0xFF;
+            int green = p >> 8 & 0xFF;
+            int blue = p & 0xFF;
+            int outside = ((red - minRed) | (maxRed - red)
+                    | (green - minGreen) | (maxGreen - green)
+                    | (blue - minBlue) | (maxBlue - blue)) >> 31;
+            dst[dstOffset + i] = 0xFF000000 | p & ~outside;
+        }
+    }
+
+    // Whether the color is within threshold of any target; point is scratch space
+    private boolean matches(int red, int green, int blue, double[] point) {
+        toSpace(red, green, blue, point);
+        for (double[] target : points) {
+            double d0 = point[0] - target[0];
+            double d1 = point[1] - target[1];
+            double d2 = point[2] - target[2];
+            if (metric == Metric.BOX) {
+                if (Math.max(Math.abs(d0), Math.max(Math.abs(d1), Math.abs(d2))) <= threshold) {
+                    return true;
+                }
+            } else if (d0 * d0 + d1 * d1 + d2 * d2 <= threshold * threshold && threshold >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private byte[] buildCells() {
+        // Membership at the cell corners: channel values 0, 4, 8, ..., 252 and 255
+        int n = CELLS + 1;
+        boolean[] corners = new boolean[n * n * n];
+        double[] point = new double[3];
+        for (int r = 0; r < n; r++) {
+            for (int g = 0; g < n; g++) {
+                for (int b = 0; b < n; b++) {
+                    corners[(r * n + g) * n + b] = matches(corner(r), corner(g), corner(b), point);
+                }
+            }
+        }
+        byte[] table = new byte[CELLS * CELLS * CELLS];
+        for (int r = 0; r < CELLS; r++) {
+            for (int g = 0; g < CELLS; g++) {
+                for (int b = 0; b < CELLS; b++) {
+                    int count = 0;
+                    for (int k = 0; k < 8; k++) {
+                        if (corners[((r + (k >> 2)) * n + g + (k >> 1 & 1)) * n + b + (k & 1)]) {
+                            count++;
+                        }
+                    }
+                    table[(r * CELLS + g) * CELLS + b] = count == 8 ? IN : count == 0 ? OUT : MIXED;
+                }
+            }
+        }
+        // The boundary can bulge into a cell without reaching its corners, so the cells
+        // next to mixed ones (and to the targets) are tested exactly too
+        byte[] grown = table.clone();
+        for (int r = 0; r < CELLS; r++) {
+            for (int g = 0; g < CELLS; g++) {
+                for (int b = 0; b < CELLS; b++) {
+                    if (table[(r * CELLS + g) * CELLS + b] == MIXED) {
+                        markAround(grown, r, g, b);
+                    }
+                }
+            }
+        }
+        for (int target : targets) {
+            markAround(grown, (target >> 16 & 0xFF) / CELL_SIZE, (target >> 8 & 0xFF) / CELL_SIZE, (target & 0xFF) / CELL_SIZE);
+        }
+        return grown;
+    }
+
+    // Marks the cell and its 26 neighbours mixed
+    private static void markAround(byte[] table, int r, int g, int b) {
+        for (int i = Math.max(0, r - 1); i <= Math.min(CELLS - 1, r + 1); i++) {
+            for (int j = Math.max(0, g - 1); j <= Math.min(CELLS - 1, g + 1); j++) {
+                for (int k = Math.max(0, b - 1); k <= Math.min(CELLS - 1, b + 1); k++) {
+                    table[(i * CELLS + j) * CELLS + k] = MIXED;
+                }
+            }
+        }
+    }
+
+    // Index of the cell holding an RGB pixel: the top CELL_BITS of each channel
+    private static int cellOf(int p) {
+        int shift = 8 - CELL_BITS;
+        return ((p >> 16 & 0xFF) >> shift) << 2 * CELL_BITS | ((p >> 8 & 0xFF) >> shift) << CELL_BITS | (p & 0xFF) >> shift;
+    }
+
+    private static int corner(int i) {
+        return Math.min(255, i * CELL_SIZE);
+    }
+
+    // The color in the space of the metric, written to point
+    private double[] toSpace(int red, int green, int blue, double[] point) {
+        switch (metric) {
+            case HSV: {
+                int max = Math.max(red, Math.max(green, blue));
+                int chroma = max - Math.min(red, Math.min(green, blue));
+                double hue = 0;
+                if (chroma > 0) {
+                    if (max == red) {
+                        hue = (double) (green - blue) / chroma;
+                    } else if (max == green) {
+                        hue = 2 + (double) (blue - red) / chroma;
+                    } else {
+                        hue = 4 + (double) (red - green) / chroma;
+                    }
+                }
+                // Saturation * value is chroma / 255, so the cone radius in 0..255 units is chroma
+                double angle = hue * Math.PI / 3;
+                point[0] = chroma * Math.cos(angle);
+                point[1] = chroma * Math.sin(angle);
+                point[2] = max;
+                return point;
+            }
+            case LAB: {
+                double r = LINEAR[red];
+                double g = LINEAR[green];
+                double b = LINEAR[blue];
+                double fx = labF((0.4124564 * r + 0.3575761 * g + 0.1804375 * b) / 0.95047);
+                double fy = labF(0.2126729 * r + 0.7151522 * g + 0.0721750 * b);
+                double fz = labF((0.0193339 * r + 0.1191920 * g + 0.9503041 * b) / 1.08883);
+                point[0] = 116 * fy - 16;
+                point[1] = 500 * (fx - fy);
+                point[2] = 200 * (fy - fz);
+                return point;
+            }
+            default:
+                point[0] = red;
+                point[1] = green;
+                point[2] = blue;
+                return point;
+        }
+    }
+
+    private static double labF(double t) {
+        return t > 216.0 / 24389 ? Math.cbrt(t) : (24389.0 / 27 * t + 16) / 116;
+    }
+
+    private static double[] linearTable() {
+        double[] table = new double[256];
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            table[i] = c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+        return table;
+    }
+}
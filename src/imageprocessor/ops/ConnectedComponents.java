@@ -0,0 +1,327 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Connected components of the nonzero pixels of a gray image (a mask), numbered
+// 1..count in the raster order of their first pixel, with the area, bounding box and
+// centroid of each. Background pixels have label 0.
+//
+// Two passes over a union-find forest kept in one int array, parent[i] being a pixel
+// index (or -1 for background):
+//  1. Bands of rows are scanned in parallel. Each foreground pixel joins the trees of
+//     its already scanned neighbours in the same band. A root is always the smallest
+//     index in its tree, so it is the first pixel of the component.
+//  2. The first row of every band is joined with the last row of the band above,
+//     one band boundary after the other.
+// Then the roots get numbers in raster order, and every pixel takes the number of its
+// root, again in parallel bands. Finds halve the path as they go (path compression in
+// one pass); the writes of concurrent finds only ever point a pixel to another of its
+// ancestors, so they can race.
+public final class ConnectedComponents {
+
+    public enum Connectivity {
+        // Left, right, up and down
+        FOUR,
+        // Also the diagonals
+        EIGHT
+    }
+
+    public static final class Component {
+        private final int label;
+        private final int area;
+        private final int minX;
+        private final int minY;
+        private final int maxX;
+        private final int maxY;
+        private final double centroidX;
+        private final double centroidY;
+
+        Component(int label, int area, int minX, int minY, int maxX, int maxY, double centroidX, double centroidY) {
+            this.label = label;
+            this.area = area;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.centroidX = centroidX;
+            this.centroidY = centroidY;
+        }
+
+        public int getLabel() {
+            return label;
+        }
+
+        // Number of pixels
+        public int getArea() {
+            return area;
+        }
+
+        // Bounding box, inclusive
+        public int getMinX() {
+            return minX;
+        }
+
+        public int getMinY() {
+            return minY;
+        }
+
+        public int getMaxX() {
+            return maxX;
+        }
+
+        public int getMaxY() {
+            return maxY;
+        }
+
+        public int getWidth() {
+            return maxX - minX + 1;
+        }
+
+        public int getHeight() {
+            return maxY - minY + 1;
+        }
+
+        // Mean position of the pixels
+        public double getCentroidX() {
+            return centroidX;
+        }
+
+        public double getCentroidY() {
+            return centroidY;
+        }
+
+        // Whether the component has a pixel on the edge of the image
+        public boolean touchesBorder(int width, int height) {
+            return minX == 0 || minY == 0 || maxX == width - 1 || maxY == height - 1;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int[] labels;
+    private final List<Component> components;
+
+    private ConnectedComponents(int width, int height, int[] labels, List<Component> components) {
+        this.width = width;
+        this.height = height;
+        this.labels = labels;
+        this.components = components;
+    }
+
+    public static ConnectedComponents label(BufferedImage mask) {
+        return label(mask, Connectivity.EIGHT);
+    }
+
+    public static ConnectedComponents label(BufferedImage mask, Connectivity connectivity) {
+        BufferedImage in = Rasters.requireGray(mask);
+        return label(Rasters.bytes(in), in.getWidth(), in.getHeight(), connectivity);
+    }
+
+    // Components of the nonzero values of a width * height mask, row by row
+    static ConnectedComponents label(byte[] mask, int width, int height, Connectivity connectivity) {
+        boolean eight = connectivity == Connectivity.EIGHT;
+        int[] parent = new int[width * height];
+        boolean[] bandStarts = new boolean[height];
+        TileScheduler scheduler = TileScheduler.shared();
+        scheduler.forEachBand(width, height, (y0, y1) -> {
+            bandStarts[y0] = true;
+            scanBand(mask, parent, width, y0, y1, eight);
+        });
+        for (int y = 1; y < height; y++) {
+            if (bandStarts[y]) {
+                mergeRows(mask, parent, width, y, eight);
+            }
+        }
+
+        // Roots per row, then the number of the first root of each row
+        int[] firstNumber = new int[height + 1];
+        scheduler.forEachBand(width, height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int roots = 0;
+                for (int i = y * width, end = i + width; i < end; i++) {
+                    if (parent[i] == i) {
+                        roots++;
+                    }
+                }
+                firstNumber[y + 1] = roots;
+            }
+        });
+        for (int y = 0; y < height; y++) {
+            firstNumber[y + 1] += firstNumber[y];
+        }
+        int count = firstNumber[height];
+
+        int[] labels = new int[width * height];
+        scheduler.forEachBand(width, height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int number = firstNumber[y];
+                for (int i = y * width, end = i + width; i < end; i++) {
+                    if (parent[i] == i) {
+                        labels[i] = ++number;
+                    }
+                }
+            }
+        });
+        // Roots are numbered before this pass reads them
+        scheduler.forEachBand(width, height, (y0, y1) -> {
+            for (int i = y0 * width, end = y1 * width; i < end; i++) {
+                int p = parent[i];
+                if (p >= 0 && p != i) {
+                    labels[i] = labels[find(parent, p)];
+                }
+            }
+        });
+        return new ConnectedComponents(width, height, labels, measure(labels, width, height, count));
+    }
+
+    // First pass over rows y0..y1: only neighbours inside the band are joined
+    private static void scanBand(byte[] mask, int[] parent, int width, int y0, int y1, boolean eight) {
+        for (int y = y0; y < y1; y++) {
+            boolean hasUp = y > y0;
+            for (int x = 0, i = y * width; x < width; x++, i++) {
+                if (mask[i] == 0) {
+                    parent[i] = -1;
+                    continue;
+                }
+                parent[i] = i;
+                boolean left = x > 0 && mask[i - 1] != 0;
+                if (hasUp && mask[i - width] != 0) {
+                    // With eight neighbours, left and the upper diagonals touch up, so
+                    // they are in its tree already
+                    union(parent, i - width, i);
+                    if (!eight && left) {
+                        union(parent, i - 1, i);
+                    }
+                    continue;
+                }
+                if (left) {
+                    union(parent, i - 1, i);
+                } else if (eight && hasUp && x > 0 && mask[i - width - 1] != 0) {
+                    union(parent, i - width - 1, i);
+                }
+                if (eight && hasUp && x < width - 1 && mask[i - width + 1] != 0) {
+                    union(parent, i - width + 1, i);
+                }
+            }
+        }
+    }
+
+    // Joins row y with row y - 1, which was scanned in another band
+    private static void mergeRows(byte[] mask, int[] parent, int width, int y, boolean eight) {
+        for (int x = 0, i = y * width; x < width; x++, i++) {
+            if (mask[i] == 0) {
+                continue;
+            }
+            int up = i - width;
+            if (mask[up] != 0) {
+                union(parent, up, i);
+                continue;
+            }
+            if (eight && x > 0 && mask[up - 1] != 0) {
+                union(parent, up - 1, i);
+            }
+            if (eight && x < width - 1 && mask[up + 1] != 0) {
+                union(parent, up + 1, i);
+            }
+        }
+    }
+
+    // The smaller root becomes the root of both trees
+    private static void union(int[] parent, int a, int b) {
+        int ra = find(parent, a);
+        int rb = find(parent, b);
+        if (ra < rb) {
+            parent[rb] = ra;
+        } else if (rb < ra) {
+            parent[ra] = rb;
+        }
+    }
+
+    // The root of i; every pixel on the way is pointed to its grandparent
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            int grandparent = parent[parent[i]];
+            parent[i] = grandparent;
+            i = grandparent;
+        }
+        return i;
+    }
+
+    // Area, bounding box and centroid of every label, in one pass
+    private static List<Component> measure(int[] labels, int width, int height, int count) {
+        int[] area = new int[count + 1];
+        int[] minX = new int[count + 1];
+        int[] minY = new int[count + 1];
+        int[] maxX = new int[count + 1];
+        int[] maxY = new int[count + 1];
+        long[] sumX = new long[count + 1];
+        long[] sumY = new long[count + 1];
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                int label = labels[i];
+                if (label == 0) {
+                    continue;
+                }
+                if (area[label]++ == 0) {
+                    // The first pixel of a component is its root, at the top of the box
+                    minX[label] = x;
+                    minY[label] = y;
+                    maxX[label] = x;
+                } else {
+                    minX[label] = Math.min(minX[label], x);
+                    maxX[label] = Math.max(maxX[label], x);
+                }
+                maxY[label] = y;
+                sumX[label] += x;
+                sumY[label] += y;
+            }
+        }
+        List<Component> components = new ArrayList<>(count);
+        for (int label = 1; label <= count; label++) {
+            components.add(new Component(label, area[label], minX[label], minY[label], maxX[label], maxY[label],
+                    (double) sumX[label] / area[label], (double) sumY[label] / area[label]));
+        }
+        return Collections.unmodifiableList(components);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Number of components, not counting the background
+    public int getCount() {
+        return components.size();
+    }
+
+    // Label of the pixel at x, y: 0 for background, otherwise 1..count
+    public int getLabel(int x, int y) {
+        return labels[y * width + x];
+    }
+
+    // A copy of all the labels, row by row
+    public int[] getLabels() {
+        return labels.clone();
+    }
+
+    // Component with the given label, 1..count
+    public Component getComponent(int label) {
+        if (label < 1 || label > components.size()) {
+            throw new IllegalArgumentException("No component with label " + label);
+        }
+        return components.get(label - 1);
+    }
+
+    // All components in label order
+    public List<Component> getComponents() {
+        return components;
+    }
+}
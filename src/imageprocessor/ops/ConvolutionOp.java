@@ -0,0 +1,355 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.BandOp;
+import imageprocessor.core.BorderMode;
+import imageprocessor.core.ConvolutionKernel;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Convolution of a gray image with any ConvolutionKernel; results are rounded and
+// clamped to 0..255.
+//
+// Separable kernels run as a vertical pass per row into an int buffer, then a horizontal
+// pass over that buffer. Other kernels run tap by tap over padded copies of the rows
+// they need, kept in a ring so that each source row is padded once per band. Either way
+// the pixels outside the image (given by the BorderMode, or the fill value for CONSTANT)
+// are only resolved when a row or a buffer is padded, so the loops over pixels are plain
+// multiply-adds with no bounds checks, which the JIT can vectorize.
+//
+// Weights are in fixed point: the most fraction bits (up to 14) for which no sum can
+// overflow an int. The separable passes keep a few extra fraction bits in between.
+public final class ConvolutionOp implements BandOp {
+
+    private static final int MAX_BITS = 14;
+    private static final int MAX_BETWEEN_BITS = 8;
+
+    private final ConvolutionKernel kernel;
+    private final BorderMode border;
+    private final int fill;
+    private final int radiusX;
+    private final int radiusY;
+    // Separable: quantized column and row, and the shifts after each pass
+    private final int[] column;
+    private final int[] row;
+    private final int verticalShift;
+    // Non-separable: the taps with a non-zero quantized weight
+    private final int[] tapX;
+    private final int[] tapY;
+    private final int[] tapWeight;
+    private final int shift;
+
+    public ConvolutionOp(ConvolutionKernel kernel) {
+        this(kernel, BorderMode.REFLECT, 0);
+    }
+
+    public ConvolutionOp(ConvolutionKernel kernel, BorderMode border) {
+        this(kernel, border, 0);
+    }
+
+    // fill is the gray value of the pixels outside the image for BorderMode.CONSTANT
+    public ConvolutionOp(ConvolutionKernel kernel, BorderMode border, int fill) {
+        if (fill < 0 || fill > 255) {
+            throw new IllegalArgumentException("Fill value must be between 0 and 255");
+        }
+        this.kernel = kernel;
+        this.border = border;
+        this.fill = fill;
+        this.radiusX = kernel.getWidth() / 2;
+        this.radiusY = kernel.getHeight() / 2;
+        if (kernel.isSeparable()) {
+            double[] c = kernel.getColumn();
+            double[] r = kernel.getRow();
+            int bits = MAX_BITS;
+            while (bits > 0 && !fits(quantize(c, bits), quantize(r, bits), bits)) {
+                bits--;
+            }
+            if (bits == 0) {
+                throw new IllegalArgumentException("Kernel weights are too large");
+            }
+            int between = Math.min(MAX_BETWEEN_BITS, bits);
+            this.column = quantize(c, bits);
+            this.row = quantize(r, bits);
+            this.verticalShift = bits - between;
+            this.shift = bits + between;
+            this.tapX = null;
+            this.tapY = null;
+            this.tapWeight = null;
+        } else {
+            int w = kernel.getWidth();
+            int h = kernel.getHeight();
+            double[] weights = new double[w * h];
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    weights[y * w + x] = kernel.getWeight(x, y);
+                }
+            }
+            int bits = MAX_BITS;
+            while (bits > 0 && 255 * sumAbs(quantize(weights, bits)) + (1L << bits) > Integer.MAX_VALUE) {
+                bits--;
+            }
+            if (bits == 0) {
+                throw new IllegalArgumentException("Kernel weights are too large");
+            }
+            int[] q = quantize(weights, bits);
+            int taps = 0;
+            for (int weight : q) {
+                if (weight != 0) {
+                    taps++;
+                }
+            }
+            this.tapX = new int[taps];
+            this.tapY = new int[taps];
+            this.tapWeight = new int[taps];
+            for (int i = 0, t = 0; i < q.length; i++) {
+                if (q[i] != 0) {
+                    tapX[t] = i % w;
+                    tapY[t] = i / w;
+                    tapWeight[t++] = q[i];
+                }
+            }
+            this.shift = bits;
+            this.column = null;
+            this.row = null;
+            this.verticalShift = 0;
+        }
+    }
+
+    public ConvolutionKernel getKernel() {
+        return kernel;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.requireGray(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] s = Rasters.bytes(in);
+        byte[] d = Rasters.bytes(out);
+        TileScheduler.shared().forEachBand(width, height, (y0, y1) -> filterRows(s, 0, d, 0, width, height, y0, y1));
+        return out;
+    }
+
+    @Override
+    public int getHaloRows() {
+        return radiusY;
+    }
+
+    @Override
+    public boolean isStreamable() {
+        return border != BorderMode.WRAP;
+    }
+
+    @Override
+    public void filterRows(byte[] src, int srcTop, byte[] dst, int dstTop, int width, int height, int y0, int y1) {
+        if (column != null) {
+            separableRows(src, srcTop, dst, dstTop, width, height, y0, y1);
+        } else {
+            directRows(src, srcTop, dst, dstTop, width, height, y0, y1);
+        }
+    }
+
+    private void separableRows(byte[] src, int srcTop, byte[] dst, int dstTop, int width, int height, int y0, int y1) {
+        int rx = radiusX;
+        int ry = radiusY;
+        byte[] fillRow = filledRow(width);
+        // Vertical results with rx padding columns on each side
+        int[] between = new int[width + 2 * rx];
+        int[] sum = new int[width];
+        int verticalRound = verticalShift == 0 ? 0 : 1 << (verticalShift - 1);
+        int round = 1 << (shift - 1);
+        // A column of fill pixels, after the vertical pass
+        int filled = (fill * sum(column) + verticalRound) >> verticalShift;
+        for (int y = y0; y < y1; y++) {
+            for (int x = 0; x < width; x++) {
+                sum[x] = verticalRound;
+            }
+            // Taps mirrored around the center with the same weight (every symmetric
+            // kernel) share a multiply
+            for (int k = 0; k <= ry; k++) {
+                int m = column.length - 1 - k;
+                int sa = border.index(y + k - ry, height);
+                int sb = border.index(y + m - ry, height);
+                byte[] a = sa < 0 ? fillRow : src;
+                byte[] b = sb < 0 ? fillRow : src;
+                int ia = sa < 0 ? 0 : (sa - srcTop) * width;
+                int ib = sb < 0 ? 0 : (sb - srcTop) * width;
+                if (k == m) {
+                    addRow(sum, a, ia, column[k], width);
+                } else if (column[k] == column[m]) {
+                    addRows(sum, a, ia, b, ib, column[k], width);
+                } else {
+                    addRow(sum, a, ia, column[k], width);
+                    addRow(sum, b, ib, column[m], width);
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                between[x + rx] = sum[x] >> verticalShift;
+            }
+            for (int p = 0; p < rx; p++) {
+                int left = border.index(p - rx, width);
+                int right = border.index(width + p, width);
+                between[p] = left < 0 ? filled : between[left + rx];
+                between[width + rx + p] = right < 0 ? filled : between[right + rx];
+            }
+            for (int x = 0; x < width; x++) {
+                sum[x] = round;
+            }
+            for (int k = 0; k <= rx; k++) {
+                int m = row.length - 1 - k;
+                if (k == m) {
+                    addRow(sum, between, k, row[k], width);
+                } else if (row[k] == row[m]) {
+                    addRows(sum, between, k, between, m, row[k], width);
+                } else {
+                    addRow(sum, between, k, row[k], width);
+                    addRow(sum, between, m, row[m], width);
+                }
+            }
+            store(sum, dst, (y - dstTop) * width, width);
+        }
+    }
+
+    private void directRows(byte[] src, int srcTop, byte[] dst, int dstTop, int width, int height, int y0, int y1) {
+        int rx = radiusX;
+        int ry = radiusY;
+        int rows = kernel.getHeight();
+        // Padded source rows, row p (which may lie outside the image) in slot p mod rows
+        byte[][] padded = new byte[rows][width + 2 * rx];
+        int[] tags = new int[rows];
+        boolean[] valid = new boolean[rows];
+        int[] sum = new int[width];
+        int round = 1 << (shift - 1);
+        for (int y = y0; y < y1; y++) {
+            for (int k = 0; k < rows; k++) {
+                int p = y + k - ry;
+                int slot = Math.floorMod(p, rows);
+                if (!valid[slot] || tags[slot] != p) {
+                    pad(src, srcTop, width, height, p, padded[slot]);
+                    tags[slot] = p;
+                    valid[slot] = true;
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                sum[x] = round;
+            }
+            for (int t = 0; t < tapWeight.length; t++) {
+                int weight = tapWeight[t];
+                int dx = tapX[t];
+                byte[] line = padded[Math.floorMod(y + tapY[t] - ry, rows)];
+                for (int x = 0; x < width; x++) {
+                    sum[x] += weight * (line[x + dx] & 0xFF);
+                }
+            }
+            store(sum, dst, (y - dstTop) * width, width);
+        }
+    }
+
+    // Copies image row p, or what the border mode reads for it, with radiusX padding pixels
+    private void pad(byte[] src, int srcTop, int width, int height, int p, byte[] line) {
+        int rx = radiusX;
+        int sy = border.index(p, height);
+        if (sy < 0) {
+            Arrays.fill(line, (byte) fill);
+            return;
+        }
+        System.arraycopy(src, (sy - srcTop) * width, line, rx, width);
+        for (int q = 0; q < rx; q++) {
+            int left = border.index(q - rx, width);
+            int right = border.index(width + q, width);
+            line[q] = left < 0 ? (byte) fill : line[left + rx];
+            line[width + rx + q] = right < 0 ? (byte) fill : line[right + rx];
+        }
+    }
+
+    private static void addRow(int[] sum, byte[] s, int from, int weight, int width) {
+        if (weight != 0) {
+            for (int x = 0; x < width; x++) {
+                sum[x] += weight * (s[from + x] & 0xFF);
+            }
+        }
+    }
+
+    private static void addRows(int[] sum, byte[] a, int ia, byte[] b, int ib, int weight, int width) {
+        if (weight != 0) {
+            for (int x = 0; x < width; x++) {
+                sum[x] += weight * ((a[ia + x] & 0xFF) + (b[ib + x] & 0xFF));
+            }
+        }
+    }
+
+    private static void addRow(int[] sum, int[] s, int from, int weight, int width) {
+        if (weight != 0) {
+            for (int x = 0; x < width; x++) {
+                sum[x] += weight * s[from + x];
+            }
+        }
+    }
+
+    private static void addRows(int[] sum, int[] a, int ia, int[] b, int ib, int weight, int width) {
+        if (weight != 0) {
+            for (int x = 0; x < width; x++) {
+                sum[x] += weight * (a[ia + x] + b[ib + x]);
+            }
+        }
+    }
+
+    private void store(int[] sum, byte[] dst, int to, int width) {
+        for (int x = 0; x < width; x++) {
+            dst[to + x] = (byte) Math.max(0, Math.min(255, sum[x] >> shift));
+        }
+    }
+
+    private byte[] filledRow(int width) {
+        byte[] line = new byte[width];
+        Arrays.fill(line, (byte) fill);
+        return line;
+    }
+
+    // Whether the separable passes with these weights stay within an int
+    private static boolean fits(int[] column, int[] row, int bits) {
+        int verticalShift = bits - Math.min(MAX_BETWEEN_BITS, bits);
+        long vertical = 255 * sumAbs(column) + (1L << bits);
+        long between = (vertical >> verticalShift) + 1;
+        return vertical <= Integer.MAX_VALUE && between * sumAbs(row) + (1L << bits) <= Integer.MAX_VALUE;
+    }
+
+    // Rounds the weights to the given fraction bits, adjusting the largest so that the
+    // sum is rounded once rather than weight by weight: a normalized kernel keeps a sum
+    // of exactly 1, so flat areas stay unchanged
+    private static int[] quantize(double[] weights, int bits) {
+        double scale = 1 << bits;
+        int[] q = new int[weights.length];
+        double total = 0;
+        long sum = 0;
+        int largest = 0;
+        for (int i = 0; i < weights.length; i++) {
+            q[i] = (int) Math.round(weights[i] * scale);
+            total += weights[i];
+            sum += q[i];
+            if (Math.abs(weights[i]) > Math.abs(weights[largest])) {
+                largest = i;
+            }
+        }
+        q[largest] += (int) (Math.round(total * scale) - sum);
+        return q;
+    }
+
+    private static long sumAbs(int[] weights) {
+        long sum = 0;
+        for (int weight : weights) {
+            sum += Math.abs(weight);
+        }
+        return sum;
+    }
+
+    private static int sum(int[] weights) {
+        int sum = 0;
+        for (int weight : weights) {
+            sum += weight;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,264 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Disparity map of a rectified stereo pair by block matching: the source is the left
+// image, and for each of its pixels the op searches the same row of the right image,
+// d = minDisparity..maxDisparity pixels to the left, for the (2r+1) x (2r+1) block that
+// matches best. The cost of a block is the sum of the pixel costs in it:
+//  SAD     |L - R| of the gray values
+//  CENSUS  the number of differing bits between the census signatures of the two
+//          pixels: one bit per pixel of the 5x5 neighborhood, set when it is darker
+//          than the center. It is not fooled by a brightness difference between the
+//          cameras.
+//
+// Block costs are box sums, kept incrementally: per disparity, every column holds the
+// sum of its pixel costs over the 2r+1 rows around the current row, updated by one row
+// in and one row out, and a running sum along the row adds 2r+1 columns. A pixel costs
+// the same for any window size. Bands of rows run in parallel.
+//
+// The same costs also give the best match of every right pixel. A left pixel keeps its
+// disparity only when its match in the right image points back to it within one
+// pixel (the left-right check), which drops occlusions and most mismatches.
+//
+// The result is a TYPE_BYTE_GRAY image holding disparity * scale, or 0 where the
+// check failed. With scale 1 it holds the disparity in pixels.
+public final class DisparityOp implements ImageOp {
+
+    public enum Cost {
+        SAD,
+        CENSUS
+    }
+
+    public static final int DEFAULT_MAX_DISPARITY = 64;
+    public static final int DEFAULT_RADIUS = 3;
+
+    // Largest pixel cost, also used for pixels whose match would be outside the image
+    private static final int MAX_SAD = 255;
+    private static final int MAX_CENSUS = 24;
+
+    private final BufferedImage right;
+    private final int minDisparity;
+    private final int maxDisparity;
+    private final int radius;
+    private final Cost cost;
+    private final int scale;
+    // Bits of the index of a disparity in the range
+    private final int shift;
+
+    // Census matching over 0..maxDisparity, scaled so maxDisparity is close to white
+    public DisparityOp(BufferedImage right, int maxDisparity) {
+        this(right, 0, maxDisparity, DEFAULT_RADIUS, Cost.CENSUS, Math.max(1, 255 / Math.max(1, maxDisparity)));
+    }
+
+    public DisparityOp(BufferedImage right, int minDisparity, int maxDisparity, int radius, Cost cost, int scale) {
+        if (minDisparity < 0 || maxDisparity < minDisparity) {
+            throw new IllegalArgumentException("Disparity range must satisfy 0 <= min <= max");
+        }
+        if (radius < 0) {
+            throw new IllegalArgumentException("Block radius must not be negative");
+        }
+        if (scale < 1) {
+            throw new IllegalArgumentException("Disparity scale must be at least 1");
+        }
+        this.right = right;
+        this.minDisparity = minDisparity;
+        this.maxDisparity = maxDisparity;
+        this.radius = radius;
+        this.cost = cost;
+        this.scale = scale;
+        this.shift = 32 - Integer.numberOfLeadingZeros(maxDisparity - minDisparity);
+        // A block cost and a disparity index share an int
+        long largest = (long) (2 * radius + 1) * (2 * radius + 1) * (cost == Cost.SAD ? MAX_SAD : MAX_CENSUS);
+        if (largest >= 1L << 31 - shift) {
+            throw new IllegalArgumentException("Block radius too large for the disparity range");
+        }
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (width != right.getWidth() || height != right.getHeight()) {
+            throw new IllegalArgumentException("Images must have the same dimensions.");
+        }
+        // Gray values for SAD, census signatures for CENSUS
+        int[] left = features(src);
+        int[] right = features(this.right);
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] d = Rasters.bytes(out);
+        int disparities = maxDisparity - minDisparity + 1;
+        // Each band first fills its column sums with 2r+1 rows
+        TileScheduler.shared().forEachBand(width * disparities, height, 4 * (2 * radius + 1),
+                (y0, y1) -> new Band(width, height, disparities).match(left, right, d, y0, y1));
+        return out;
+    }
+
+    // The gray values as ints, which the cost loops read faster than bytes, or for CENSUS
+    // the 24-bit signature of every pixel over its 5x5 neighborhood, edges clamped
+    private int[] features(BufferedImage image) {
+        BufferedImage packed = Rasters.packed(image);
+        byte[] gray = Rasters.bytes(Rasters.isGray(packed) ? packed : new GrayscaleOp().filter(packed));
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] features = new int[width * height];
+        TileScheduler.shared().forEachBand(width, height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                for (int x = 0; x < width; x++) {
+                    int center = gray[y * width + x] & 0xFF;
+                    if (cost == Cost.SAD) {
+                        features[y * width + x] = center;
+                        continue;
+                    }
+                    int bits = 0;
+                    for (int dy = -2; dy <= 2; dy++) {
+                        int row = Math.max(0, Math.min(height - 1, y + dy)) * width;
+                        for (int dx = -2; dx <= 2; dx++) {
+                            if (dx != 0 || dy != 0) {
+                                int v = gray[row + Math.max(0, Math.min(width - 1, x + dx))] & 0xFF;
+                                bits = bits << 1 | (v < center ? 1 : 0);
+                            }
+                        }
+                    }
+                    features[y * width + x] = bits;
+                }
+            }
+        });
+        return features;
+    }
+
+    // The sums of one band of rows; disparity minDisparity + k is at index k * width + x
+    private final class Band {
+        final int width;
+        final int height;
+        final int disparities;
+        // Sum of the pixel costs of each column over the rows y - r..y + r (edges clamped)
+        final int[] columns;
+        // Prefix sums of one disparity's column sums, edges repeated r times
+        final int[] prefix;
+        // Lowest (block cost << shift | k) of each left pixel, and of each right pixel
+        final int[] leftBest;
+        final int[] rightBest;
+
+        Band(int width, int height, int disparities) {
+            this.width = width;
+            this.height = height;
+            this.disparities = disparities;
+            columns = new int[disparities * width];
+            prefix = new int[width + 2 * radius + 1];
+            leftBest = new int[width];
+            rightBest = new int[width];
+        }
+
+        void match(int[] left, int[] right, byte[] out, int y0, int y1) {
+            for (int dy = -radius; dy <= radius; dy++) {
+                addRow(left, right, clampRow(y0 + dy));
+            }
+            int mask = (1 << shift) - 1;
+            for (int y = y0; y < y1; y++) {
+                if (y > y0) {
+                    slideRow(left, right, clampRow(y + radius), clampRow(y - radius - 1));
+                }
+                pickBest();
+                for (int x = 0; x < width; x++) {
+                    int disparity = minDisparity + (leftBest[x] & mask);
+                    int match = x - disparity;
+                    boolean consistent = match >= 0 && Math.abs(minDisparity + (rightBest[match] & mask) - disparity) <= 1;
+                    out[y * width + x] = (byte) (consistent ? Math.min(255, disparity * scale) : 0);
+                }
+            }
+        }
+
+        private int clampRow(int y) {
+            return Math.max(0, Math.min(height - 1, y));
+        }
+
+        // Adds the pixel costs of row y to every column sum. Columns with no match for a
+        // disparity get the largest cost, which slideRow then leaves alone.
+        private void addRow(int[] left, int[] right, int y) {
+            int none = cost == Cost.SAD ? MAX_SAD : MAX_CENSUS;
+            for (int k = 0; k < disparities; k++) {
+                int base = k * width;
+                int start = Math.min(width, minDisparity + k);
+                for (int x = 0; x < start; x++) {
+                    columns[base + x] += none;
+                }
+            }
+            slideRow(left, right, y, -1);
+        }
+
+        // Adds the pixel costs of row in and, unless it is -1, subtracts those of row out
+        private void slideRow(int[] left, int[] right, int in, int out) {
+            int[] columns = this.columns;
+            int rowIn = in * width;
+            int rowOut = out * width;
+            for (int k = 0; k < disparities; k++) {
+                int disparity = minDisparity + k;
+                int base = k * width;
+                int shifted = rowIn - disparity;
+                int shiftedOut = rowOut - disparity;
+                if (cost == Cost.SAD && out < 0) {
+                    for (int x = disparity; x < width; x++) {
+                        columns[base + x] += Math.abs(left[rowIn + x] - right[shifted + x]);
+                    }
+                } else if (cost == Cost.SAD) {
+                    for (int x = disparity; x < width; x++) {
+                        columns[base + x] += Math.abs(left[rowIn + x] - right[shifted + x])
+                                - Math.abs(left[rowOut + x] - right[shiftedOut + x]);
+                    }
+                } else if (out < 0) {
+                    for (int x = disparity; x < width; x++) {
+                        columns[base + x] += Integer.bitCount(left[rowIn + x] ^ right[shifted + x]);
+                    }
+                } else {
+                    for (int x = disparity; x < width; x++) {
+                        columns[base + x] += Integer.bitCount(left[rowIn + x] ^ right[shifted + x])
+                                - Integer.bitCount(left[rowOut + x] ^ right[shiftedOut + x]);
+                    }
+                }
+            }
+        }
+
+        // Block costs of the row as differences of prefix sums, each kept by the left
+        // pixel and by the right pixel it matches when lower than what they have. The
+        // disparity rides in the low bits, so ties go to the smaller one.
+        private void pickBest() {
+            int[] columns = this.columns;
+            int[] prefix = this.prefix;
+            int[] leftBest = this.leftBest;
+            int[] rightBest = this.rightBest;
+            Arrays.fill(leftBest, Integer.MAX_VALUE);
+            Arrays.fill(rightBest, Integer.MAX_VALUE);
+            int window = 2 * radius + 1;
+            for (int k = 0; k < disparities; k++) {
+                int disparity = minDisparity + k;
+                int base = k * width;
+                int sum = 0;
+                int i = 0;
+                for (; i <= radius; i++) {
+                    prefix[i] = sum;
+                    sum += columns[base];
+                }
+                for (; i < width + radius; i++) {
+                    prefix[i] = sum;
+                    sum += columns[base + i - radius];
+                }
+                for (; i < prefix.length - 1; i++) {
+                    prefix[i] = sum;
+                    sum += columns[base + width - 1];
+                }
+                prefix[i] = sum;
+                for (int x = 0; x < width; x++) {
+                    leftBest[x] = Math.min(leftBest[x], (prefix[x + window] - prefix[x]) << shift | k);
+                }
+                for (int x = disparity; x < width; x++) {
+                    rightBest[x - disparity] = Math.min(rightBest[x - disparity], (prefix[x + window] - prefix[x]) << shift | k);
+                }
+            }
+        }
+    }
+}
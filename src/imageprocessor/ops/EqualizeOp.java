@@ -0,0 +1,16 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.ImageOp;
+import java.awt.image.BufferedImage;
+
+// Global histogram equalization: each luminance value is mapped to the share of
+// pixels at or below it, so the values end up spread over the whole 0..255 range.
+// The table comes from the luminance histogram and is applied to every channel (as a
+// LutOp), which keeps colors from shifting as they would with a table per channel.
+public final class EqualizeOp implements ImageOp {
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        return new LutOp(Histogram.of(src).equalizationTable()).filter(src);
+    }
+}
@@ -0,0 +1,139 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.InPlaceOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Array;
+
+// Mirrors the image horizontally, vertically or both. Pixels are moved as raw array
+// elements (see Rasters.pixelStride), so the image type is kept; other layouts are
+// packed first. In place, a vertical flip swaps rows and a horizontal one reverses
+// each row.
+public final class FlipOp implements InPlaceOp {
+
+    private final boolean horizontal;
+    private final boolean vertical;
+
+    public FlipOp(boolean horizontal, boolean vertical) {
+        this.horizontal = horizontal;
+        this.vertical = vertical;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.pixelStride(src) > 0 ? src : Rasters.packed(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        int n = Rasters.pixelStride(in);
+        BufferedImage out = Rasters.createLike(in, width, height);
+        Object s = Rasters.data(in);
+        Object d = Rasters.data(out);
+        TileScheduler.shared().forEachBand(width, height, (y0, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int from = y * width;
+                int to = (vertical ? height - y - 1 : y) * width;
+                if (horizontal) {
+                    reverse(s, from, d, to, width, n);
+                } else {
+                    System.arraycopy(s, from * n, d, to * n, width * n);
+                }
+            }
+        });
+        return out;
+    }
+
+    @Override
+    public boolean filterInPlace(BufferedImage image) {
+        int n = Rasters.pixelStride(image);
+        if (n == 0) {
+            return false;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Object data = Rasters.data(image);
+        if (!vertical) {
+            if (horizontal) {
+                TileScheduler.shared().forEachBand(width, height, (y0, y1) -> {
+                    for (int y = y0; y < y1; y++) {
+                        reverse(data, y * width, data, y * width, width, n);
+                    }
+                });
+            }
+            return true;
+        }
+        // Row y and its mirror row are handled together; the middle row of an odd height pairs with itself
+        TileScheduler.shared().forEachBand(width, (height + 1) / 2, (y0, y1) -> {
+            Object row = newArray(data, width * n);
+            for (int y = y0; y < y1; y++) {
+                int top = y * width * n;
+                int bottom = (height - y - 1) * width * n;
+                System.arraycopy(data, top, row, 0, width * n);
+                if (horizontal) {
+                    reverse(data, bottom / n, data, top / n, width, n);
+                    reverse(row, 0, data, bottom / n, width, n);
+                } else {
+                    System.arraycopy(data, bottom, data, top, width * n);
+                    System.arraycopy(row, 0, data, bottom, width * n);
+                }
+            }
+        });
+        return true;
+    }
+
+    // Writes pixels from .. from + length - 1 of s to to + length - 1 .. to of d.
+    // s and d may be the same row.
+    private static void reverse(Object s, int from, Object d, int to, int length, int n) {
+        if (s == d && from == to) {
+            reverseInPlace(s, from, length, n);
+        } else if (n == 1 && s instanceof int[]) {
+            int[] src = (int[]) s;
+            int[] dst = (int[]) d;
+            for (int x = 0, j = to + length - 1; x < length; x++, j--) {
+                dst[j] = src[from + x];
+            }
+        } else if (n == 1 && s instanceof byte[]) {
+            byte[] src = (byte[]) s;
+            byte[] dst = (byte[]) d;
+            for (int x = 0, j = to + length - 1; x < length; x++, j--) {
+                dst[j] = src[from + x];
+            }
+        } else {
+            for (int x = 0, j = to + length - 1; x < length; x++, j--) {
+                System.arraycopy(s, (from + x) * n, d, j * n, n);
+            }
+        }
+    }
+
+    private static void reverseInPlace(Object data, int from, int length, int n) {
+        if (n == 1 && data instanceof int[]) {
+            int[] a = (int[]) data;
+            for (int i = from, j = from + length - 1; i < j; i++, j--) {
+                int t = a[i];
+                a[i] = a[j];
+                a[j] = t;
+            }
+            return;
+        }
+        if (n == 1 && data instanceof byte[]) {
+            byte[] a = (byte[]) data;
+            for (int i = from, j = from + length - 1; i < j; i++, j--) {
+                byte t = a[i];
+                a[i] = a[j];
+                a[j] = t;
+            }
+            return;
+        }
+        Object pixel = newArray(data, n);
+        for (int i = from * n, j = (from + length - 1) * n; i < j; i += n, j -= n) {
+            System.arraycopy(data, i, pixel, 0, n);
+            System.arraycopy(data, j, data, i, n);
+            System.arraycopy(pixel, 0, data, j, n);
+        }
+    }
+
+    // An empty array with the same element type as data
+    private static Object newArray(Object data, int length) {
+        return Array.newInstance(data.getClass().getComponentType(), length);
+    }
+}
@@ -0,0 +1,113 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.BandOp;
+import imageprocessor.core.BorderMode;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// 3x3 gradient edge detectors for gray images. Each operator is the outer product of a
+// smoothing column [e, c, e] and the derivative [-1, 0, 1]:
+//  SOBEL      [1, 2, 1]
+//  PREWITT    [1, 1, 1]
+//  FREI_CHEN  [1, sqrt(2), 1] (in 10-bit fixed point, so the result is rounded)
+// so gx and gy are computed separably: one vertical pass per row gives the smoothed
+// and the differenced columns, and the horizontal pass combines three of each.
+// The output is the gradient magnitude, clamped to 255, with pixels outside the image
+// read according to the BorderMode.
+public final class GradientOp implements BandOp {
+
+    public enum Operator {
+        SOBEL(1, 2, 0),
+        PREWITT(1, 1, 0),
+        FREI_CHEN(1 << 10, (int) Math.round(Math.sqrt(2) * (1 << 10)), 10);
+
+        final int edge;
+        final int center;
+        final int shift;
+
+        Operator(int edge, int center, int shift) {
+            this.edge = edge;
+            this.center = center;
+            this.shift = shift;
+        }
+    }
+
+    private final Operator operator;
+    private final Magnitude magnitude;
+    private final BorderMode border;
+
+    public GradientOp(Operator operator) {
+        this(operator, Magnitude.L2, BorderMode.REFLECT);
+    }
+
+    public GradientOp(Operator operator, Magnitude magnitude, BorderMode border) {
+        this.operator = operator;
+        this.magnitude = magnitude;
+        this.border = border;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.requireGray(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] s = Rasters.bytes(in);
+        byte[] d = Rasters.bytes(out);
+        TileScheduler.shared().forEachBand(width, height, (y0, y1) -> filterRows(s, 0, d, 0, width, height, y0, y1));
+        return out;
+    }
+
+    @Override
+    public int getHaloRows() {
+        return 1;
+    }
+
+    @Override
+    public boolean isStreamable() {
+        return border != BorderMode.WRAP;
+    }
+
+    @Override
+    public void filterRows(byte[] src, int srcTop, byte[] dst, int dstTop, int width, int height, int y0, int y1) {
+        int e = operator.edge;
+        int c = operator.center;
+        int shift = operator.shift;
+        int round = shift == 0 ? 0 : 1 << (shift - 1);
+        // Column sums with one padding column on each side
+        int[] smooth = new int[width + 2];
+        int[] diff = new int[width + 2];
+        byte[] zeros = new byte[width];
+        int left = border.index(-1, width);
+        int right = border.index(width, width);
+        for (int y = y0; y < y1; y++) {
+            int up = border.index(y - 1, height);
+            int down = border.index(y + 1, height);
+            byte[] a = up < 0 ? zeros : src;
+            byte[] b = down < 0 ? zeros : src;
+            int ia = up < 0 ? 0 : (up - srcTop) * width;
+            int ib = down < 0 ? 0 : (down - srcTop) * width;
+            int im = (y - srcTop) * width;
+            for (int x = 0; x < width; x++) {
+                int above = a[ia + x] & 0xFF;
+                int below = b[ib + x] & 0xFF;
+                smooth[x + 1] = e * (above + below) + c * (src[im + x] & 0xFF);
+                diff[x + 1] = below - above;
+            }
+            smooth[0] = left < 0 ? 0 : smooth[left + 1];
+            diff[0] = left < 0 ? 0 : diff[left + 1];
+            smooth[width + 1] = right < 0 ? 0 : smooth[right + 1];
+            diff[width + 1] = right < 0 ? 0 : diff[right + 1];
+            for (int x = 0, o = (y - dstTop) * width; x < width; x++, o++) {
+                int gx = smooth[x + 2] - smooth[x];
+                int gy = e * (diff[x] + diff[x + 2]) + c * diff[x + 1];
+                if (shift != 0) {
+                    gx = (gx + round) >> shift;
+                    gy = (gy + round) >> shift;
+                }
+                dst[o] = (byte) magnitude.of(gx, gy);
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.PointOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Converts to TYPE_BYTE_GRAY with Gray = 0.299 * R + 0.587 * G + 0.114 * B.
+// The weights are applied in 16.16 fixed point; they sum to exactly 1 << 16. Each
+// channel's weighted values come from a 256-entry table, so a pixel costs three
+// lookups and two adds.
+public final class GrayscaleOp implements PointOp {
+
+    private static final int RED_WEIGHT = 19595;
+    private static final int GREEN_WEIGHT = 38470;
+    private static final int BLUE_WEIGHT = 7471;
+
+    private static final int[] RED_TABLE = weights(RED_WEIGHT);
+    private static final int[] GREEN_TABLE = weights(GREEN_WEIGHT);
+    private static final int[] BLUE_TABLE = weights(BLUE_WEIGHT);
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.packed(src);
+        BufferedImage out = new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        byte[] d = Rasters.bytes(out);
+        if (Rasters.isGray(in)) {
+            byte[] s = Rasters.bytes(in);
+            System.arraycopy(s, 0, d, 0, s.length);
+            return out;
+        }
+        int[] s = Rasters.ints(in);
+        int width = in.getWidth();
+        TileScheduler.shared().forEachBand(width, in.getHeight(), (y0, y1) -> {
+            for (int i = y0 * width, end = y1 * width; i < end; i++) {
+                d[i] = (byte) luminance(s[i]);
+            }
+        });
+        return out;
+    }
+
+    @Override
+    public int getOutputType(int inputType) {
+        return BufferedImage.TYPE_BYTE_GRAY;
+    }
+
+    @Override
+    public void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int index) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = 0xFF000000 | luminance(src[srcOffset + i]) * 0x010101;
+        }
+    }
+
+    static int luminance(int p) {
+        return (RED_TABLE[p >> 16 & 0xFF] + GREEN_TABLE[p >> 8 & 0xFF] + BLUE_TABLE[p & 0xFF]) >>> 16;
+    }
+
+    private static int[] weights(int weight) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = i * weight;
+        }
+        return table;
+    }
+}
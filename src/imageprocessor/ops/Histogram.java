@@ -0,0 +1,155 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Counts of each value 0..255 of the red, green and blue channels and of the
+// luminance (the value GrayscaleOp gives). Gray images have the same counts in all four.
+//
+// The image is counted in one band per thread, each into its own arrays, which are
+// added together at the end, so threads never contend on shared counters. Gray bands
+// count into four interleaved sets of arrays, so that runs of the same value (the
+// white background of a scanned page) do not wait on one counter.
+public final class Histogram {
+
+    public static final int BINS = 256;
+
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+    private final int[] luminance;
+    private final long total;
+
+    private Histogram(int[] red, int[] green, int[] blue, int[] luminance, long total) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.luminance = luminance;
+        this.total = total;
+    }
+
+    public static Histogram of(BufferedImage image) {
+        BufferedImage in = Rasters.packed(image);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        boolean gray = Rasters.isGray(in);
+        int[][] sums = new int[gray ? 1 : 4][BINS];
+        TileScheduler scheduler = TileScheduler.shared();
+        int minRows = (height + scheduler.getParallelism() - 1) / scheduler.getParallelism();
+        scheduler.forEachBand(width, height, minRows, (y0, y1) -> {
+            int[][] counts = gray ? countGray(Rasters.bytes(in), y0 * width, y1 * width)
+                    : countColor(Rasters.ints(in), y0 * width, y1 * width);
+            synchronized (sums) {
+                for (int c = 0; c < sums.length; c++) {
+                    for (int v = 0; v < BINS; v++) {
+                        sums[c][v] += counts[c][v];
+                    }
+                }
+            }
+        });
+        long total = (long) width * height;
+        if (gray) {
+            return new Histogram(sums[0], sums[0], sums[0], sums[0], total);
+        }
+        return new Histogram(sums[0], sums[1], sums[2], sums[3], total);
+    }
+
+    private static int[][] countGray(byte[] s, int from, int to) {
+        int[] sets = new int[4 * BINS];
+        countGray(s, from, to, sets);
+        return new int[][] {merge(sets)};
+    }
+
+    // Adds the values s[from, to) to four interleaved sets of counts, in sets[0, 4 * BINS)
+    static void countGray(byte[] s, int from, int to, int[] sets) {
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            sets[s[i] & 0xFF]++;
+            sets[BINS + (s[i + 1] & 0xFF)]++;
+            sets[2 * BINS + (s[i + 2] & 0xFF)]++;
+            sets[3 * BINS + (s[i + 3] & 0xFF)]++;
+        }
+        for (; i < to; i++) {
+            sets[s[i] & 0xFF]++;
+        }
+    }
+
+    // Adds up the four sets filled by countGray
+    static int[] merge(int[] sets) {
+        int[] counts = new int[BINS];
+        for (int v = 0; v < BINS; v++) {
+            counts[v] = sets[v] + sets[BINS + v] + sets[2 * BINS + v] + sets[3 * BINS + v];
+        }
+        return counts;
+    }
+
+    private static int[][] countColor(int[] s, int from, int to) {
+        int[] r = new int[BINS];
+        int[] g = new int[BINS];
+        int[] b = new int[BINS];
+        int[] l = new int[BINS];
+        for (int i = from; i < to; i++) {
+            int p = s[i];
+            r[p >> 16 & 0xFF]++;
+            g[p >> 8 & 0xFF]++;
+            b[p & 0xFF]++;
+            l[GrayscaleOp.luminance(p)]++;
+        }
+        return new int[][] {r, g, b, l};
+    }
+
+    public int[] getRed() {
+        return red.clone();
+    }
+
+    public int[] getGreen() {
+        return green.clone();
+    }
+
+    public int[] getBlue() {
+        return blue.clone();
+    }
+
+    public int[] getLuminance() {
+        return luminance.clone();
+    }
+
+    // Number of pixels counted
+    public long getTotal() {
+        return total;
+    }
+
+    // The smallest luminance value with at least fraction of the pixels at or below it
+    public int luminancePercentile(double fraction) {
+        long target = (long) Math.ceil(Math.max(0, Math.min(1, fraction)) * total);
+        long sum = 0;
+        for (int v = 0; v < BINS; v++) {
+            sum += luminance[v];
+            if (sum >= Math.max(1, target)) {
+                return v;
+            }
+        }
+        return BINS - 1;
+    }
+
+    // Equalization table for the luminance: each value goes to the share of pixels at
+    // or below it, stretched so that the lowest value present maps to 0
+    public int[] equalizationTable() {
+        return equalize(luminance, total);
+    }
+
+    static int[] equalize(int[] counts, long total) {
+        int[] table = new int[BINS];
+        long first = 0;
+        for (int v = 0; v < BINS && first == 0; v++) {
+            first = counts[v];
+        }
+        long sum = 0;
+        for (int v = 0; v < BINS; v++) {
+            sum += counts[v];
+            table[v] = total == first ? v : (int) Math.max(0, ((sum - first) * 255 + (total - first) / 2) / (total - first));
+        }
+        return table;
+    }
+}
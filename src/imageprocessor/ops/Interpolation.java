@@ -0,0 +1,23 @@
+package imageprocessor.ops;
+
+// How resampling ops compute a pixel that falls between source pixels
+public enum Interpolation {
+    // The closest source pixel
+    NEAREST,
+    // Linear in x and y over the 2x2 closest pixels
+    BILINEAR,
+    // Catmull-Rom cubic over the 4x4 closest pixels; sharper than bilinear
+    BICUBIC;
+
+    // Catmull-Rom (a = -0.5) weight of a tap at distance t from the sample point
+    static double cubic(double t) {
+        t = Math.abs(t);
+        if (t < 1) {
+            return (1.5 * t - 2.5) * t * t + 1;
+        }
+        if (t < 2) {
+            return ((-0.5 * t + 2.5) * t - 4) * t + 2;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,153 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.PointOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+// Maps every color channel through its own 256-entry table. Alpha is kept.
+//
+// Tables compose: a.then(b) is a single table equal to a followed by b, so a chain of
+// curves still costs one lookup per channel. Gray images stay gray when the three
+// tables are the same and become TYPE_INT_RGB otherwise.
+public final class LutOp implements PointOp {
+
+    private final int[] red;
+    private final int[] green;
+    private final int[] blue;
+    private final boolean uniform;
+
+    // The same table for every channel
+    public LutOp(int[] table) {
+        this(table, table, table);
+    }
+
+    public LutOp(int[] red, int[] green, int[] blue) {
+        this.red = checked(red);
+        this.green = checked(green);
+        this.blue = checked(blue);
+        this.uniform = Arrays.equals(this.red, this.green) && Arrays.equals(this.red, this.blue);
+    }
+
+    public static LutOp identity() {
+        return curve(v -> v);
+    }
+
+    public static LutOp negative() {
+        return curve(v -> 1 - v);
+    }
+
+    // Samples a curve from [0, 1] to [0, 1]; results are clamped and rounded
+    public static LutOp curve(DoubleUnaryOperator curve) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            double value = curve.applyAsDouble(i / 255.0) * 255;
+            table[i] = (int) Math.round(Math.max(0, Math.min(255, value)));
+        }
+        return new LutOp(table);
+    }
+
+    // Gamma correction: c' = 255 * (c / 255)^gamma, so gamma < 1 brightens
+    public static LutOp gamma(double gamma) {
+        if (!(gamma > 0) || Double.isInfinite(gamma)) {
+            throw new IllegalArgumentException("Gamma must be a positive number");
+        }
+        return curve(v -> Math.pow(v, gamma));
+    }
+
+    // Scales the distance from mid-gray: factor > 1 adds contrast, < 1 removes it
+    public static LutOp contrast(double factor) {
+        if (!(factor >= 0) || Double.isInfinite(factor)) {
+            throw new IllegalArgumentException("Contrast factor must be a non-negative number");
+        }
+        return curve(v -> (v - 0.5) * factor + 0.5);
+    }
+
+    // Maps [inLow, inHigh] linearly onto [outLow, outHigh], clipping input outside it
+    public static LutOp levels(int inLow, int inHigh, int outLow, int outHigh) {
+        if (inLow < 0 || inHigh > 255 || inLow >= inHigh || outLow < 0 || outHigh > 255) {
+            throw new IllegalArgumentException("Levels need 0 <= inLow < inHigh <= 255 and outputs in 0..255");
+        }
+        return curve(v -> {
+            double t = Math.max(0, Math.min(1, (v * 255 - inLow) / (inHigh - inLow)));
+            return (outLow + t * (outHigh - outLow)) / 255;
+        });
+    }
+
+    // One table that applies this op and then next
+    public LutOp then(LutOp next) {
+        return new LutOp(compose(red, next.red), compose(green, next.green), compose(blue, next.blue));
+    }
+
+    @Override
+    public PointOp fuse(PointOp next) {
+        if (next instanceof LutOp) {
+            return then((LutOp) next);
+        }
+        if (next instanceof NegativeOp) {
+            return then(negative());
+        }
+        return null;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.packed(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        BufferedImage out = new BufferedImage(width, height, getOutputType(in.getType()));
+        if (Rasters.isGray(out)) {
+            byte[] s = Rasters.bytes(in);
+            byte[] d = Rasters.bytes(out);
+            TileScheduler.shared().forEachBand(width, height, (y0, y1) -> {
+                for (int i = y0 * width, end = y1 * width; i < end; i++) {
+                    d[i] = (byte) red[s[i] & 0xFF];
+                }
+            });
+            return out;
+        }
+        int[] s = Rasters.ints(Rasters.toInt(in));
+        int[] d = Rasters.ints(out);
+        TileScheduler.shared().forEachBand(width, height,
+                (y0, y1) -> apply(s, y0 * width, d, y0 * width, (y1 - y0) * width, y0 * width));
+        return out;
+    }
+
+    @Override
+    public int getOutputType(int inputType) {
+        if (inputType == BufferedImage.TYPE_BYTE_GRAY) {
+            return uniform ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB;
+        }
+        return inputType;
+    }
+
+    @Override
+    public void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int index) {
+        for (int i = 0; i < length; i++) {
+            int p = src[srcOffset + i];
+            dst[dstOffset + i] = p & 0xFF000000 | red[p >> 16 & 0xFF] << 16 | green[p >> 8 & 0xFF] << 8 | blue[p & 0xFF];
+        }
+    }
+
+    private static int[] compose(int[] first, int[] second) {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i++) {
+            table[i] = second[first[i]];
+        }
+        return table;
+    }
+
+    private static int[] checked(int[] table) {
+        if (table.length != 256) {
+            throw new IllegalArgumentException("A lookup table needs 256 entries");
+        }
+        for (int value : table) {
+            if (value < 0 || value > 255) {
+                throw new IllegalArgumentException("Lookup table values must be in 0..255");
+            }
+        }
+        return table.clone();
+    }
+}
@@ -0,0 +1,31 @@
+package imageprocessor.ops;
+
+// How edge detectors combine the horizontal and vertical derivatives into one value,
+// clamped to 255
+public enum Magnitude {
+    // sqrt(gx^2 + gy^2), truncated, read from a table of the squares below 256^2
+    L2,
+    // |gx| + |gy|: no table, up to 41% stronger on diagonal edges
+    L1;
+
+    private static final byte[] SQRT = sqrtTable();
+
+    public int of(int gx, int gy) {
+        if (this == L1) {
+            return Math.min(255, Math.abs(gx) + Math.abs(gy));
+        }
+        int square = gx * gx + gy * gy;
+        return square < SQRT.length ? SQRT[square] & 0xFF : 255;
+    }
+
+    private static byte[] sqrtTable() {
+        byte[] table = new byte[256 * 256];
+        for (int v = 0, square = 0; v < 256; v++) {
+            int next = (v + 1) * (v + 1);
+            for (; square < next && square < table.length; square++) {
+                table[square] = (byte) v;
+            }
+        }
+        return table;
+    }
+}
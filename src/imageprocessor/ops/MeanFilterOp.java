@@ -0,0 +1,163 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.BandOp;
+import imageprocessor.core.IntegralImage;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Mean (box) filter for gray images over a (2 * radius + 1)^2 window. Border pixels
+// average only the neighbours that fall inside the image.
+//
+// Any radius costs O(1) per pixel, with one of two strategies:
+//  SEPARABLE: running horizontal sums per row, then a running vertical sum per column
+//  INTEGRAL:  rectangle sums read from an IntegralImage
+// Both produce the same integer result (sum / count, truncated).
+public final class MeanFilterOp implements BandOp {
+
+    public enum Mode {
+        SEPARABLE,
+        INTEGRAL
+    }
+
+    private final int radius;
+    private final Mode mode;
+
+    public MeanFilterOp() {
+        this(1);
+    }
+
+    public MeanFilterOp(int radius) {
+        this(radius, Mode.SEPARABLE);
+    }
+
+    public MeanFilterOp(int radius, Mode mode) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Mean radius must be at least 1");
+        }
+        this.radius = radius;
+        this.mode = mode;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.requireGray(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] s = Rasters.bytes(in);
+        byte[] d = Rasters.bytes(out);
+        TileScheduler scheduler = TileScheduler.shared();
+        if (mode == Mode.INTEGRAL) {
+            IntegralImage table = IntegralImage.of(s, width, height);
+            scheduler.forEachBand(width, height, (y0, y1) -> integralBand(table, 0, d, 0, width, height, y0, y1));
+        } else {
+            int minRows = Math.max(getMinBandRows(), (height + scheduler.getParallelism() - 1) / scheduler.getParallelism());
+            scheduler.forEachBand(width, height, minRows, (y0, y1) -> separableBand(s, 0, d, 0, width, height, y0, y1));
+        }
+        return out;
+    }
+
+    @Override
+    public int getHaloRows() {
+        return radius;
+    }
+
+    @Override
+    public int getMinBandRows() {
+        // Each band recomputes the horizontal sums of its halo rows, so keep bands tall
+        return mode == Mode.SEPARABLE ? 4 * radius : 1;
+    }
+
+    @Override
+    public void filterRows(byte[] src, int srcTop, byte[] dst, int dstTop, int width, int height, int y0, int y1) {
+        if (mode == Mode.INTEGRAL) {
+            int first = Math.max(0, y0 - radius);
+            int last = Math.min(height, y1 + radius);
+            IntegralImage table = IntegralImage.of(src, (first - srcTop) * width, width, last - first);
+            integralBand(table, first, dst, dstTop, width, height, y0, y1);
+        } else {
+            separableBand(src, srcTop, dst, dstTop, width, height, y0, y1);
+        }
+    }
+
+    // table covers the image rows from tableTop on
+    private void integralBand(IntegralImage table, int tableTop, byte[] d, int dTop, int width, int height, int y0, int y1) {
+        int r = radius;
+        for (int y = y0; y < y1; y++) {
+            int top = Math.max(0, y - r);
+            int bottom = Math.min(height, y + r + 1);
+            int rows = bottom - top;
+            int row = (y - dTop) * width;
+            for (int x = 0; x < width; x++) {
+                int left = Math.max(0, x - r);
+                int right = Math.min(width, x + r + 1);
+                d[row + x] = (byte) (table.sum(left, top - tableTop, right, bottom - tableTop) / (rows * (right - left)));
+            }
+        }
+    }
+
+    private void separableBand(byte[] s, int sTop, byte[] d, int dTop, int width, int height, int y0, int y1) {
+        int r = radius;
+        int first = Math.max(0, y0 - r);
+        int last = Math.min(height, y1 + r);
+        // Horizontal window sums of rows [first, last), then window widths per column
+        int[] rowSums = new int[(last - first) * width];
+        for (int y = first; y < last; y++) {
+            horizontalSums(s, (y - sTop) * width, width, rowSums, (y - first) * width);
+        }
+        int[] columns = new int[width];
+        for (int x = 0; x < width; x++) {
+            columns[x] = Math.min(width - 1, x + r) - Math.max(0, x - r) + 1;
+        }
+
+        int[] columnSums = new int[width];
+        for (int y = Math.max(0, y0 - r); y < Math.min(height, y0 + r); y++) {
+            add(rowSums, (y - first) * width, columnSums, width, 1);
+        }
+        for (int y = y0; y < y1; y++) {
+            if (y + r < height) {
+                add(rowSums, (y + r - first) * width, columnSums, width, 1);
+            }
+            // The window of row y0 starts at first, so nothing leaves it on the first row
+            if (y - r - 1 >= first) {
+                add(rowSums, (y - r - 1 - first) * width, columnSums, width, -1);
+            }
+            int rows = Math.min(height - 1, y + r) - Math.max(0, y - r) + 1;
+            int row = (y - dTop) * width;
+            for (int x = 0; x < width; x++) {
+                d[row + x] = (byte) (columnSums[x] / (rows * columns[x]));
+            }
+        }
+    }
+
+    // Sums of the window [x - r, x + r] clipped to the row, for every x
+    private void horizontalSums(byte[] s, int from, int width, int[] sums, int to) {
+        int r = radius;
+        int sum = 0;
+        for (int x = 0; x < Math.min(width, r); x++) {
+            sum += s[from + x] & 0xFF;
+        }
+        for (int x = 0; x < width; x++) {
+            if (x + r < width) {
+                sum += s[from + x + r] & 0xFF;
+            }
+            if (x - r - 1 >= 0) {
+                sum -= s[from + x - r - 1] & 0xFF;
+            }
+            sums[to + x] = sum;
+        }
+    }
+
+    private static void add(int[] rowSums, int from, int[] columnSums, int width, int sign) {
+        if (sign > 0) {
+            for (int x = 0; x < width; x++) {
+                columnSums[x] += rowSums[from + x];
+            }
+        } else {
+            for (int x = 0; x < width; x++) {
+                columnSums[x] -= rowSums[from + x];
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.BandOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+// Median filter for gray images over a (2 * radius + 1)^2 window. Border pixels take
+// the median of the neighbours that fall inside the image (the upper one for an even
+// count).
+//
+// Uses the constant-time algorithm of Perreault and Hebert: one histogram per column
+// covering the window rows, slid down one row at a time, and a kernel histogram slid
+// across the row by adding the entering column and removing the leaving one. Both are
+// kept at two levels, 16 coarse bins of 16 fine bins each. The coarse level locates
+// the median bucket and only that bucket's fine bins are brought up to date, lazily,
+// so the work per pixel does not grow with the radius. The 3x3 window is cheaper
+// to sort directly and skip the histograms.
+public final class MedianFilterOp implements BandOp {
+
+    private static final int BINS = 256;
+    private static final int COARSE_BINS = 16;
+    private static final int MAX_SORTED_RADIUS = 1;
+
+    private final int radius;
+
+    public MedianFilterOp() {
+        this(1);
+    }
+
+    public MedianFilterOp(int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("Median radius must be at least 1");
+        }
+        this.radius = radius;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.requireGray(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] s = Rasters.bytes(in);
+        byte[] d = Rasters.bytes(out);
+        TileScheduler scheduler = TileScheduler.shared();
+        if (radius <= MAX_SORTED_RADIUS) {
+            scheduler.forEachBand(width, height, (y0, y1) -> sortBand(s, 0, d, 0, width, height, y0, y1));
+            return out;
+        }
+        int minRows = (height + scheduler.getParallelism() - 1) / scheduler.getParallelism();
+        scheduler.forEachBand(width, height, minRows, (y0, y1) -> filterBand(s, 0, d, 0, width, height, y0, y1));
+        return out;
+    }
+
+    @Override
+    public int getHaloRows() {
+        return radius;
+    }
+
+    @Override
+    public int getMinBandRows() {
+        // Every band builds width column histograms from 2 * radius + 1 rows first
+        return radius <= MAX_SORTED_RADIUS ? 1 : 32 * radius;
+    }
+
+    @Override
+    public void filterRows(byte[] src, int srcTop, byte[] dst, int dstTop, int width, int height, int y0, int y1) {
+        if (radius <= MAX_SORTED_RADIUS) {
+            sortBand(src, srcTop, dst, dstTop, width, height, y0, y1);
+        } else {
+            filterBand(src, srcTop, dst, dstTop, width, height, y0, y1);
+        }
+    }
+
+    private void sortBand(byte[] s, int sTop, byte[] d, int dTop, int width, int height, int y0, int y1) {
+        int r = radius;
+        int[] window = new int[(2 * r + 1) * (2 * r + 1)];
+        for (int y = y0; y < y1; y++) {
+            for (int x = 0; x < width; x++) {
+                int count = 0;
+                for (int ny = Math.max(0, y - r); ny <= Math.min(height - 1, y + r); ny++) {
+                    for (int nx = Math.max(0, x - r); nx <= Math.min(width - 1, x + r); nx++) {
+                        count = insert(window, count, s[(ny - sTop) * width + nx] & 0xFF);
+                    }
+                }
+                d[(y - dTop) * width + x] = (byte) window[count / 2];
+            }
+        }
+    }
+
+    // Insertion into the sorted prefix window[0..count), returns the new count
+    private static int insert(int[] window, int count, int value) {
+        int j = count;
+        while (j > 0 && window[j - 1] > value) {
+            window[j] = window[j - 1];
+            j--;
+        }
+        window[j] = value;
+        return count + 1;
+    }
+
+    private void filterBand(byte[] s, int sTop, byte[] d, int dTop, int width, int height, int y0, int y1) {
+        int r = radius;
+        int[] columnFine = new int[width * BINS];
+        int[] columnCoarse = new int[width * COARSE_BINS];
+        int[] kernelFine = new int[BINS];
+        int[] kernelCoarse = new int[COARSE_BINS];
+        // Column at which each fine bucket of the kernel histogram was last brought up to date
+        int[] updatedAt = new int[COARSE_BINS];
+
+        // Start with the window rows of y0 except the last, so the loop can slide them down
+        int first = Math.max(0, y0 - r);
+        for (int y = first; y <= Math.min(height - 1, y0 + r - 1); y++) {
+            addRow(s, (y - sTop) * width, width, columnFine, columnCoarse, 1);
+        }
+        for (int y = y0; y < y1; y++) {
+            if (y - r - 1 >= first) {
+                addRow(s, (y - r - 1 - sTop) * width, width, columnFine, columnCoarse, -1);
+            }
+            if (y + r < height) {
+                addRow(s, (y + r - sTop) * width, width, columnFine, columnCoarse, 1);
+            }
+            int rows = Math.min(height - 1, y + r) - Math.max(0, y - r) + 1;
+
+            Arrays.fill(kernelCoarse, 0);
+            Arrays.fill(updatedAt, Integer.MIN_VALUE / 2);
+            for (int x = 0; x < Math.min(width, r); x++) {
+                addColumn(columnCoarse, x * COARSE_BINS, kernelCoarse, 0, COARSE_BINS, 1);
+            }
+
+            int row = (y - dTop) * width;
+            for (int x = 0; x < width; x++) {
+                if (x + r < width) {
+                    addColumn(columnCoarse, (x + r) * COARSE_BINS, kernelCoarse, 0, COARSE_BINS, 1);
+                }
+                if (x - r - 1 >= 0) {
+                    addColumn(columnCoarse, (x - r - 1) * COARSE_BINS, kernelCoarse, 0, COARSE_BINS, -1);
+                }
+                int count = rows * (Math.min(width - 1, x + r) - Math.max(0, x - r) + 1);
+                int rank = count / 2;
+
+                int bucket = 0;
+                while (rank >= kernelCoarse[bucket]) {
+                    rank -= kernelCoarse[bucket];
+                    bucket++;
+                }
+                updateBucket(columnFine, kernelFine, updatedAt, bucket, x, width);
+
+                int value = bucket * COARSE_BINS;
+                while (rank >= kernelFine[value]) {
+                    rank -= kernelFine[value];
+                    value++;
+                }
+                d[row + x] = (byte) value;
+            }
+        }
+    }
+
+    // Brings the fine bins of one bucket from the window at column updatedAt[bucket]
+    // to the window at column x, rebuilding it when the two windows do not overlap
+    private void updateBucket(int[] columnFine, int[] kernelFine, int[] updatedAt, int bucket, int x, int width) {
+        int r = radius;
+        int offset = bucket * COARSE_BINS;
+        int last = updatedAt[bucket];
+        updatedAt[bucket] = x;
+        if (x - last > 2 * r + 1) {
+            Arrays.fill(kernelFine, offset, offset + COARSE_BINS, 0);
+            for (int column = Math.max(0, x - r); column <= Math.min(width - 1, x + r); column++) {
+                addColumn(columnFine, column * BINS + offset, kernelFine, offset, COARSE_BINS, 1);
+            }
+            return;
+        }
+        for (int p = last + 1; p <= x; p++) {
+            if (p + r < width) {
+                addColumn(columnFine, (p + r) * BINS + offset, kernelFine, offset, COARSE_BINS, 1);
+            }
+            if (p - r - 1 >= 0) {
+                addColumn(columnFine, (p - r - 1) * BINS + offset, kernelFine, offset, COARSE_BINS, -1);
+            }
+        }
+    }
+
+    private static void addRow(byte[] s, int row, int width, int[] columnFine, int[] columnCoarse, int sign) {
+        for (int x = 0; x < width; x++) {
+            int value = s[row + x] & 0xFF;
+            columnFine[x * BINS + value] += sign;
+            columnCoarse[x * COARSE_BINS + (value >> 4)] += sign;
+        }
+    }
+
+    private static void addColumn(int[] column, int from, int[] kernel, int to, int length, int sign) {
+        if (sign > 0) {
+            for (int i = 0; i < length; i++) {
+                kernel[to + i] += column[from + i];
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                kernel[to + i] -= column[from + i];
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.PointOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Inverts every color channel: c' = 255 - c. Alpha is kept.
+public final class NegativeOp implements PointOp {
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.packed(src);
+        BufferedImage out = new BufferedImage(in.getWidth(), in.getHeight(), in.getType());
+        int width = in.getWidth();
+        if (Rasters.isGray(in)) {
+            byte[] s = Rasters.bytes(in);
+            byte[] d = Rasters.bytes(out);
+            TileScheduler.shared().forEachBand(width, in.getHeight(), (y0, y1) -> {
+                for (int i = y0 * width, end = y1 * width; i < end; i++) {
+                    d[i] = (byte) ~s[i];
+                }
+            });
+        } else {
+            int[] s = Rasters.ints(in);
+            int[] d = Rasters.ints(out);
+            TileScheduler.shared().forEachBand(width, in.getHeight(),
+                    (y0, y1) -> apply(s, y0 * width, d, y0 * width, (y1 - y0) * width, y0 * width));
+        }
+        return out;
+    }
+
+    @Override
+    public PointOp fuse(PointOp next) {
+        if (next instanceof NegativeOp) {
+            return LutOp.identity();
+        }
+        return next instanceof LutOp ? LutOp.negative().then((LutOp) next) : null;
+    }
+
+    @Override
+    public int getOutputType(int inputType) {
+        return inputType;
+    }
+
+    @Override
+    public void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int index) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = src[srcOffset + i] ^ 0x00FFFFFF;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+
+// Adds random noise to every channel of every pixel:
+//  GAUSSIAN  v + n, with n normal with standard deviation amount (in gray levels)
+//  SPECKLE   v + v * n, with n normal with standard deviation amount
+//  POISSON   k / amount, with k a Poisson count of mean v * amount: amount is the
+//            number of photons per gray level, so smaller amounts are noisier
+// rounded and clamped to 0..255.
+//
+// The result of each model depends only on the input value, so for every value 0..255
+// the constructor works out the exact distribution of the output value and stores it
+// as an alias table (Walker's method). A pixel then costs 32 random bits, one lookup
+// and one comparison, with no logarithms or square roots.
+//
+// The pixels are split into fixed tiles, each with its own SplittableRandom split
+// from the seed in tile order, so the noise depends only on the seed and the image
+// size, not on how many threads run the tiles.
+public final class NoiseOp implements ImageOp {
+
+    public enum Model {
+        GAUSSIAN,
+        SPECKLE,
+        POISSON
+    }
+
+    // Pixels per tile, each tile with its own generator
+    static final int TILE_PIXELS = 1 << 16;
+
+    // Alias table probabilities are in 1/2^24, leaving the top 8 of 32 bits for the column
+    private static final int PROBABILITY_BITS = 24;
+    private static final int ONE = 1 << PROBABILITY_BITS;
+    private static final int VALUES = 256;
+
+    interface TileKernel {
+        // Processes pixels [from, to) with the tile's generator
+        void run(SplittableRandom random, int from, int to);
+    }
+
+    private final Model model;
+    private final double amount;
+    private final Long seed;
+    // For input value v and column c, at v * 256 + c: keep c when the low 24 bits of the
+    // draw are below thresholds, otherwise output aliases
+    private final int[] thresholds = new int[VALUES * VALUES];
+    private final byte[] aliases = new byte[VALUES * VALUES];
+
+    public NoiseOp(Model model, double amount) {
+        this(model, amount, null);
+    }
+
+    // The same seed gives the same noise on every image of the same size
+    public NoiseOp(Model model, double amount, long seed) {
+        this(model, amount, Long.valueOf(seed));
+    }
+
+    private NoiseOp(Model model, double amount, Long seed) {
+        if (model == Model.POISSON ? !(amount > 0) : !(amount >= 0)) {
+            throw new IllegalArgumentException(model == Model.POISSON ? "Photons per gray level must be positive"
+                    : "Noise standard deviation must not be negative");
+        }
+        if (Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Noise amount must be finite");
+        }
+        this.model = model;
+        this.amount = amount;
+        this.seed = seed;
+        for (int v = 0; v < VALUES; v++) {
+            buildAlias(distribution(v), v * VALUES);
+        }
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        SplittableRandom root = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        if (Rasters.isGrayscale(src)) {
+            BufferedImage in = Rasters.requireGray(src);
+            BufferedImage out = new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            byte[] s = Rasters.bytes(in);
+            byte[] d = Rasters.bytes(out);
+            forEachTile(s.length, root, (random, from, to) -> {
+                for (int i = from; i < to; i++) {
+                    d[i] = (byte) sample(s[i] & 0xFF, random.nextInt());
+                }
+            });
+            return out;
+        }
+        BufferedImage in = Rasters.toInt(src);
+        BufferedImage out = Rasters.createCompatible(in, in.getWidth(), in.getHeight());
+        int[] s = Rasters.ints(in);
+        int[] d = Rasters.ints(out);
+        forEachTile(s.length, root, (random, from, to) -> {
+            for (int i = from; i < to; i++) {
+                int p = s[i];
+                int red = sample(p >> 16 & 0xFF, random.nextInt());
+                int green = sample(p >> 8 & 0xFF, random.nextInt());
+                int blue = sample(p & 0xFF, random.nextInt());
+                d[i] = p & 0xFF000000 | red << 16 | green << 8 | blue;
+            }
+        });
+        return out;
+    }
+
+    // One draw from the output distribution of value v
+    private int sample(int v, int bits) {
+        int column = bits >>> PROBABILITY_BITS;
+        int i = v << 8 | column;
+        return (bits & (ONE - 1)) < thresholds[i] ? column : aliases[i] & 0xFF;
+    }
+
+    // Runs kernel over [0, length) in tiles of TILE_PIXELS, in parallel. Tile t gets the
+    // t-th generator split from root, so the draws do not depend on the threads.
+    static void forEachTile(int length, SplittableRandom root, TileKernel kernel) {
+        int tiles = (length + TILE_PIXELS - 1) / TILE_PIXELS;
+        SplittableRandom[] generators = new SplittableRandom[tiles];
+        for (int t = 0; t < tiles; t++) {
+            generators[t] = root.split();
+        }
+        TileScheduler.shared().forEachBand(TILE_PIXELS, tiles, 1, (t0, t1) -> {
+            for (int t = t0; t < t1; t++) {
+                kernel.run(generators[t], t * TILE_PIXELS, Math.min(length, (t + 1) * TILE_PIXELS));
+            }
+        });
+    }
+
+    // Probability of each output value for input value v
+    private double[] distribution(int v) {
+        double[] p = new double[VALUES];
+        if (model == Model.POISSON) {
+            double mean = v * amount;
+            if (mean == 0) {
+                p[0] = 1;
+                return p;
+            }
+            // Counts beyond 12 standard deviations of the mean are negligible
+            double spread = 12 * Math.sqrt(mean) + 20;
+            long first = (long) Math.max(0, Math.floor(mean - spread));
+            long last = (long) Math.ceil(mean + spread);
+            double logMean = Math.log(mean);
+            double total = 0;
+            for (long k = first; k <= last; k++) {
+                double q = Math.exp(k * logMean - mean - logFactorial(k));
+                int out = (int) Math.max(0, Math.min(VALUES - 1, Math.round(k / amount)));
+                p[out] += q;
+                total += q;
+            }
+            for (int o = 0; o < VALUES; o++) {
+                p[o] /= total;
+            }
+            return p;
+        }
+        double sigma = model == Model.GAUSSIAN ? amount : amount * v;
+        if (sigma == 0) {
+            p[v] = 1;
+            return p;
+        }
+        double total = 0;
+        // Output o collects v + noise in [o - 0.5, o + 0.5); 0 and 255 also take the tails
+        for (int o = 0; o < VALUES; o++) {
+            double low = o == 0 ? Double.NEGATIVE_INFINITY : (o - 0.5 - v) / sigma;
+            double high = o == VALUES - 1 ? Double.POSITIVE_INFINITY : (o + 0.5 - v) / sigma;
+            // Upper tails are measured from above, where the CDF has no precision left
+            p[o] = Math.max(0, low >= 0 ? upperTail(low) - upperTail(high) : upperTail(-high) - upperTail(-low));
+            total += p[o];
+        }
+        for (int o = 0; o < VALUES; o++) {
+            p[o] /= total;
+        }
+        return p;
+    }
+
+    // Vose's alias method: splits the 256 probabilities into 256 columns of equal weight,
+    // each holding at most two outcomes, the column itself and its alias
+    private void buildAlias(double[] p, int offset) {
+        double[] scaled = new double[VALUES];
+        int[] small = new int[VALUES];
+        int[] large = new int[VALUES];
+        int smalls = 0;
+        int larges = 0;
+        for (int c = 0; c < VALUES; c++) {
+            scaled[c] = p[c] * VALUES;
+            if (scaled[c] < 1) {
+                small[smalls++] = c;
+            } else {
+                large[larges++] = c;
+            }
+        }
+        while (smalls > 0 && larges > 0) {
+            int s = small[--smalls];
+            int l = large[larges - 1];
+            thresholds[offset + s] = (int) Math.round(scaled[s] * ONE);
+            aliases[offset + s] = (byte) l;
+            scaled[l] -= 1 - scaled[s];
+            if (scaled[l] < 1) {
+                larges--;
+                small[smalls++] = l;
+            }
+        }
+        // What is left is 1 up to rounding
+        while (larges > 0) {
+            int l = large[--larges];
+            thresholds[offset + l] = ONE;
+            aliases[offset + l] = (byte) l;
+        }
+        while (smalls > 0) {
+            int s = small[--smalls];
+            thresholds[offset + s] = ONE;
+            aliases[offset + s] = (byte) s;
+        }
+    }
+
+    // Probability that a standard normal value is at least x
+    private static double upperTail(double x) {
+        if (x == Double.POSITIVE_INFINITY) {
+            return 0;
+        }
+        if (x == Double.NEGATIVE_INFINITY) {
+            return 1;
+        }
+        return 0.5 * erfc(x / Math.sqrt(2));
+    }
+
+    // Complementary error function, with a relative error below 1.2e-7 (Chebyshev
+    // fit from Numerical Recipes)
+    private static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? r : 2 - r;
+    }
+
+    // ln(k!), summed for small k and from Stirling's series above
+    private static double logFactorial(long k) {
+        if (k < 20) {
+            double sum = 0;
+            for (int i = 2; i <= k; i++) {
+                sum += Math.log(i);
+            }
+            return sum;
+        }
+        double n = k;
+        return n * Math.log(n) - n + 0.5 * Math.log(2 * Math.PI * n) + 1 / (12 * n) - 1 / (360 * n * n * n);
+    }
+}
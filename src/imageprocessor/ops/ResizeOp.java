@@ -0,0 +1,199 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Resizes the image to a new width and height. The filter is separable: each output
+// column and each output row gets a table of source taps and fixed-point weights,
+// computed once per image, and rows are resampled horizontally and then vertically.
+// When shrinking, the filter is widened by the reduction factor so that every source
+// pixel contributes (as with area averaging) instead of being skipped over.
+// Output rows are processed in parallel bands, a few rows at a time so that the
+// horizontally resampled rows stay small.
+public final class ResizeOp implements ImageOp {
+
+    // Weights of each output pixel sum to 1 << WEIGHT_BITS
+    private static final int WEIGHT_BITS = 14;
+    // Extra precision kept between the horizontal and vertical passes
+    private static final int ROW_BITS = 6;
+    // Output rows resampled together within a band
+    private static final int CHUNK_ROWS = 32;
+
+    private final int width;
+    private final int height;
+    private final double factor;
+    private final Interpolation interpolation;
+
+    public ResizeOp(int width, int height, Interpolation interpolation) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.factor = 0;
+        this.interpolation = interpolation;
+    }
+
+    // Scales both sides by factor, e.g. 2 to zoom in and 0.5 to zoom out
+    public ResizeOp(double factor, Interpolation interpolation) {
+        if (!(factor > 0) || Double.isInfinite(factor)) {
+            throw new IllegalArgumentException("Scale factor must be positive");
+        }
+        this.width = 0;
+        this.height = 0;
+        this.factor = factor;
+        this.interpolation = interpolation;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.packed(src);
+        int srcWidth = in.getWidth();
+        int srcHeight = in.getHeight();
+        int outWidth = width > 0 ? width : (int) Math.max(1, Math.round(srcWidth * factor));
+        int outHeight = height > 0 ? height : (int) Math.max(1, Math.round(srcHeight * factor));
+        if ((long) outWidth * outHeight > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The resized image is too large");
+        }
+        Taps columns = new Taps(srcWidth, outWidth, interpolation);
+        Taps rows = new Taps(srcHeight, outHeight, interpolation);
+
+        BufferedImage out = new BufferedImage(outWidth, outHeight, in.getType());
+        boolean gray = Rasters.isGray(in);
+        int channels = gray ? 1 : 4;
+        int[] si = gray ? null : Rasters.ints(in);
+        byte[] sb = gray ? Rasters.bytes(in) : null;
+        int[] di = gray ? null : Rasters.ints(out);
+        byte[] db = gray ? Rasters.bytes(out) : null;
+        TileScheduler.shared().forEachBand(outWidth, outHeight, (y0, y1) -> {
+            int[] horizontal = null;
+            for (int c0 = y0; c0 < y1; c0 += CHUNK_ROWS) {
+                int c1 = Math.min(y1, c0 + CHUNK_ROWS);
+                // Source rows the chunk reads; taps are clamped and increasing
+                int first = rows.index[c0 * rows.count];
+                int last = rows.index[c1 * rows.count - 1];
+                int size = (last - first + 1) * outWidth * channels;
+                if (horizontal == null || horizontal.length < size) {
+                    horizontal = new int[size];
+                }
+                for (int sy = first; sy <= last; sy++) {
+                    resampleRow(si, sb, sy * srcWidth, horizontal, (sy - first) * outWidth * channels, columns, outWidth, channels);
+                }
+                for (int y = c0; y < c1; y++) {
+                    resampleColumn(horizontal, first, rows, y, di, db, y * outWidth, outWidth, channels);
+                }
+            }
+        });
+        return out;
+    }
+
+    // One source row resampled to the output width, keeping ROW_BITS of fraction
+    private static void resampleRow(int[] si, byte[] sb, int srcRow, int[] dst, int dstOff,
+            Taps taps, int outWidth, int channels) {
+        int n = taps.count;
+        int round = 1 << (WEIGHT_BITS - ROW_BITS - 1);
+        int bits = WEIGHT_BITS - ROW_BITS;
+        for (int x = 0, t = 0, d = dstOff; x < outWidth; x++, t += n, d += channels) {
+            if (sb != null) {
+                int sum = round;
+                for (int k = 0; k < n; k++) {
+                    sum += taps.weight[t + k] * (sb[srcRow + taps.index[t + k]] & 0xFF);
+                }
+                dst[d] = sum >> bits;
+            } else {
+                // Each source pixel is read once for all four channels
+                int b = round, g = round, r = round, a = round;
+                for (int k = 0; k < n; k++) {
+                    int p = si[srcRow + taps.index[t + k]];
+                    int w = taps.weight[t + k];
+                    b += w * (p & 0xFF);
+                    g += w * (p >> 8 & 0xFF);
+                    r += w * (p >> 16 & 0xFF);
+                    a += w * (p >>> 24);
+                }
+                dst[d] = b >> bits;
+                dst[d + 1] = g >> bits;
+                dst[d + 2] = r >> bits;
+                dst[d + 3] = a >> bits;
+            }
+        }
+    }
+
+    // Output row y from the horizontally resampled rows starting at source row first
+    private static void resampleColumn(int[] horizontal, int first, Taps taps, int y,
+            int[] di, byte[] db, int dstRow, int outWidth, int channels) {
+        int n = taps.count;
+        int t = y * n;
+        int bits = WEIGHT_BITS + ROW_BITS;
+        int stride = outWidth * channels;
+        for (int x = 0; x < outWidth; x++) {
+            int pixel = 0;
+            for (int c = 0, shift = 0; c < channels; c++, shift += 8) {
+                int sum = 1 << (bits - 1);
+                for (int k = 0; k < n; k++) {
+                    sum += taps.weight[t + k] * horizontal[(taps.index[t + k] - first) * stride + x * channels + c];
+                }
+                pixel |= Math.max(0, Math.min(255, sum >> bits)) << shift;
+            }
+            if (di != null) {
+                di[dstRow + x] = pixel;
+            } else {
+                db[dstRow + x] = (byte) pixel;
+            }
+        }
+    }
+
+    // For every output position along one axis, count source indices (clamped to the
+    // image) and their fixed-point weights
+    private static final class Taps {
+        final int count;
+        final int[] index;
+        final int[] weight;
+
+        Taps(int srcSize, int dstSize, Interpolation interpolation) {
+            double scale = (double) dstSize / srcSize;
+            // Shrinking stretches the filter so that it covers every source pixel
+            double stretch = Math.min(1, scale);
+            double radius = interpolation == Interpolation.BICUBIC ? 2 : 1;
+            double support = radius / stretch;
+            count = interpolation == Interpolation.NEAREST ? 1 : (int) Math.ceil(2 * support) + 1;
+            index = new int[dstSize * count];
+            weight = new int[dstSize * count];
+            double[] exact = new double[count];
+            for (int i = 0; i < dstSize; i++) {
+                // Source coordinate of the output pixel center, with source pixel centers on integers
+                double center = (i + 0.5) / scale - 0.5;
+                int t = i * count;
+                if (interpolation == Interpolation.NEAREST) {
+                    index[t] = clamp((int) Math.floor(center + 0.5), srcSize);
+                    weight[t] = 1 << WEIGHT_BITS;
+                    continue;
+                }
+                int left = (int) Math.floor(center - support) + 1;
+                double total = 0;
+                for (int k = 0; k < count; k++) {
+                    double d = (left + k - center) * stretch;
+                    exact[k] = interpolation == Interpolation.BICUBIC ? Interpolation.cubic(d) : Math.max(0, 1 - Math.abs(d));
+                    total += exact[k];
+                }
+                int sum = 0;
+                int largest = 0;
+                for (int k = 0; k < count; k++) {
+                    index[t + k] = clamp(left + k, srcSize);
+                    weight[t + k] = (int) Math.round(exact[k] / total * (1 << WEIGHT_BITS));
+                    sum += weight[t + k];
+                    if (weight[t + k] > weight[t + largest]) {
+                        largest = k;
+                    }
+                }
+                weight[t + largest] += (1 << WEIGHT_BITS) - sum;
+            }
+        }
+
+        private static int clamp(int i, int size) {
+            return Math.max(0, Math.min(size - 1, i));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.BandOp;
+import imageprocessor.core.BorderMode;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Roberts cross edge detector for gray images:
+//  gx = p(x, y) - p(x + 1, y + 1), gy = p(x + 1, y) - p(x, y + 1), g = min(255, |(gx, gy)|)
+// The neighbours of the last row and column are read according to the BorderMode.
+public final class RobertsEdgeOp implements BandOp {
+
+    private final Magnitude magnitude;
+    private final BorderMode border;
+
+    public RobertsEdgeOp() {
+        this(Magnitude.L2, BorderMode.REFLECT);
+    }
+
+    public RobertsEdgeOp(Magnitude magnitude, BorderMode border) {
+        this.magnitude = magnitude;
+        this.border = border;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.requireGray(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] s = Rasters.bytes(in);
+        byte[] d = Rasters.bytes(out);
+        TileScheduler.shared().forEachBand(width, height, (y0, y1) -> filterRows(s, 0, d, 0, width, height, y0, y1));
+        return out;
+    }
+
+    @Override
+    public int getHaloRows() {
+        return 1;
+    }
+
+    @Override
+    public boolean isStreamable() {
+        return border != BorderMode.WRAP;
+    }
+
+    @Override
+    public void filterRows(byte[] src, int srcTop, byte[] dst, int dstTop, int width, int height, int y0, int y1) {
+        byte[] zeros = new byte[width];
+        int last = border.index(width, width);
+        for (int y = y0; y < y1; y++) {
+            int i = (y - srcTop) * width;
+            int o = (y - dstTop) * width;
+            int down = border.index(y + 1, height);
+            byte[] below = down < 0 ? zeros : src;
+            int j = down < 0 ? 0 : (down - srcTop) * width;
+            for (int x = 0; x < width - 1; x++) {
+                int gx = (src[i + x] & 0xFF) - (below[j + x + 1] & 0xFF);
+                int gy = (src[i + x + 1] & 0xFF) - (below[j + x] & 0xFF);
+                dst[o + x] = (byte) magnitude.of(gx, gy);
+            }
+            // The last column reads its right neighbours through the border mode
+            int x = width - 1;
+            int right = last < 0 ? 0 : src[i + last] & 0xFF;
+            int belowRight = last < 0 ? 0 : below[j + last] & 0xFF;
+            int gx = (src[i + x] & 0xFF) - belowRight;
+            int gy = right - (below[j + x] & 0xFF);
+            dst[o + x] = (byte) magnitude.of(gx, gy);
+        }
+    }
+}
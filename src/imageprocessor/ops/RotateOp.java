@@ -0,0 +1,93 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.InPlaceOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Rotates clockwise by a multiple of 90 degrees. Quarter turns swap width and height.
+//   90: (x, y) -> (height - y - 1, x)
+//  180: (x, y) -> (width - x - 1, height - y - 1)
+//  270: (x, y) -> (y, width - x - 1)
+// Pixels are moved as raw array elements (see Rasters.pixelStride), so the image type
+// is kept; other layouts are packed first.
+//
+// Quarter turns are blocked transposes: the image is copied in TILE x TILE squares, so
+// the source lines being read and the destination lines being written all stay in
+// cache (and in the TLB) for the whole square. 180 degrees is a flip of both axes.
+public final class RotateOp implements InPlaceOp {
+
+    private static final int TILE = 64;
+
+    private final int quarterTurns;
+
+    public RotateOp(int degrees) {
+        if (degrees % 90 != 0) {
+            throw new IllegalArgumentException("Rotation angle must be a multiple of 90 degrees");
+        }
+        this.quarterTurns = Math.floorMod(degrees / 90, 4);
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        if (quarterTurns == 0 || quarterTurns == 2) {
+            return new FlipOp(quarterTurns == 2, quarterTurns == 2).filter(src);
+        }
+        BufferedImage in = Rasters.pixelStride(src) > 0 ? src : Rasters.packed(src);
+        int width = in.getWidth();
+        int height = in.getHeight();
+        int n = Rasters.pixelStride(in);
+        BufferedImage out = Rasters.createLike(in, height, width);
+        Object s = Rasters.data(in);
+        Object d = Rasters.data(out);
+        boolean clockwise = quarterTurns == 1;
+        // Bands of destination rows, i.e. of source columns
+        TileScheduler.shared().forEachBand(height, width, TILE, (x0, x1) -> {
+            for (int tx = x0; tx < x1; tx += TILE) {
+                int tx1 = Math.min(x1, tx + TILE);
+                for (int ty = 0; ty < height; ty += TILE) {
+                    int ty1 = Math.min(height, ty + TILE);
+                    for (int x = tx; x < tx1; x++) {
+                        int row = (clockwise ? x : width - x - 1) * height;
+                        if (clockwise) {
+                            copyColumn(s, x, width, ty, ty1, d, row + height - 1 - ty, -1, n);
+                        } else {
+                            copyColumn(s, x, width, ty, ty1, d, row + ty, 1, n);
+                        }
+                    }
+                }
+            }
+        });
+        return out;
+    }
+
+    @Override
+    public boolean filterInPlace(BufferedImage image) {
+        if (quarterTurns == 1 || quarterTurns == 3) {
+            return false;
+        }
+        return quarterTurns == 0 || new FlipOp(true, true).filterInPlace(image);
+    }
+
+    // Copies pixels (x, y0) .. (x, y1 - 1) of the source to consecutive destination
+    // pixels starting at pixel index to, walking forwards (step 1) or backwards (-1)
+    private static void copyColumn(Object s, int x, int width, int y0, int y1, Object d, int to, int step, int n) {
+        if (n == 1 && s instanceof int[]) {
+            int[] src = (int[]) s;
+            int[] dst = (int[]) d;
+            for (int y = y0, i = y0 * width + x; y < y1; y++, i += width, to += step) {
+                dst[to] = src[i];
+            }
+        } else if (n == 1 && s instanceof byte[]) {
+            byte[] src = (byte[]) s;
+            byte[] dst = (byte[]) d;
+            for (int y = y0, i = y0 * width + x; y < y1; y++, i += width, to += step) {
+                dst[to] = src[i];
+            }
+        } else {
+            for (int y = y0, i = y0 * width + x; y < y1; y++, i += width, to += step) {
+                System.arraycopy(s, i * n, d, to * n, n);
+            }
+        }
+    }
+}
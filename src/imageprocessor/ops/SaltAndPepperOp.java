@@ -0,0 +1,70 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.Rasters;
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+
+// Corrupts a fraction of the pixels of a gray image: each chosen pixel becomes
+// 255 if it was brighter than 127, or 0 otherwise.
+//
+// Instead of a draw per pixel, the gaps between corrupted pixels are drawn from the
+// geometric distribution, so only about density * pixels draws are made. The image
+// is split into fixed tiles, each with its own generator split from the seed (see
+// NoiseOp.forEachTile), so the result depends only on the seed, not on the threads.
+public final class SaltAndPepperOp implements ImageOp {
+
+    public static final double DEFAULT_DENSITY = 0.05;
+
+    private final double density;
+    // null for a new seed on every call
+    private final Long seed;
+
+    public SaltAndPepperOp() {
+        this(DEFAULT_DENSITY);
+    }
+
+    public SaltAndPepperOp(double density) {
+        this(density, null);
+    }
+
+    // The same seed corrupts the same pixels of every image of the same size
+    public SaltAndPepperOp(double density, long seed) {
+        this(density, Long.valueOf(seed));
+    }
+
+    private SaltAndPepperOp(double density, Long seed) {
+        if (!(density >= 0 && density <= 1)) {
+            throw new IllegalArgumentException("Noise density is outside the range 0..1");
+        }
+        this.density = density;
+        this.seed = seed;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.requireGray(src);
+        BufferedImage out = new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        byte[] s = Rasters.bytes(in);
+        byte[] d = Rasters.bytes(out);
+        // log(1 - density), for turning a uniform draw into a geometric gap
+        double logMiss = Math.log1p(-density);
+        NoiseOp.forEachTile(s.length, seed == null ? new SplittableRandom() : new SplittableRandom(seed), (random, from, to) -> {
+            System.arraycopy(s, from, d, from, to - from);
+            if (density == 0) {
+                return;
+            }
+            int i = from - 1;
+            while (true) {
+                // Pixels skipped before the next corrupted one; 1 - nextDouble() is in (0, 1]
+                double gap = density == 1 ? 0 : Math.floor(Math.log(1 - random.nextDouble()) / logMiss);
+                if (gap >= to - i - 1) {
+                    break;
+                }
+                i += 1 + (int) gap;
+                d[i] = (byte) ((s[i] & 0xFF) > 127 ? 255 : 0);
+            }
+        });
+        return out;
+    }
+}
@@ -0,0 +1,42 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.ImageOp;
+import java.awt.image.BufferedImage;
+
+// Histogram expansion (input cropping): the luminance range actually used by the
+// image is stretched to 0..255. A fraction of the darkest and of the brightest pixels
+// may be clipped, so that a few outliers (dust, specular highlights) do not hold the
+// range open. The mapping is a LutOp.levels table applied to every channel.
+//
+// The opposite, histogram compression (output cropping), needs no histogram and is
+// LutOp.levels(0, 255, outLow, outHigh).
+public final class StretchOp implements ImageOp {
+
+    public static final double DEFAULT_CLIP = 0.005;
+
+    private final double clip;
+
+    public StretchOp() {
+        this(DEFAULT_CLIP);
+    }
+
+    // clip: fraction of the pixels to saturate at each end, below 0.5
+    public StretchOp(double clip) {
+        if (!(clip >= 0 && clip < 0.5)) {
+            throw new IllegalArgumentException("Clip fraction must be in [0, 0.5)");
+        }
+        this.clip = clip;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        Histogram histogram = Histogram.of(src);
+        int low = histogram.luminancePercentile(clip);
+        int high = histogram.luminancePercentile(1 - clip);
+        if (low >= high) {
+            // A single value: nothing to stretch
+            return LutOp.identity().filter(src);
+        }
+        return LutOp.levels(low, high, 0, 255).filter(src);
+    }
+}
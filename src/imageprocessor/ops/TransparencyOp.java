@@ -0,0 +1,45 @@
+package imageprocessor.ops;
+
+import imageprocessor.core.PointOp;
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+
+// Sets a uniform alpha on every pixel. The level goes from 0 (opaque) to 100
+// (fully transparent), matching the transparency slider.
+public final class TransparencyOp implements PointOp {
+
+    private final int level;
+
+    public TransparencyOp(int level) {
+        if (level < 0 || level > 100) {
+            throw new IllegalArgumentException("Transparency level is outside the range 0..100");
+        }
+        this.level = level;
+    }
+
+    @Override
+    public BufferedImage filter(BufferedImage src) {
+        BufferedImage in = Rasters.toInt(src);
+        BufferedImage out = new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        int[] s = Rasters.ints(in);
+        int[] d = Rasters.ints(out);
+        int width = in.getWidth();
+        TileScheduler.shared().forEachBand(width, in.getHeight(),
+                (y0, y1) -> apply(s, y0 * width, d, y0 * width, (y1 - y0) * width, y0 * width));
+        return out;
+    }
+
+    @Override
+    public int getOutputType(int inputType) {
+        return BufferedImage.TYPE_INT_ARGB;
+    }
+
+    @Override
+    public void apply(int[] src, int srcOffset, int[] dst, int dstOffset, int length, int index) {
+        int alpha = (int) ((1.0 - (double) level / 100) * 255) << 24;
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = alpha | (src[srcOffset + i] & 0x00FFFFFF);
+        }
+    }
+}
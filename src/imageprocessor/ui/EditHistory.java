@@ -0,0 +1,648 @@
+package imageprocessor.ui;
+
+import imageprocessor.core.Rasters;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Undo and redo for an image window, keeping only the tiles each edit changed.
+//
+// Every state is a grid of TILE_SIZE x TILE_SIZE tiles holding the raw pixel elements.
+// Recording an edit compares the new image with the current state tile by tile and
+// shares the tiles that did not change, so an edit of a small area of a 100 MP image
+// stores a few tiles instead of the whole image. Tiles count the states that use them
+// and are freed with the last one.
+//
+// When the tiles in memory take more than the budget, the tiles used only by other
+// states than the current one are deflated, those of the states farthest from the
+// current one first. If that is not enough they are written to a spill file, when a
+// directory was given, and then whole states are forgotten, the oldest first. The
+// ranges of the spill file whose tiles were freed are reused for later tiles.
+//
+// undo() and redo() return a new image, which the history never writes to again, so
+// callers may keep it. The tiles the step did not change are copied from the image of
+// the state before the step (the last image recorded or returned, which nobody writes
+// to either), so only the changed tiles are decoded or read back from the spill file.
+// Not thread-safe: ImageWorker only calls it from its worker thread.
+public final class EditHistory {
+
+    public static final int TILE_SIZE = 256;
+
+    private final long memoryBudget;
+    private final File spillDirectory;
+
+    private final List<State> states = new ArrayList<>();
+    private int current = -1;
+    // Tiles that differ between the current state and the one before the last step
+    private BitSet changed;
+    // Bytes of the live tiles held in memory, as pixels or deflated
+    private long residentBytes;
+
+    private FileChannel spill;
+    private long spillLength;
+    private boolean spillFailed;
+    // Unused ranges of the spill file below spillLength, by offset, never adjacent
+    private final TreeMap<Long, Integer> spillGaps = new TreeMap<>();
+
+    // The image of the state last recorded or returned, and that state
+    private BufferedImage shown;
+    private State shownState;
+
+    // spillDirectory may be null to forget old states instead of writing them to disk
+    public EditHistory(long memoryBudget, File spillDirectory) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("Memory budget must not be negative");
+        }
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+    }
+
+    // Forgets every state and starts over from image, e.g. a newly opened file
+    public void reset(BufferedImage image) {
+        State state = capture(image, null);
+        for (State old : states) {
+            release(old);
+        }
+        states.clear();
+        if (spill != null) {
+            try {
+                spill.truncate(0);
+                spillLength = 0;
+                spillGaps.clear();
+            } catch (IOException e) {
+                closeSpill();
+            }
+        }
+        add(state);
+        changed = null;
+        show(image, state);
+    }
+
+    // Records image as the state after the current one, dropping the undone states
+    public void record(BufferedImage image) {
+        if (current < 0) {
+            reset(image);
+            return;
+        }
+        State previous = states.get(current);
+        State state = capture(image, previous);
+        changed = changedTiles(previous, state);
+        dropRedo();
+        add(state);
+        show(image, state);
+    }
+
+    // Replaces the current state with image, dropping the undone states: the edit goes on
+    // as one undo step, e.g. while a slider is dragged
+    public void replace(BufferedImage image) {
+        if (current < 0) {
+            reset(image);
+            return;
+        }
+        State previous = states.get(current);
+        State state = capture(image, previous);
+        changed = changedTiles(previous, state);
+        dropRedo();
+        // Shared tiles are retained before the previous state lets go of them
+        retain(state);
+        release(previous);
+        states.set(current, state);
+        show(image, state);
+        enforceBudget();
+    }
+
+    private void dropRedo() {
+        while (states.size() > current + 1) {
+            release(states.remove(states.size() - 1));
+        }
+    }
+
+    public boolean canUndo() {
+        return current > 0;
+    }
+
+    public boolean canRedo() {
+        return current >= 0 && current < states.size() - 1;
+    }
+
+    // Steps back one state and returns its image
+    public BufferedImage undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Nothing to undo");
+        }
+        BufferedImage image = materialize(states.get(current - 1));
+        changed = changedTiles(states.get(current), states.get(current - 1));
+        current--;
+        enforceBudget();
+        return image;
+    }
+
+    // Steps forward one state and returns its image
+    public BufferedImage redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Nothing to redo");
+        }
+        BufferedImage image = materialize(states.get(current + 1));
+        changed = changedTiles(states.get(current), states.get(current + 1));
+        current++;
+        enforceBudget();
+        return image;
+    }
+
+    // The tiles, TILE_SIZE wide and high in row-major order, that differ between the image
+    // of the current state and the image of the state before the last reset(), record(),
+    // undo() or redo(), or null when the whole image may differ. Viewers redraw only these.
+    public BitSet getChangedTiles() {
+        return changed == null ? null : (BitSet) changed.clone();
+    }
+
+    // Bytes the tiles of all states take in memory, not counting the images returned
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    // Bytes of the spill file in use by live tiles
+    public long getSpilledBytes() {
+        long gaps = 0;
+        for (int length : spillGaps.values()) {
+            gaps += length;
+        }
+        return spillLength - gaps;
+    }
+
+    private void add(State state) {
+        retain(state);
+        states.add(state);
+        current = states.size() - 1;
+        enforceBudget();
+    }
+
+    private void retain(State state) {
+        for (Tile tile : state.tiles) {
+            if (tile.references++ == 0) {
+                residentBytes += tile.residentBytes();
+            }
+        }
+    }
+
+    private void release(State state) {
+        for (Tile tile : state.tiles) {
+            if (--tile.references == 0) {
+                residentBytes -= tile.residentBytes();
+                if (tile.pixels == null && tile.packed == null && tile.spillBytes > 0) {
+                    freeSpill(tile.spillOffset, tile.spillBytes);
+                }
+                tile.pixels = null;
+                tile.packed = null;
+                tile.spillBytes = 0;
+            }
+        }
+    }
+
+    private void show(BufferedImage image, State state) {
+        shown = Rasters.pixelStride(image) > 0 ? image : Rasters.packed(image);
+        shownState = state;
+    }
+
+    private static BitSet changedTiles(State from, State to) {
+        if (!from.sameLayout(to)) {
+            return null;
+        }
+        BitSet tiles = new BitSet(to.tiles.length);
+        for (int t = 0; t < to.tiles.length; t++) {
+            if (from.tiles[t] != to.tiles[t]) {
+                tiles.set(t);
+            }
+        }
+        return tiles;
+    }
+
+    // Splits image into tiles, sharing those equal to the tiles of previous
+    private State capture(BufferedImage image, State previous) {
+        BufferedImage stored = Rasters.pixelStride(image) > 0 ? image : Rasters.packed(image);
+        State state = new State(stored);
+        boolean comparable = previous != null && previous.sameLayout(state);
+        Object data = Rasters.data(stored);
+        TileScheduler.shared().forEachBand(state.width * TILE_SIZE, state.rows, 1, (r0, r1) -> {
+            for (int t = r0 * state.columns; t < r1 * state.columns; t++) {
+                if (comparable && state.regionEquals(t, data, pixels(previous.tiles[t]))) {
+                    state.tiles[t] = previous.tiles[t];
+                } else {
+                    Object pixels = Array.newInstance(data.getClass().getComponentType(), state.tileLength(t));
+                    state.copyTile(t, data, pixels, false);
+                    state.tiles[t] = new Tile(pixels);
+                }
+            }
+        });
+        return state;
+    }
+
+    // A new image of state: the tiles it shares with the shown state are copied from the
+    // shown image, the others decoded
+    private BufferedImage materialize(State state) {
+        BufferedImage image = Rasters.createLike(state.prototype, state.width, state.height);
+        boolean comparable = shownState != null && shownState.sameLayout(state);
+        State from = shownState;
+        Object source = comparable ? Rasters.data(shown) : null;
+        Object data = Rasters.data(image);
+        TileScheduler.shared().forEachBand(state.width * TILE_SIZE, state.rows, 1, (r0, r1) -> {
+            for (int t = r0 * state.columns; t < r1 * state.columns; t++) {
+                if (comparable && from.tiles[t] == state.tiles[t]) {
+                    state.copyRegion(t, source, data);
+                } else {
+                    state.copyTile(t, data, pixels(state.tiles[t]), true);
+                }
+            }
+        });
+        show(image, state);
+        return image;
+    }
+
+    // The pixels of a tile, decoded into a new array when it is packed or spilled
+    private Object pixels(Tile tile) {
+        Object pixels = tile.pixels;
+        if (pixels != null) {
+            return pixels;
+        }
+        byte[] raw = tile.packed != null ? tile.packed : readSpill(tile);
+        if (tile.deflated) {
+            raw = inflate(raw, tile.length * tile.elementBytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(raw);
+        switch (tile.elementBytes) {
+            case 4:
+                int[] ints = new int[tile.length];
+                buffer.asIntBuffer().get(ints);
+                return ints;
+            case 2:
+                short[] shorts = new short[tile.length];
+                buffer.asShortBuffer().get(shorts);
+                return shorts;
+            default:
+                return raw;
+        }
+    }
+
+    private void enforceBudget() {
+        if (residentBytes <= memoryBudget) {
+            return;
+        }
+        // Tiles the current state does not use, farthest state first
+        Set<Tile> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        seen.addAll(Arrays.asList(states.get(current).tiles));
+        List<Tile> candidates = new ArrayList<>();
+        for (int distance = Math.max(current, states.size() - 1 - current); distance > 0; distance--) {
+            for (int i : new int[] {current - distance, current + distance}) {
+                if (i >= 0 && i < states.size()) {
+                    for (Tile tile : states.get(i).tiles) {
+                        if (seen.add(tile)) {
+                            candidates.add(tile);
+                        }
+                    }
+                }
+            }
+        }
+        pack(candidates);
+        for (int i = 0; i < candidates.size() && residentBytes > memoryBudget && spillDirectory != null && !spillFailed; i++) {
+            Tile tile = candidates.get(i);
+            if (tile.packed != null) {
+                try {
+                    writeSpill(tile);
+                } catch (IOException e) {
+                    // Forget states instead from now on; the tiles already spilled stay readable
+                    spillFailed = true;
+                }
+            }
+        }
+        while (residentBytes > memoryBudget && states.size() > 1) {
+            int oldest = current > 0 ? 0 : states.size() - 1;
+            release(states.remove(oldest));
+            if (oldest < current) {
+                current--;
+            }
+        }
+    }
+
+    // Deflates candidates in order until the budget is met, in parallel batches
+    private void pack(List<Tile> candidates) {
+        int next = 0;
+        while (residentBytes > memoryBudget && next < candidates.size()) {
+            // Enough tiles to cover the excess even if none of them gets smaller
+            List<Tile> batch = new ArrayList<>();
+            long bytes = 0;
+            while (next < candidates.size() && bytes < residentBytes - memoryBudget) {
+                Tile tile = candidates.get(next++);
+                if (tile.pixels != null) {
+                    batch.add(tile);
+                    bytes += tile.residentBytes();
+                }
+            }
+            byte[][] packed = new byte[batch.size()][];
+            TileScheduler.shared().forEachBand(TILE_SIZE * TILE_SIZE, batch.size(), 1, (k0, k1) -> {
+                for (int k = k0; k < k1; k++) {
+                    packed[k] = toBytes(batch.get(k).pixels);
+                    byte[] deflated = deflate(packed[k]);
+                    if (deflated != null) {
+                        packed[k] = deflated;
+                    }
+                }
+            });
+            for (int k = 0; k < packed.length; k++) {
+                Tile tile = batch.get(k);
+                residentBytes -= tile.residentBytes();
+                tile.deflated = packed[k].length < tile.length * tile.elementBytes;
+                tile.packed = packed[k];
+                tile.pixels = null;
+                residentBytes += tile.residentBytes();
+            }
+        }
+    }
+
+    private void writeSpill(Tile tile) throws IOException {
+        if (spill == null) {
+            Path path = Files.createTempFile(spillDirectory.toPath(), "history", ".tiles");
+            path.toFile().deleteOnExit();
+            spill = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        int length = tile.packed.length;
+        long offset = allocateSpill(length);
+        ByteBuffer buffer = ByteBuffer.wrap(tile.packed);
+        try {
+            while (buffer.hasRemaining()) {
+                spill.write(buffer, offset + buffer.position());
+            }
+        } catch (IOException e) {
+            freeSpill(offset, length);
+            throw e;
+        }
+        tile.spillOffset = offset;
+        tile.spillBytes = length;
+        residentBytes -= tile.residentBytes();
+        tile.packed = null;
+    }
+
+    // The first gap that fits length bytes, or the end of the file
+    private long allocateSpill(int length) {
+        for (Map.Entry<Long, Integer> gap : spillGaps.entrySet()) {
+            if (gap.getValue() >= length) {
+                long offset = gap.getKey();
+                spillGaps.remove(offset);
+                if (gap.getValue() > length) {
+                    spillGaps.put(offset + length, gap.getValue() - length);
+                }
+                return offset;
+            }
+        }
+        long offset = spillLength;
+        spillLength += length;
+        return offset;
+    }
+
+    // Returns a range to the gaps, merged with its neighbours; a gap at the end shortens the file
+    private void freeSpill(long offset, int length) {
+        long end = offset + length;
+        Map.Entry<Long, Integer> before = spillGaps.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == offset) {
+            spillGaps.remove(before.getKey());
+            offset = before.getKey();
+        }
+        Integer after = spillGaps.remove(end);
+        if (after != null) {
+            end += after;
+        }
+        if (end == spillLength) {
+            spillLength = offset;
+            try {
+                spill.truncate(offset);
+            } catch (IOException e) {
+                // The space is reused anyway
+            }
+        } else {
+            spillGaps.put(offset, (int) (end - offset));
+        }
+    }
+
+    private byte[] readSpill(Tile tile) {
+        ByteBuffer buffer = ByteBuffer.allocate(tile.spillBytes);
+        try {
+            while (buffer.hasRemaining()) {
+                if (spill.read(buffer, tile.spillOffset + buffer.position()) < 0) {
+                    throw new IOException("History spill file is truncated");
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.array();
+    }
+
+    private void closeSpill() {
+        try {
+            spill.close();
+        } catch (IOException e) {
+            // The file is deleted on exit anyway
+        }
+        spill = null;
+        spillLength = 0;
+        spillGaps.clear();
+    }
+
+    private static byte[] toBytes(Object pixels) {
+        if (pixels instanceof int[]) {
+            int[] ints = (int[]) pixels;
+            ByteBuffer buffer = ByteBuffer.allocate(ints.length * 4);
+            buffer.asIntBuffer().put(ints);
+            return buffer.array();
+        }
+        if (pixels instanceof short[]) {
+            short[] shorts = (short[]) pixels;
+            ByteBuffer buffer = ByteBuffer.allocate(shorts.length * 2);
+            buffer.asShortBuffer().put(shorts);
+            return buffer.array();
+        }
+        return ((byte[]) pixels).clone();
+    }
+
+    // Returns null when the deflated bytes would not be smaller
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] out = new byte[raw.length];
+            int length = 0;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return deflater.finished() && length < raw.length ? Arrays.copyOf(out, length) : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] deflated, int length) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            byte[] raw = new byte[length];
+            int done = 0;
+            while (done < length && !inflater.finished()) {
+                done += inflater.inflate(raw, done, length - done);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt history tile", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // One image of the history, as a grid of tiles in row-major order
+    private static final class State {
+        final int width;
+        final int height;
+        // Array elements per pixel
+        final int stride;
+        final int columns;
+        final int rows;
+        // A 1x1 image with the color model and raster layout of the state
+        final BufferedImage prototype;
+        final Tile[] tiles;
+
+        State(BufferedImage image) {
+            width = image.getWidth();
+            height = image.getHeight();
+            stride = Rasters.pixelStride(image);
+            columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+            prototype = Rasters.createLike(image, 1, 1);
+            tiles = new Tile[columns * rows];
+        }
+
+        boolean sameLayout(State other) {
+            return width == other.width && height == other.height && stride == other.stride
+                    && prototype.getType() == other.prototype.getType()
+                    && prototype.getColorModel().equals(other.prototype.getColorModel())
+                    && prototype.getSampleModel().equals(other.prototype.getSampleModel());
+        }
+
+        int tileLength(int t) {
+            return tileWidth(t) * tileHeight(t) * stride;
+        }
+
+        int tileWidth(int t) {
+            return Math.min(TILE_SIZE, width - t % columns * TILE_SIZE);
+        }
+
+        int tileHeight(int t) {
+            return Math.min(TILE_SIZE, height - t / columns * TILE_SIZE);
+        }
+
+        // Copies tile t between the image elements and the tile's pixels, row by row
+        void copyTile(int t, Object data, Object pixels, boolean intoImage) {
+            int row = tileWidth(t) * stride;
+            int offset = (t / columns * TILE_SIZE * width + t % columns * TILE_SIZE) * stride;
+            for (int y = 0, h = tileHeight(t); y < h; y++) {
+                if (intoImage) {
+                    System.arraycopy(pixels, y * row, data, offset + y * width * stride, row);
+                } else {
+                    System.arraycopy(data, offset + y * width * stride, pixels, y * row, row);
+                }
+            }
+        }
+
+        // Copies tile t from the elements of one image of this layout to another
+        void copyRegion(int t, Object from, Object to) {
+            int row = tileWidth(t) * stride;
+            int offset = (t / columns * TILE_SIZE * width + t % columns * TILE_SIZE) * stride;
+            for (int y = 0, h = tileHeight(t); y < h; y++) {
+                System.arraycopy(from, offset + y * width * stride, to, offset + y * width * stride, row);
+            }
+        }
+
+        boolean regionEquals(int t, Object data, Object pixels) {
+            int row = tileWidth(t) * stride;
+            int offset = (t / columns * TILE_SIZE * width + t % columns * TILE_SIZE) * stride;
+            for (int y = 0, h = tileHeight(t); y < h; y++) {
+                if (!rangeEquals(data, offset + y * width * stride, pixels, y * row, row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean rangeEquals(Object a, int from, Object b, int bFrom, int length) {
+            if (a instanceof int[]) {
+                int[] x = (int[]) a;
+                int[] y = (int[]) b;
+                for (int i = 0; i < length; i++) {
+                    if (x[from + i] != y[bFrom + i]) {
+                        return false;
+                    }
+                }
+            } else if (a instanceof short[]) {
+                short[] x = (short[]) a;
+                short[] y = (short[]) b;
+                for (int i = 0; i < length; i++) {
+                    if (x[from + i] != y[bFrom + i]) {
+                        return false;
+                    }
+                }
+            } else {
+                byte[] x = (byte[]) a;
+                byte[] y = (byte[]) b;
+                for (int i = 0; i < length; i++) {
+                    if (x[from + i] != y[bFrom + i]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    // Pixel elements of one tile, held in exactly one of three ways: as an array, as
+    // packed bytes (deflated when that made them smaller) or in the spill file
+    private static final class Tile {
+        final int length;
+        final int elementBytes;
+        Object pixels;
+        byte[] packed;
+        boolean deflated;
+        long spillOffset;
+        int spillBytes;
+        // States using the tile
+        int references;
+
+        Tile(Object pixels) {
+            this.pixels = pixels;
+            this.length = Array.getLength(pixels);
+            this.elementBytes = pixels instanceof int[] ? 4 : pixels instanceof short[] ? 2 : 1;
+        }
+
+        long residentBytes() {
+            return pixels != null ? (long) length * elementBytes : packed != null ? packed.length : 0;
+        }
+    }
+}
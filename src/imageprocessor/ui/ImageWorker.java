@@ -0,0 +1,233 @@
+package imageprocessor.ui;
+
+import imageprocessor.core.ImageOp;
+import imageprocessor.core.TileScheduler;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import javax.swing.SwingUtilities;
+
+// Runs the edits of an image window off the event dispatch thread.
+//
+// Edits run one at a time on a background thread, in the order they were submitted,
+// each on the image left by the one before. Edits submitted with a key coalesce, so a
+// slider only computes its latest value: a newer edit with the same key replaces a
+// pending one, or cancels a running one at its next band when nothing is queued
+// behind it. Finished images are handed whole to the callbacks, which all run on the
+// EDT. The progress callback gets the percentage of the current pass, or -1 when idle.
+//
+// With an EditHistory, loaded images reset it and every applied edit is recorded in
+// it, so undo() and redo() can step back and forth through the edits. An edit with the
+// same key as the edit recorded just before it replaces that one, so a whole slider
+// drag is one undo step. The display callback then also gets the tiles that changed
+// (see EditHistory.getChangedTiles), or null when the whole image is new.
+public final class ImageWorker {
+
+    private final BiConsumer<BufferedImage, BitSet> display;
+    private final Consumer<Exception> errors;
+    private final IntConsumer progress;
+    // null when the window has no undo
+    private final EditHistory history;
+    private final ExecutorService executor;
+
+    // Guarded by this
+    private final Deque<Job> queue = new ArrayDeque<>();
+    private Job running;
+
+    // Only touched by jobs, which run one at a time
+    private BufferedImage image;
+    // Key of the last edit recorded, null after anything else
+    private Object lastKey;
+
+    public ImageWorker(Consumer<BufferedImage> display, Consumer<Exception> errors, IntConsumer progress) {
+        this((image, changed) -> display.accept(image), errors, progress, null);
+    }
+
+    public ImageWorker(BiConsumer<BufferedImage, BitSet> display, Consumer<Exception> errors, IntConsumer progress,
+            EditHistory history) {
+        this.display = display;
+        this.errors = errors;
+        this.progress = progress;
+        this.history = history;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "image-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Replaces the image with the one returned by loader, e.g. a decoded file
+    public void load(Callable<BufferedImage> loader) {
+        submit(new Job(null) {
+            @Override
+            Runnable run() {
+                BufferedImage result;
+                try {
+                    result = loader.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+                if (history != null) {
+                    history.reset(result);
+                }
+                lastKey = null;
+                image = result;
+                return () -> display.accept(result, null);
+            }
+        });
+    }
+
+    public void apply(ImageOp op) {
+        apply(null, op);
+    }
+
+    // Applies op to the image; edits with an equal non-null key coalesce
+    public void apply(Object key, ImageOp op) {
+        submit(new Job(key) {
+            @Override
+            Runnable run() {
+                if (image == null) {
+                    return () -> { };
+                }
+                BufferedImage result = op.filter(image);
+                checkCancelled();
+                if (history != null) {
+                    boolean continued = key != null && key.equals(lastKey);
+                    // The edit is kept from here on, so recording it must not be cancelled
+                    TileScheduler.monitored(null, () -> {
+                        if (continued) {
+                            history.replace(result);
+                        } else {
+                            history.record(result);
+                        }
+                        return null;
+                    });
+                }
+                lastKey = key;
+                BitSet changed = history != null ? history.getChangedTiles() : null;
+                image = result;
+                return () -> display.accept(result, changed);
+            }
+        });
+    }
+
+    // Goes back to the image before the last edit, if there is one
+    public void undo() {
+        step(true);
+    }
+
+    // Goes forward to the image of the last undone edit, if there is one
+    public void redo() {
+        step(false);
+    }
+
+    private void step(boolean back) {
+        submit(new Job(null) {
+            @Override
+            Runnable run() {
+                if (history == null || !(back ? history.canUndo() : history.canRedo())) {
+                    return () -> { };
+                }
+                BufferedImage result = back ? history.undo() : history.redo();
+                BitSet changed = history.getChangedTiles();
+                lastKey = null;
+                image = result;
+                return () -> display.accept(result, changed);
+            }
+        });
+    }
+
+    // Computes task without touching the image and hands its result to onDone
+    public <T> void preview(Object key, Supplier<T> task, Consumer<T> onDone) {
+        submit(new Job(key) {
+            @Override
+            Runnable run() {
+                T result = task.get();
+                checkCancelled();
+                return () -> onDone.accept(result);
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void submit(Job job) {
+        synchronized (this) {
+            Job last = queue.peekLast();
+            if (job.key != null && last != null && job.key.equals(last.key)) {
+                queue.pollLast();
+            } else if (job.key != null && last == null && running != null && job.key.equals(running.key)) {
+                running.cancelled = true;
+            }
+            queue.add(job);
+        }
+        executor.execute(this::runNext);
+    }
+
+    // One call is scheduled per submitted job, so there may be more calls than jobs left
+    private void runNext() {
+        Job job;
+        synchronized (this) {
+            job = queue.poll();
+            running = job;
+        }
+        if (job == null) {
+            return;
+        }
+        try {
+            SwingUtilities.invokeLater(TileScheduler.monitored(job, job::run));
+        } catch (CancellationException e) {
+            // Superseded by a newer edit with the same key
+        } catch (RuntimeException e) {
+            Exception cause = e instanceof CompletionException && e.getCause() instanceof Exception
+                    ? (Exception) e.getCause() : e;
+            SwingUtilities.invokeLater(() -> errors.accept(cause));
+        } finally {
+            synchronized (this) {
+                running = null;
+            }
+            SwingUtilities.invokeLater(() -> progress.accept(-1));
+        }
+    }
+
+    private abstract class Job implements TileScheduler.Monitor {
+        final Object key;
+        volatile boolean cancelled;
+        private final AtomicInteger percent = new AtomicInteger(-1);
+
+        Job(Object key) {
+            this.key = key;
+        }
+
+        // Does the work on the worker thread and returns what to run on the EDT
+        abstract Runnable run();
+
+        void checkCancelled() {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+        }
+
+        @Override
+        public void progress(int rowsDone, int rows) {
+            checkCancelled();
+            int value = (int) (100L * rowsDone / rows);
+            if (percent.getAndSet(value) != value) {
+                SwingUtilities.invokeLater(() -> progress.accept(value));
+            }
+        }
+    }
+}
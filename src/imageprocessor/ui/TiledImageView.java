@@ -0,0 +1,471 @@
+package imageprocessor.ui;
+
+import imageprocessor.core.TileScheduler;
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JComponent;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+// Shows an image of any size at any zoom, painting only what is visible.
+//
+// At zoom 1 and above the visible part of the image is drawn straight from it. Below,
+// the view draws from a pyramid of levels, each half the size of the one below: level
+// L is the image shrunk 2^L times, and the view uses the largest level that is still
+// at least as detailed as the screen. The levels are cut into TILE x TILE tiles that
+// are built on a background thread when first needed, each from the four tiles below
+// it (level 1 from the image), and kept in a cache of at most MAX_TILES tiles, least
+// recently used out first. Until a tile is ready the view scales up a coarser one.
+//
+// setImage() takes the tiles an edit changed (see EditHistory.getChangedTiles); only
+// the pyramid tiles above them are dropped and rebuilt.
+//
+// The mouse wheel zooms around the pointer with Ctrl held and scrolls otherwise;
+// dragging pans. Put the view in a JScrollPane.
+public final class TiledImageView extends JComponent implements Scrollable {
+
+    // The same grid as EditHistory, so its changed tiles map to the pyramid directly
+    public static final int TILE = EditHistory.TILE_SIZE;
+    // 128 MB of TYPE_INT_ARGB_PRE tiles
+    private static final int MAX_TILES = 512;
+    private static final double MIN_ZOOM = 1.0 / 1024;
+    private static final double MAX_ZOOM = 32;
+    // Zoom factor per wheel notch
+    private static final double WHEEL_STEP = 1.15;
+
+    // Only set on the EDT
+    private BufferedImage image;
+    private double zoom = 1;
+    private int levels;
+
+    // Pyramid tiles by key(level, x, y), most recently used last; guarded by itself
+    private final Map<Long, BufferedImage> cache = new LinkedHashMap<Long, BufferedImage>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    // Bumped under the cache lock on every new image, so builds for an older one are dropped
+    private volatile int generation;
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "pyramid-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Point dragStart;
+
+    public TiledImageView() {
+        setOpaque(true);
+        setBackground(Color.DARK_GRAY);
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getLocationOnScreen();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                JViewport viewport = viewport();
+                if (dragStart == null || viewport == null) {
+                    return;
+                }
+                Point at = e.getLocationOnScreen();
+                Point position = viewport.getViewPosition();
+                position.translate(dragStart.x - at.x, dragStart.y - at.y);
+                dragStart = at;
+                scrollTo(viewport, position);
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragStart = null;
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isControlDown()) {
+                    setZoom(zoom * Math.pow(WHEEL_STEP, -e.getPreciseWheelRotation()), e.getPoint());
+                    return;
+                }
+                // A wheel listener keeps the events from the scroll pane, so hand them on
+                JScrollPane pane = (JScrollPane) SwingUtilities.getAncestorOfClass(JScrollPane.class, TiledImageView.this);
+                if (pane != null) {
+                    pane.dispatchEvent(SwingUtilities.convertMouseEvent(TiledImageView.this, e, pane));
+                }
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    // Shows image. changed holds the EditHistory tiles that differ from the image shown
+    // before, or is null when the whole image is new.
+    public void setImage(BufferedImage image, BitSet changed) {
+        BufferedImage previous = this.image;
+        boolean sameSize = previous != null && image != null && previous.getWidth() == image.getWidth()
+                && previous.getHeight() == image.getHeight();
+        synchronized (cache) {
+            generation++;
+            if (changed == null || !sameSize) {
+                cache.clear();
+            } else {
+                int columns = (image.getWidth() + TILE - 1) / TILE;
+                for (int t = changed.nextSetBit(0); t >= 0; t = changed.nextSetBit(t + 1)) {
+                    for (int level = 1; level <= levels; level++) {
+                        cache.remove(key(level, t % columns >> level, t / columns >> level));
+                    }
+                }
+            }
+        }
+        this.image = image;
+        levels = 0;
+        if (image != null) {
+            // Up to the first level that fits in one tile
+            for (int w = image.getWidth(), h = image.getHeight(); w > TILE || h > TILE; w = (w + 1) / 2, h = (h + 1) / 2) {
+                levels++;
+            }
+        }
+        if (!sameSize) {
+            revalidate();
+        }
+        repaint();
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    // Sets the zoom, keeping the image point under anchor (in view coordinates) in place
+    public void setZoom(double zoom, Point anchor) {
+        double old = this.zoom;
+        this.zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom));
+        JViewport viewport = viewport();
+        if (viewport == null) {
+            revalidate();
+            repaint();
+            return;
+        }
+        Point position = viewport.getViewPosition();
+        if (anchor == null) {
+            Dimension extent = viewport.getExtentSize();
+            anchor = new Point(position.x + extent.width / 2, position.y + extent.height / 2);
+        }
+        double ratio = this.zoom / old;
+        Point onScreen = new Point(anchor.x - position.x, anchor.y - position.y);
+        // Resize now rather than at the next layout, so the new position is not clamped
+        setSize(getPreferredSize());
+        revalidate();
+        scrollTo(viewport, new Point((int) Math.round(anchor.x * ratio) - onScreen.x,
+                (int) Math.round(anchor.y * ratio) - onScreen.y));
+        repaint();
+    }
+
+    // Zooms so the whole image fits in the scroll pane
+    public void zoomToFit() {
+        JViewport viewport = viewport();
+        if (image == null || viewport == null) {
+            return;
+        }
+        Dimension extent = viewport.getExtentSize();
+        setZoom(Math.min((double) extent.width / image.getWidth(), (double) extent.height / image.getHeight()), null);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (image == null) {
+            return new Dimension(0, 0);
+        }
+        return new Dimension((int) Math.ceil(image.getWidth() * zoom), (int) Math.ceil(image.getHeight() * zoom));
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        Rectangle clip = graphics.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(getSize());
+        }
+        graphics.setColor(getBackground());
+        graphics.fillRect(clip.x, clip.y, clip.width, clip.height);
+        BufferedImage shown = image;
+        if (shown == null) {
+            return;
+        }
+        Graphics2D g = (Graphics2D) graphics.create();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, zoom < 1
+                    ? RenderingHints.VALUE_INTERPOLATION_BILINEAR : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            int level = Math.min(levels, (int) Math.floor(Math.log(1 / zoom) / Math.log(2)));
+            if (level <= 0) {
+                int x0 = Math.max(0, (int) Math.floor(clip.x / zoom));
+                int y0 = Math.max(0, (int) Math.floor(clip.y / zoom));
+                int x1 = Math.min(shown.getWidth(), (int) Math.ceil((clip.x + clip.width) / zoom));
+                int y1 = Math.min(shown.getHeight(), (int) Math.ceil((clip.y + clip.height) / zoom));
+                if (x0 < x1 && y0 < y1) {
+                    g.drawImage(shown, screen(x0, zoom), screen(y0, zoom), screen(x1, zoom), screen(y1, zoom),
+                            x0, y0, x1, y1, null);
+                }
+                return;
+            }
+            // Screen pixels per pixel of the level, in (0.5, 1]
+            double scale = zoom * (1 << level);
+            int tx0 = Math.max(0, (int) Math.floor(clip.x / scale / TILE));
+            int ty0 = Math.max(0, (int) Math.floor(clip.y / scale / TILE));
+            int tx1 = Math.min(columns(shown, level), (int) Math.ceil((clip.x + clip.width) / scale / TILE));
+            int ty1 = Math.min(rows(shown, level), (int) Math.ceil((clip.y + clip.height) / scale / TILE));
+            for (int ty = ty0; ty < ty1; ty++) {
+                for (int tx = tx0; tx < tx1; tx++) {
+                    BufferedImage tile = tile(shown, level, tx, ty);
+                    if (tile != null) {
+                        drawTile(g, tile, tx * TILE, ty * TILE, 0, 0, tile.getWidth(), tile.getHeight(), scale);
+                    } else {
+                        drawCoarser(g, level, tx, ty);
+                    }
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    // Draws the part of the first cached coarser tile that covers tile (tx, ty) of level
+    private void drawCoarser(Graphics2D g, int level, int tx, int ty) {
+        for (int up = 1; level + up <= levels; up++) {
+            BufferedImage coarse;
+            synchronized (cache) {
+                coarse = cache.get(key(level + up, tx >> up, ty >> up));
+            }
+            if (coarse == null) {
+                continue;
+            }
+            // The tile's area in the coarse tile's pixels
+            int span = TILE >> up;
+            int sx = (tx & (1 << up) - 1) * span;
+            int sy = (ty & (1 << up) - 1) * span;
+            int sw = Math.min(span, coarse.getWidth() - sx);
+            int sh = Math.min(span, coarse.getHeight() - sy);
+            if (sw > 0 && sh > 0 && span > 0) {
+                double scale = zoom * (1 << (level + up));
+                drawTile(g, coarse, (tx >> up) * TILE + sx, (ty >> up) * TILE + sy, sx, sy, sw, sh, scale);
+            }
+            return;
+        }
+    }
+
+    // Draws a region of a tile whose top left corner is at (x, y) in level pixels
+    private static void drawTile(Graphics2D g, BufferedImage tile, int x, int y, int sx, int sy, int sw, int sh,
+            double scale) {
+        g.drawImage(tile, screen(x, scale), screen(y, scale), screen(x + sw, scale), screen(y + sh, scale),
+                sx, sy, sx + sw, sy + sh, null);
+    }
+
+    private static int screen(int position, double scale) {
+        return (int) Math.round(position * scale);
+    }
+
+    // The cached tile, or null after asking for it to be built
+    private BufferedImage tile(BufferedImage source, int level, int tx, int ty) {
+        long key = key(level, tx, ty);
+        BufferedImage tile;
+        synchronized (cache) {
+            tile = cache.get(key);
+        }
+        if (tile == null && pending.add(key)) {
+            int forGeneration = generation;
+            builder.execute(() -> {
+                try {
+                    build(source, forGeneration, level, tx, ty);
+                } catch (CancellationException e) {
+                    // The image changed; the next paint asks again
+                } finally {
+                    pending.remove(key);
+                }
+                SwingUtilities.invokeLater(this::repaint);
+            });
+        }
+        return tile;
+    }
+
+    // Builds a tile and the missing ones it is made from, caching them unless the image
+    // has changed since forGeneration
+    private BufferedImage build(BufferedImage source, int forGeneration, int level, int tx, int ty) {
+        if (generation != forGeneration) {
+            throw new CancellationException();
+        }
+        long key = key(level, tx, ty);
+        BufferedImage tile;
+        synchronized (cache) {
+            tile = cache.get(key);
+        }
+        if (tile != null) {
+            return tile;
+        }
+        if (level == 1) {
+            int x = tx * 2 * TILE;
+            int y = ty * 2 * TILE;
+            int width = Math.min(2 * TILE, source.getWidth() - x);
+            int height = Math.min(2 * TILE, source.getHeight() - y);
+            // Drawn like the view draws level 0, whatever the image type
+            BufferedImage region = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = region.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(source, 0, 0, width, height, x, y, x + width, y + height, null);
+            g.dispose();
+            tile = halve(region);
+        } else {
+            // The children that exist, built in parallel when missing
+            List<int[]> children = new ArrayList<>();
+            for (int dy = 0; dy < 2; dy++) {
+                for (int dx = 0; dx < 2; dx++) {
+                    if (2 * tx + dx < columns(source, level - 1) && 2 * ty + dy < rows(source, level - 1)) {
+                        children.add(new int[] {dx, dy});
+                    }
+                }
+            }
+            BufferedImage[] built = new BufferedImage[children.size()];
+            TileScheduler.shared().forEachBand(TILE * TILE, built.length, 1, (c0, c1) -> {
+                for (int c = c0; c < c1; c++) {
+                    int[] child = children.get(c);
+                    built[c] = build(source, forGeneration, level - 1, 2 * tx + child[0], 2 * ty + child[1]);
+                }
+            });
+            int width = 0;
+            int height = 0;
+            for (int c = 0; c < built.length; c++) {
+                width = Math.max(width, children.get(c)[0] * TILE + built[c].getWidth());
+                height = Math.max(height, children.get(c)[1] * TILE + built[c].getHeight());
+            }
+            BufferedImage region = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D g = region.createGraphics();
+            g.setComposite(AlphaComposite.Src);
+            for (int c = 0; c < built.length; c++) {
+                g.drawImage(built[c], children.get(c)[0] * TILE, children.get(c)[1] * TILE, null);
+            }
+            g.dispose();
+            tile = halve(region);
+        }
+        synchronized (cache) {
+            if (generation == forGeneration) {
+                cache.put(key, tile);
+            }
+        }
+        return tile;
+    }
+
+    // Averages every 2x2 block
+    private static BufferedImage halve(BufferedImage region) {
+        int width = region.getWidth();
+        int height = region.getHeight();
+        int halfWidth = (width + 1) / 2;
+        int halfHeight = (height + 1) / 2;
+        BufferedImage half = new BufferedImage(halfWidth, halfHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        int[] s = ((DataBufferInt) region.getRaster().getDataBuffer()).getData();
+        int[] d = ((DataBufferInt) half.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < halfHeight; y++) {
+            int row0 = 2 * y * width;
+            // A block cut by the bottom or right edge repeats its last row or column
+            int row1 = Math.min(2 * y + 1, height - 1) * width;
+            for (int x = 0; x < halfWidth; x++) {
+                int x0 = 2 * x;
+                int x1 = Math.min(x0 + 1, width - 1);
+                int p = s[row0 + x0];
+                int q = s[row0 + x1];
+                int r = s[row1 + x0];
+                int u = s[row1 + x1];
+                int a = ((p >>> 24) + (q >>> 24) + (r >>> 24) + (u >>> 24) + 2) >> 2;
+                int red = ((p >> 16 & 0xFF) + (q >> 16 & 0xFF) + (r >> 16 & 0xFF) + (u >> 16 & 0xFF) + 2) >> 2;
+                int green = ((p >> 8 & 0xFF) + (q >> 8 & 0xFF) + (r >> 8 & 0xFF) + (u >> 8 & 0xFF) + 2) >> 2;
+                int blue = ((p & 0xFF) + (q & 0xFF) + (r & 0xFF) + (u & 0xFF) + 2) >> 2;
+                d[y * halfWidth + x] = a << 24 | red << 16 | green << 8 | blue;
+            }
+        }
+        return half;
+    }
+
+    // Tile columns and rows of a level of the pyramid of image
+    private static int columns(BufferedImage image, int level) {
+        return (levelSize(image.getWidth(), level) + TILE - 1) / TILE;
+    }
+
+    private static int rows(BufferedImage image, int level) {
+        return (levelSize(image.getHeight(), level) + TILE - 1) / TILE;
+    }
+
+    private static int levelSize(int size, int level) {
+        for (int l = 0; l < level; l++) {
+            size = (size + 1) / 2;
+        }
+        return size;
+    }
+
+    private static long key(int level, int tx, int ty) {
+        return (long) level << 56 | (long) ty << 28 | tx;
+    }
+
+    private JViewport viewport() {
+        return getParent() instanceof JViewport ? (JViewport) getParent() : null;
+    }
+
+    private void scrollTo(JViewport viewport, Point position) {
+        Dimension extent = viewport.getExtentSize();
+        Dimension size = getSize();
+        position.x = Math.max(0, Math.min(position.x, size.width - extent.width));
+        position.y = Math.max(0, Math.min(position.y, size.height - extent.height));
+        viewport.setViewPosition(position);
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction) {
+        return 32;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction) {
+        return orientation == SwingConstants.HORIZONTAL ? visible.width : visible.height;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}